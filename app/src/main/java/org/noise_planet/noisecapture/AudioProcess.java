@@ -41,7 +41,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.orbisgis.sos.AcousticIndicators;
 import org.orbisgis.sos.ConfigurationSpectrumChannel;
 import org.orbisgis.sos.FFTSignalProcessing;
+import org.orbisgis.sos.FilterDesignCache;
 import org.orbisgis.sos.SpectrumChannel;
+import org.orbisgis.sos.ToneDetector;
 import org.orbisgis.sos.Window;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,12 +52,14 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeSupport;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ShortBuffer;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Processing thread of packets of Audio signal
@@ -78,11 +82,16 @@ public class AudioProcess implements Runnable {
     public static final String PROP_FAST_LEQ = "PROP_MS";
     public static final String PROP_SLOW_LEQ = "PROP_DSP";
     public static final String PROP_STATE_CHANGED = "PROP_STATE_CHANGED";
+    // double[] levels of the tones set with setToneFrequencies
+    public static final String PROP_TONE_LEVELS = "PROP_TONE_LEVELS";
     // 1s level evaluation for upload to server
     private final LeqProcessingThread fastLeqProcessing;
     private ProcessingThread slowLeqProcessing;
     private final ProcessingThread customLeqProcessing;
+    private ToneProcessingThread toneProcessing;
     private AtomicBoolean filterBankCancel = new AtomicBoolean(false);
+    // Read buffers released by all the processing threads, reused for the next reads
+    private final Queue<AudioBuffer> freeBuffers = new ConcurrentLinkedQueue<AudioBuffer>();
 
 
     public static final int REALTIME_SAMPLE_RATE_LIMITATION = 16000;
@@ -159,12 +168,9 @@ public class AudioProcess implements Runnable {
     private void loadFilterSlowAnalyzer() {
         this.slowLeqProcessing = new FilterBankProcessingThread(this,
                 PROP_SLOW_LEQ, 1.0, filterBankCancel);
-        String configuration = "config_44100_third_octave.json";
-        if(rate == 48000) {
-            configuration = "config_48000_third_octave.json";
-        }
-        try (InputStream s = SpectrumChannel.class.getResourceAsStream(configuration)) {
-            ((FilterBankProcessingThread)this.slowLeqProcessing).loadConfiguration(s);
+        try {
+            ((FilterBankProcessingThread)this.slowLeqProcessing).loadConfiguration(
+                    FilterDesignCache.loadThirdOctaveConfiguration(rate));
         } catch (IOException ex) {
             LOGGER.error(ex.getLocalizedMessage(), ex);
         }
@@ -212,7 +218,10 @@ public class AudioProcess implements Runnable {
     public void setDoFastLeq(boolean doFastLeq) {
         this.doFastLeq = doFastLeq;
         if(!doFastLeq) {
-            fastLeqProcessing.bufferToProcess.clear();
+            AudioBuffer buffer;
+            while ((buffer = fastLeqProcessing.bufferToProcess.poll()) != null) {
+                buffer.release();
+            }
         }
     }
 
@@ -223,6 +232,34 @@ public class AudioProcess implements Runnable {
     public void setWeightingA(boolean weightingA) {
         fastLeqProcessing.setAweighting(weightingA);
         slowLeqProcessing.setAweighting(weightingA);
+        if(toneProcessing != null) {
+            toneProcessing.setAweighting(weightingA);
+        }
+    }
+
+    /**
+     * Track the level of the provided tones, much cheaper than the spectrum analysis when only
+     * known test frequencies are read. Levels are sent through {@link #PROP_TONE_LEVELS}.
+     * Must be called before starting this process.
+     * @param frequencies Tone frequencies in Hz, null to disable the tone tracking
+     * @param blockTime Integration time of each level in seconds, the frequency resolution is
+     *                  1 / blockTime
+     */
+    public void setToneFrequencies(double[] frequencies, double blockTime) {
+        if(frequencies == null) {
+            toneProcessing = null;
+        } else {
+            toneProcessing = new ToneProcessingThread(this, frequencies, blockTime,
+                    PROP_TONE_LEVELS);
+        }
+    }
+
+    /**
+     * @return Tone tracking processing, null if {@link #setToneFrequencies(double[], double)}
+     * has not been called
+     */
+    public ToneProcessingThread getToneProcessing() {
+        return toneProcessing;
     }
 
     /**
@@ -239,6 +276,9 @@ public class AudioProcess implements Runnable {
         if(doFastLeq) {
             fastLeqProcessing.setGain(gain);
         }
+        if(toneProcessing != null) {
+            toneProcessing.setGain(gain);
+        }
     }
 
     private void setCurrentState(STATE state) {
@@ -314,7 +354,9 @@ public class AudioProcess implements Runnable {
             setCurrentState(STATE.PROCESSING);
             audioRecord = createAudioRecord();
             refreshMicrophoneInfo();
-            float[] buffer = new float[bufferSize/4];
+            // 16 bits PCM read buffer, reused for each read
+            short[] shortBuffer = new short[bufferSize / 2];
+            ShortBuffer pcmBuffer = ShortBuffer.wrap(shortBuffer);
             // Compute the correction to set to PCM values in order to obtain the same value as 16 bits scale (without rescale)
             if (recording.get() && audioRecord != null) {
                 try {
@@ -325,28 +367,32 @@ public class AudioProcess implements Runnable {
                     }
                     new Thread(fastLeqProcessing).start();
                     new Thread(slowLeqProcessing).start();
+                    if(toneProcessing != null) {
+                        new Thread(toneProcessing).start();
+                    }
                     audioRecord.startRecording();
 
                     while (recording.get()) {
+                        // The buffer is shared by the processing threads, each one releases it
+                        // once processed
+                        AudioBuffer buffer = acquireBuffer(encoding == AudioFormat.ENCODING_PCM_16BIT
+                                || encoding == AudioFormat.ENCODING_PCM_8BIT ? shortBuffer.length :
+                                bufferSize / 4);
                         if(encoding == AudioFormat.ENCODING_PCM_16BIT || encoding == AudioFormat.ENCODING_PCM_8BIT) {
-                            short[] shortBuffer = new short[bufferSize / 2];
-                            int read = audioRecord.read(shortBuffer, 0, shortBuffer.length);
-                            if (read < shortBuffer.length) {
-                                shortBuffer = Arrays.copyOfRange(shortBuffer, 0, read);
-                            }
-                            buffer = Window.convertShortToFloat(shortBuffer);
+                            int read = Math.max(0, audioRecord.read(shortBuffer, 0, shortBuffer.length));
+                            pcmBuffer.clear();
+                            pcmBuffer.limit(read);
+                            Window.convertShortToFloat(pcmBuffer, buffer.samples, 0, read);
+                            buffer.length = read;
                         } else if(android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
-                              int read = audioRecord.read(buffer, 0, buffer.length,
-                                    AudioRecord.READ_BLOCKING);
-                              if (read < buffer.length) {
-                                  buffer = Arrays.copyOfRange(buffer, 0, read);
-                              }
+                              buffer.length = Math.max(0, audioRecord.read(buffer.samples, 0,
+                                      buffer.samples.length, AudioRecord.READ_BLOCKING));
                         }
                         if(doFastLeq) {
                             fastLeqProcessing.addSample(buffer);
                         }
                         if(doOneSecondLeq) {
-                            slowLeqProcessing.addSample(buffer);
+                            addSample(slowLeqProcessing, buffer);
                             // if FilterBank is not able to catch up to realtime switch to fft processing (old low end phones)
                             if(slowLeqProcessing instanceof FilterBankProcessingThread
                             && slowLeqProcessing.getProcessingDelayTime() > DELAY_PROCESSING_SWITCH_TO_FFT) {
@@ -355,12 +401,19 @@ public class AudioProcess implements Runnable {
                                 loadFFTSlowAnalyzer();
                             }
                         }
+                        if(toneProcessing != null) {
+                            toneProcessing.addSample(buffer);
+                        }
                         if(customLeqProcessing != null) {
-                            customLeqProcessing.addSample(buffer);
+                            // Custom receivers keep the array, they get their own copy
+                            customLeqProcessing.addSample(Arrays.copyOf(buffer.samples,
+                                    buffer.length));
                         }
+                        buffer.release();
                     }
                     setCurrentState(STATE.WAITING_END_PROCESSING);
-                    while (fastLeqProcessing.isProcessing() || slowLeqProcessing.isProcessing()) {
+                    while (fastLeqProcessing.isProcessing() || slowLeqProcessing.isProcessing()
+                            || (toneProcessing != null && toneProcessing.isProcessing())) {
                         Thread.sleep(10);
                     }
                 } catch (Exception ex) {
@@ -377,6 +430,29 @@ public class AudioProcess implements Runnable {
         }
     }
 
+    /**
+     * @param capacity Number of samples of the buffer
+     * @return A released buffer of this capacity, or a new one. The caller holds one reference.
+     */
+    private AudioBuffer acquireBuffer(int capacity) {
+        AudioBuffer buffer = freeBuffers.poll();
+        if(buffer == null || buffer.samples.length != capacity) {
+            buffer = new AudioBuffer(new float[capacity], freeBuffers);
+        }
+        buffer.retain();
+        return buffer;
+    }
+
+    private static void addSample(ProcessingThread processingThread, AudioBuffer buffer) {
+        if(processingThread instanceof FilterBankProcessingThread) {
+            ((FilterBankProcessingThread) processingThread).addSample(buffer);
+        } else if(processingThread instanceof LeqProcessingThread) {
+            ((LeqProcessingThread) processingThread).addSample(buffer);
+        } else {
+            processingThread.addSample(Arrays.copyOf(buffer.samples, buffer.length));
+        }
+    }
+
     /**
      * @return In the array fftResultLvl, how many frequency cover one cell.
      */
@@ -407,8 +483,40 @@ public class AudioProcess implements Runnable {
         double getLeq();
     }
 
+    /**
+     * Samples of one audio read shared by the processing threads. Each thread holding the buffer
+     * releases it once processed, the last release gives it back to the pool of the reads.
+     */
+    static final class AudioBuffer {
+        final float[] samples;
+        // Number of samples read in the array
+        int length;
+        private final AtomicInteger references = new AtomicInteger(0);
+        private final Queue<AudioBuffer> pool;
+
+        /**
+         * @param samples Sample array
+         * @param pool Destination of the released buffer, null to not reuse the buffer
+         */
+        AudioBuffer(float[] samples, Queue<AudioBuffer> pool) {
+            this.samples = samples;
+            this.length = samples.length;
+            this.pool = pool;
+        }
+
+        void retain() {
+            references.incrementAndGet();
+        }
+
+        void release() {
+            if(references.decrementAndGet() == 0 && pool != null) {
+                pool.add(this);
+            }
+        }
+    }
+
     public static final class FilterBankProcessingThread implements ProcessingThread {
-        private Queue<float[]> bufferToProcess = new ConcurrentLinkedQueue<float[]>();
+        private Queue<AudioBuffer> bufferToProcess = new ConcurrentLinkedQueue<AudioBuffer>();
         private final AudioProcess audioProcess;
         private AtomicBoolean processing = new AtomicBoolean(false);
         private String propertyName;
@@ -435,7 +543,11 @@ public class AudioProcess implements Runnable {
 
         public void loadConfiguration(InputStream filterConfigurationFile) throws IOException {
             ObjectMapper objectMapper = new ObjectMapper();
-            configuration = objectMapper.readValue(filterConfigurationFile, ConfigurationSpectrumChannel.class);
+            loadConfiguration(objectMapper.readValue(filterConfigurationFile, ConfigurationSpectrumChannel.class));
+        }
+
+        public void loadConfiguration(ConfigurationSpectrumChannel configuration) {
+            this.configuration = configuration;
             this.spectrumChannel.loadConfiguration(configuration, true);
         }
 
@@ -448,8 +560,16 @@ public class AudioProcess implements Runnable {
         }
 
         public void addSample(float[] samples) {
-            bufferToProcess.add(samples);
-            pushedSamples += samples.length;
+            addSample(new AudioBuffer(samples, null));
+        }
+
+        /**
+         * @param buffer Samples, released once processed
+         */
+        void addSample(AudioBuffer buffer) {
+            buffer.retain();
+            bufferToProcess.add(buffer);
+            pushedSamples += buffer.length;
         }
 
         public long getPushedSamples() {
@@ -485,13 +605,13 @@ public class AudioProcess implements Runnable {
                         && audioProcess.currentState != STATE.CLOSED) {
                     while (!bufferToProcess.isEmpty() && !audioProcess.canceled.get() && !canceled.get()) {
                         processing.set(true);
-                        float[] buffer = bufferToProcess.poll();
+                        AudioBuffer buffer = bufferToProcess.poll();
                         if(buffer != null) {
                             int polledBufferCursor = 0;
                             while(polledBufferCursor < buffer.length) {
                                 int copyLength = Math.min(buffer.length-polledBufferCursor,
                                         windowBuffer.length - windowBufferCursor);
-                                System.arraycopy(buffer, polledBufferCursor, windowBuffer, windowBufferCursor, copyLength);
+                                System.arraycopy(buffer.samples, polledBufferCursor, windowBuffer, windowBufferCursor, copyLength);
                                 polledBufferCursor += copyLength;
                                 windowBufferCursor += copyLength;
                                 processedSamples += copyLength;
@@ -512,7 +632,7 @@ public class AudioProcess implements Runnable {
                                         spectrum[i] += dbGain;
                                     }
                                     double sumSamples = 0;
-                                    for (float[] toProcess : bufferToProcess) {
+                                    for (AudioBuffer toProcess : bufferToProcess) {
                                         sumSamples += toProcess.length;
                                     }
                                     processingDelayTime = sumSamples /
@@ -534,6 +654,7 @@ public class AudioProcess implements Runnable {
                                     windowBufferCursor = 0;
                                 }
                             }
+                            buffer.release();
                         }
                     }
                     try {
@@ -543,13 +664,15 @@ public class AudioProcess implements Runnable {
                     }
                 }
             } finally {
+                spectrumChannel.close();
                 processing.set(false);
             }
         }
     }
 
-    public static final class LeqProcessingThread implements ProcessingThread {
-        private Queue<float[]> bufferToProcess = new ConcurrentLinkedQueue<float[]>();
+    public static final class LeqProcessingThread implements ProcessingThread,
+            Window.WindowListener {
+        private Queue<AudioBuffer> bufferToProcess = new ConcurrentLinkedQueue<AudioBuffer>();
         private final AudioProcess audioProcess;
         private AtomicBoolean processing = new AtomicBoolean(false);
         private Window window;
@@ -558,7 +681,6 @@ public class AudioProcess implements Runnable {
         private double timePeriod;
         private long pushedSamples = 0;
         private long processedSamples = 0;
-        private int lastPushIndex = 0;
         private double gain = 1;
 
         // Output only frequency response on this sample rate on the real time result (center + upper band)
@@ -574,6 +696,7 @@ public class AudioProcess implements Runnable {
                     audioProcess.getRate(), audioProcess.getRealtimeCenterFrequency(), timePeriod,
                     Aweighting, FFTSignalProcessing.DB_FS_REFERENCE, outputSpectrogram);
             this.window.setAWeighting(Aweighting);
+            this.window.setListener(this);
             thirdOctaveSplLevels = new double[audioProcess.getRealtimeCenterFrequency().length];
         }
 
@@ -588,8 +711,8 @@ public class AudioProcess implements Runnable {
                         audioProcess.getRealtimeCenterFrequency(), timePeriod,
                         window.isAWeighting(), FFTSignalProcessing.DB_FS_REFERENCE,
                         window.isOutputThinFrequency());
+                this.window.setListener(this);
                 setGain(gain);
-                lastPushIndex = 0;
             }
         }
 
@@ -603,7 +726,7 @@ public class AudioProcess implements Runnable {
         @Override
         public double getProcessingDelayTime() {
             int totalSamples=0;
-            for (float[] toProcess : bufferToProcess) {
+            for (AudioBuffer toProcess : bufferToProcess) {
                 totalSamples += toProcess.length;
             }
             return totalSamples / (double)audioProcess.getRate();
@@ -636,17 +759,31 @@ public class AudioProcess implements Runnable {
         }
 
         public void addSample(float[] samples) {
-            bufferToProcess.add(samples);
-            pushedSamples += samples.length;
+            addSample(new AudioBuffer(samples, null));
+        }
+
+        /**
+         * @param buffer Samples, released once processed
+         */
+        void addSample(AudioBuffer buffer) {
+            buffer.retain();
+            bufferToProcess.add(buffer);
+            pushedSamples += buffer.length;
         }
 
         public long getPushedSamples() {
             return pushedSamples;
         }
 
+        @Override
+        public void onWindow(Window window) {
+            processWindow();
+        }
+
         private void processWindow() {
-            lastPushIndex = window.getWindowIndex();
-            FFTSignalProcessing.ProcessingResult  result = window.getLastWindowMean();
+            // The window reuses its result, copy it as listeners keep it
+            FFTSignalProcessing.ProcessingResult  result = new FFTSignalProcessing.ProcessingResult();
+            result.accumulate(window.getLastWindowMean());
             window.cleanWindows();
             thirdOctaveSplLevels = result.getSpl();
             // Compute leq
@@ -661,12 +798,11 @@ public class AudioProcess implements Runnable {
                     new AudioMeasureResult(result,  beginRecordTime));
         }
 
-        private void processSample(float[] buffer) {
-            window.pushSample(buffer);
-            if (window.getWindowIndex() != lastPushIndex) {
-                processWindow();
-            }
+        private void processSample(AudioBuffer buffer) {
+            // The window calls processWindow through onWindow for each completed window
+            window.pushSample(buffer.samples, 0, buffer.length);
             processedSamples += buffer.length;
+            buffer.release();
         }
 
         public boolean isProcessing() {
@@ -681,22 +817,9 @@ public class AudioProcess implements Runnable {
                         && audioProcess.currentState != STATE.CLOSED) {
                     while (!bufferToProcess.isEmpty() && !audioProcess.canceled.get()) {
                         processing.set(true);
-                        float[] buffer = bufferToProcess.poll();
+                        AudioBuffer buffer = bufferToProcess.poll();
                         if(buffer != null) {
-                            if (buffer.length <= window.getMaximalBufferSize()) {
-                                // Good buffer size, use it
-                                processSample(buffer);
-                            } else {
-                                // Buffer is too large for the window
-                                // Split the buffer in multiple parts
-                                int cursor = 0;
-                                while (cursor < buffer.length) {
-                                    int sampleLen = Math.min(window.getMaximalBufferSize(), buffer.length - cursor);
-                                    float[] samples = Arrays.copyOfRange(buffer, cursor, cursor + sampleLen);
-                                    cursor += samples.length;
-                                    processSample(samples);
-                                }
-                            }
+                            processSample(buffer);
                         }
                     }
                     try {
@@ -715,6 +838,109 @@ public class AudioProcess implements Runnable {
         }
     }
 
+    /**
+     * Level of a set of tones with {@link ToneDetector}, O(tones) operations per sample
+     */
+    public static final class ToneProcessingThread implements ProcessingThread,
+            ToneDetector.ToneListener {
+        private Queue<AudioBuffer> bufferToProcess = new ConcurrentLinkedQueue<AudioBuffer>();
+        private final AudioProcess audioProcess;
+        private AtomicBoolean processing = new AtomicBoolean(false);
+        private final ToneDetector toneDetector;
+        private final String propertyName;
+        private double leq = 0;
+
+        public ToneProcessingThread(AudioProcess audioProcess, double[] frequencies,
+                                    double blockTime, String propertyName) {
+            this.audioProcess = audioProcess;
+            this.propertyName = propertyName;
+            this.toneDetector = new ToneDetector(audioProcess.getRate(), frequencies,
+                    (int) (audioProcess.getRate() * blockTime), FFTSignalProcessing.DB_FS_REFERENCE);
+            this.toneDetector.setListener(this);
+        }
+
+        @Override
+        public void addSample(float[] samples) {
+            addSample(new AudioBuffer(samples, null));
+        }
+
+        /**
+         * @param buffer Samples, released once processed
+         */
+        void addSample(AudioBuffer buffer) {
+            buffer.retain();
+            bufferToProcess.add(buffer);
+        }
+
+        @Override
+        public void setAweighting(boolean Aweighting) {
+            toneDetector.setAWeighting(Aweighting);
+        }
+
+        @Override
+        public void setGain(double gain) {
+            toneDetector.setDbFsReference(FFTSignalProcessing.DB_FS_REFERENCE+20*Math.log10(gain));
+        }
+
+        @Override
+        public double getProcessingDelayTime() {
+            int totalSamples=0;
+            for (AudioBuffer toProcess : bufferToProcess) {
+                totalSamples += toProcess.length;
+            }
+            return totalSamples / (double)audioProcess.getRate();
+        }
+
+        @Override
+        public boolean isProcessing() {
+            return processing.get();
+        }
+
+        /**
+         * @return Energetic sum of the tone levels of the last block
+         */
+        @Override
+        public double getLeq() {
+            return leq;
+        }
+
+        public ToneDetector getToneDetector() {
+            return toneDetector;
+        }
+
+        @Override
+        public void onTones(ToneDetector toneDetector) {
+            leq = toneDetector.getLeq();
+            audioProcess.listeners.firePropertyChange(propertyName, null,
+                    toneDetector.getLevels());
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (audioProcess.currentState != STATE.WAITING_END_PROCESSING &&
+                        !audioProcess.canceled.get()
+                        && audioProcess.currentState != STATE.CLOSED) {
+                    while (!bufferToProcess.isEmpty() && !audioProcess.canceled.get()) {
+                        processing.set(true);
+                        AudioBuffer buffer = bufferToProcess.poll();
+                        if(buffer != null) {
+                            toneDetector.pushSamples(buffer.samples, 0, buffer.length);
+                            buffer.release();
+                        }
+                    }
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException ex) {
+                        break;
+                    }
+                }
+            } finally {
+                processing.set(false);
+            }
+        }
+    }
+
     public static final class AudioMeasureResult {
         private final FFTSignalProcessing.ProcessingResult result;
         private final long beginRecordTime;
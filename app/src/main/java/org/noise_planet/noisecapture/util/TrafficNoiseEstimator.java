@@ -33,6 +33,7 @@ import com.fasterxml.jackson.databind.node.NullNode;
 
 import org.apache.commons.math3.stat.descriptive.rank.Median;
 import org.apache.commons.math3.stat.descriptive.rank.Percentile;
+import org.orbisgis.sos.DecibelMath;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -242,11 +243,11 @@ public class TrafficNoiseEstimator {
     }
 
     public static double wToDba(double w) {
-        return 10 * Math.log10(w);
+        return DecibelMath.toDecibel(w);
     }
 
     public static double dbaToW(double dBA) {
-        return Math.pow(10., dBA / 10.);
+        return DecibelMath.toEnergy(dBA);
     }
 
     /**
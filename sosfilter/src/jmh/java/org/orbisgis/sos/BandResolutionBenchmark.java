@@ -0,0 +1,92 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+package org.orbisgis.sos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filter bank and FFT analysis of one second of audio at each band resolution.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BandResolutionBenchmark {
+    @Param({"1", "3", "6", "12"})
+    public int bandsPerOctave;
+
+    private final int sampleRate = 48000;
+    private float[] signal;
+    private SpectrumChannel spectrumChannel;
+    private FFTSignalProcessing signalProcessing;
+    private final FFTSignalProcessing.ProcessingResult result =
+            new FFTSignalProcessing.ProcessingResult();
+
+    @Setup
+    public void setUp() throws IOException {
+        signal = BenchmarkSignal.loadPinkNoise(sampleRate);
+        spectrumChannel = new SpectrumChannel(1);
+        spectrumChannel.loadConfiguration(
+                FilterDesignCache.loadConfiguration(sampleRate, bandsPerOctave), true);
+        signalProcessing = new FFTSignalProcessing(sampleRate,
+                FFTSignalProcessing.computeFFTCenterFrequency(16000, bandsPerOctave), sampleRate,
+                FFTSignalProcessing.DB_FS_REFERENCE, bandsPerOctave);
+    }
+
+    @TearDown
+    public void tearDown() {
+        spectrumChannel.close();
+    }
+
+    @Benchmark
+    public double[] filterBank() {
+        return spectrumChannel.processSamples(signal);
+    }
+
+    @Benchmark
+    public FFTSignalProcessing.ProcessingResult fft() {
+        signalProcessing.addSample(signal);
+        return signalProcessing.processSampleBuffer(FFTSignalProcessing.WINDOW_TYPE.TUKEY, false,
+                result);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared fixtures of the benchmarks.
+ * Audio benchmarks process one second of audio per operation, so the throughput score (ops/s) is
+ * directly the number of seconds of audio processed per second of CPU.
+ */
+final class BenchmarkSignal {
+    /** 1 second of pink noise sampled at 44.1 kHz, 16 bits little endian */
+    static final String PINK_NOISE = "pinknoise_1s.raw";
+
+    private BenchmarkSignal() {}
+
+    /**
+     * Load the pink noise fixture and repeat it in order to obtain one second of signal at the
+     * provided sampling rate
+     * @param sampleRate Sampling rate in Hz
+     * @return One second of signal, not rescaled 16 bits values
+     */
+    static float[] loadPinkNoise(int sampleRate) throws IOException {
+        short[] fixture;
+        try (InputStream inputStream = BenchmarkSignal.class.getResourceAsStream(PINK_NOISE)) {
+            if (inputStream == null) {
+                throw new IOException("Missing resource " + PINK_NOISE);
+            }
+            fixture = Window.loadShortStream(inputStream, ByteOrder.LITTLE_ENDIAN);
+        }
+        float[] signal = new float[sampleRate];
+        for (int i = 0; i < signal.length; i++) {
+            signal[i] = fixture[i % fixture.length];
+        }
+        return signal;
+    }
+
+    /**
+     * @param sampleRate Sampling rate in Hz
+     * @return The third octave filter bank configuration shipped for this sampling rate
+     */
+    static ConfigurationSpectrumChannel loadConfiguration(int sampleRate) throws IOException {
+        String configuration = "config_44100_third_octave.json";
+        if (sampleRate == 48000) {
+            configuration = "config_48000_third_octave.json";
+        }
+        try (InputStream s = SpectrumChannel.class.getResourceAsStream(configuration)) {
+            ObjectMapper objectMapper = new ObjectMapper();
+            return objectMapper.readValue(s, ConfigurationSpectrumChannel.class);
+        }
+    }
+
+    /**
+     * @param configuration Filter bank configuration
+     * @param nominalFrequency Band nominal frequency in Hz
+     * @return The full rate (not subsampled) band-pass filter
+     */
+    static BiquadFilter loadBandFilter(ConfigurationSpectrumChannel configuration,
+                                       double nominalFrequency) {
+        for (ConfigurationBiquad biquad : configuration.getBandpass()) {
+            if (Double.compare(biquad.getNominalFrequency(), nominalFrequency) == 0) {
+                ConfigurationSos sos = biquad.getSos();
+                return new BiquadFilter(toArray(sos.getB0()), toArray(sos.getB1()),
+                        toArray(sos.getB2()), toArray(sos.getA1()), toArray(sos.getA2()));
+            }
+        }
+        throw new IllegalArgumentException("No band at " + nominalFrequency + " Hz");
+    }
+
+    /**
+     * @param configuration Filter bank configuration
+     * @return The full rate (not subsampled) band-pass filters of all bands
+     */
+    static List<BiquadFilter> loadBandFilters(ConfigurationSpectrumChannel configuration) {
+        List<BiquadFilter> filters = new ArrayList<>();
+        for (ConfigurationBiquad biquad : configuration.getBandpass()) {
+            filters.add(loadBandFilter(configuration, biquad.getNominalFrequency()));
+        }
+        return filters;
+    }
+
+    static double[] toArray(List<Double> array) {
+        double[] retvalue = new double[array.size()];
+        for (int i = 0; i < retvalue.length; i++) {
+            retvalue[i] = array.get(i);
+        }
+        return retvalue;
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FFT analysis of one second of audio cut into windows of {@link #windowTime} seconds.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FFTSignalProcessingBenchmark {
+    @Param({"44100", "48000"})
+    public int sampleRate;
+
+    @Param({"0.125", "1.0"})
+    public double windowTime;
+
+    private FFTSignalProcessing signalProcessing;
+    private float[][] windows;
+    private final FFTSignalProcessing.ProcessingResult result =
+            new FFTSignalProcessing.ProcessingResult();
+
+    @Setup
+    public void setUp() throws IOException {
+        float[] signal = BenchmarkSignal.loadPinkNoise(sampleRate);
+        int windowSize = (int) (sampleRate * windowTime);
+        signalProcessing = new FFTSignalProcessing(sampleRate,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, windowSize);
+        windows = new float[signal.length / windowSize][];
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = Arrays.copyOfRange(signal, i * windowSize, (i + 1) * windowSize);
+        }
+    }
+
+    @Benchmark
+    public void processSampleBuffer(Blackhole blackhole) {
+        for (float[] window : windows) {
+            signalProcessing.addSample(window);
+            blackhole.consume(signalProcessing.processSampleBuffer(
+                    FFTSignalProcessing.WINDOW_TYPE.TUKEY, true));
+        }
+    }
+
+    /**
+     * Same as {@link #processSampleBuffer(Blackhole)} with a reused result instance, the gc
+     * profiler gc.alloc.rate.norm should be 0 B/op
+     */
+    @Benchmark
+    public void processSampleBufferReuseResult(Blackhole blackhole) {
+        for (float[] window : windows) {
+            signalProcessing.addSample(window);
+            blackhole.consume(signalProcessing.processSampleBuffer(
+                    FFTSignalProcessing.WINDOW_TYPE.TUKEY, true, result));
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statistics of a record made of {@link #recordTime} seconds of fast (125 ms) levels.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class LeqStatsBenchmark {
+    private static final double[][] CLASS_RANGES = new double[][]{{Double.MIN_VALUE, 45},
+            {45, 55}, {55, 65}, {65, 75}, {75, Double.MAX_VALUE}};
+
+    @Param({"600", "3600"})
+    public int recordTime;
+
+    private LeqStats leqStats;
+    private SlidingLeqStats slidingLeqStats;
+    private double[] levels;
+    private int levelIndex = 0;
+
+    @Setup
+    public void setUp() {
+        leqStats = new LeqStats();
+        Random random = new Random(42);
+        int count = (int) (recordTime / AcousticIndicators.TIMEPERIOD_FAST);
+        levels = new double[count];
+        for (int i = 0; i < count; i++) {
+            levels[i] = 55 + random.nextGaussian() * 8;
+            leqStats.addLeq(levels[i]);
+        }
+        // 15 minutes of fast levels
+        slidingLeqStats = new SlidingLeqStats((int) (15 * 60 / AcousticIndicators.TIMEPERIOD_FAST));
+        for (double level : levels) {
+            slidingLeqStats.addLeq(level);
+        }
+    }
+
+    /**
+     * Live update of the last 15 minutes indicators for one more fast level
+     */
+    @Benchmark
+    public double slidingWindowUpdate() {
+        slidingLeqStats.addLeq(levels[levelIndex]);
+        levelIndex = (levelIndex + 1) % levels.length;
+        return slidingLeqStats.getLeqMean() + slidingLeqStats.computePercentile(90)
+                + slidingLeqStats.computePercentile(50) + slidingLeqStats.computePercentile(10);
+    }
+
+    /**
+     * Cost of recording one more fast level
+     */
+    @Benchmark
+    public LeqStats addLeq() {
+        leqStats.addLeq(levels[levelIndex]);
+        levelIndex = (levelIndex + 1) % levels.length;
+        return leqStats;
+    }
+
+    @Benchmark
+    public LeqStats.LeqOccurrences computeLeqOccurrences() {
+        return leqStats.computeLeqOccurrences(CLASS_RANGES);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+package org.orbisgis.sos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Energetic average of the 8 fast (125 ms) windows of one second at 44.1 kHz, with the narrow
+ * band spectrum. mergeLevels is the previous merge working on dB levels, accumulate sums the
+ * linear energies and converts the average to dB once when read.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessingResultBenchmark {
+    private static final int SAMPLE_RATE = 44100;
+    private FFTSignalProcessing.ProcessingResult[] results;
+
+    @Setup
+    public void setUp() throws IOException {
+        float[] signal = BenchmarkSignal.loadPinkNoise(SAMPLE_RATE);
+        int windowSize = (int) (SAMPLE_RATE * AcousticIndicators.TIMEPERIOD_FAST);
+        FFTSignalProcessing fftSignalProcessing = new FFTSignalProcessing(SAMPLE_RATE,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED, windowSize);
+        results = new FFTSignalProcessing.ProcessingResult[signal.length / windowSize];
+        for (int i = 0; i < results.length; i++) {
+            fftSignalProcessing.addSample(Arrays.copyOfRange(signal, i * windowSize,
+                    (i + 1) * windowSize));
+            results[i] = fftSignalProcessing.processSampleBuffer(FFTSignalProcessing.WINDOW_TYPE.TUKEY,
+                    true);
+            // Levels are available as a consumer would have read them
+            results[i].getSpl();
+        }
+    }
+
+    @Benchmark
+    public void mergeLevels(Blackhole blackhole) {
+        double[] spl = new double[results[0].getSpl().length];
+        double[] fft = new double[results[0].getFftResult().length];
+        double leq = 0;
+        for (FFTSignalProcessing.ProcessingResult result : results) {
+            for (int i = 0; i < spl.length; i++) {
+                spl[i] += Math.pow(10, result.getSpl()[i] / 10.);
+            }
+            for (int i = 0; i < fft.length; i++) {
+                fft[i] += Math.pow(10, result.getFftResult()[i] / 10.);
+            }
+            leq += Math.pow(10, result.getWindowLeq() / 10.);
+        }
+        for (int i = 0; i < spl.length; i++) {
+            spl[i] = 10 * Math.log10(spl[i] / results.length);
+        }
+        for (int i = 0; i < fft.length; i++) {
+            fft[i] = 10 * Math.log10(fft[i] / results.length);
+        }
+        blackhole.consume(spl);
+        blackhole.consume(fft);
+        blackhole.consume(10 * Math.log10(leq / results.length));
+    }
+
+    @Benchmark
+    public void accumulate(Blackhole blackhole) {
+        FFTSignalProcessing.ProcessingResult mean = new FFTSignalProcessing.ProcessingResult();
+        for (FFTSignalProcessing.ProcessingResult result : results) {
+            mean.accumulate(result);
+        }
+        blackhole.consume(mean.getSpl());
+        blackhole.consume(mean.getFftResult());
+        blackhole.consume(mean.getWindowLeq());
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Third octave filter bank and time domain filters on one second of audio. The HalfBand variants
+ * replace the anti-aliasing IIR filter of the cascade by {@link HalfBandDecimator}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SpectrumChannelBenchmark {
+    @Param({"44100", "48000"})
+    public int sampleRate;
+
+    private float[] signal;
+    private SpectrumChannel spectrumChannel;
+    private SpectrumChannel halfBandSpectrumChannel;
+    private BiquadFilter antiAliasingFilter;
+    private HalfBandDecimator halfBandDecimator;
+    private float[] decimated;
+    private BiquadFilter bandFilter;
+    private DigitalFilter aWeightingFilter;
+    private List<BiquadFilter> bandFilters;
+    private BiquadFilterBank bandFilterBank;
+    private double[] bandLeqs;
+    private TimeWeightingIntegrator timeWeighting;
+
+    @Setup
+    public void setUp() throws IOException {
+        signal = BenchmarkSignal.loadPinkNoise(sampleRate);
+        ConfigurationSpectrumChannel configuration = BenchmarkSignal.loadConfiguration(sampleRate);
+        spectrumChannel = new SpectrumChannel();
+        spectrumChannel.loadConfiguration(configuration, true);
+        halfBandSpectrumChannel = new SpectrumChannel();
+        halfBandSpectrumChannel.loadConfiguration(configuration, true,
+                SpectrumChannel.DECIMATION_TYPE.HALF_BAND);
+        ConfigurationSos antiAliasing = configuration.getAntiAliasing();
+        antiAliasingFilter = new BiquadFilter(BenchmarkSignal.toArray(antiAliasing.getB0()),
+                BenchmarkSignal.toArray(antiAliasing.getB1()),
+                BenchmarkSignal.toArray(antiAliasing.getB2()),
+                BenchmarkSignal.toArray(antiAliasing.getA1()),
+                BenchmarkSignal.toArray(antiAliasing.getA2()));
+        halfBandDecimator = new HalfBandDecimator();
+        decimated = new float[signal.length / 2];
+        bandFilter = BenchmarkSignal.loadBandFilter(configuration, 1000.0);
+        bandFilters = BenchmarkSignal.loadBandFilters(configuration);
+        bandFilterBank = new BiquadFilterBank(BenchmarkSignal.loadBandFilters(configuration));
+        bandLeqs = new double[bandFilters.size()];
+        aWeightingFilter = new DigitalFilter(
+                BenchmarkSignal.toArray(configuration.getAWeighting().getFilterNumerator()),
+                BenchmarkSignal.toArray(configuration.getAWeighting().getFilterDenominator()));
+        timeWeighting = new TimeWeightingIntegrator(sampleRate, new DigitalFilter(
+                BenchmarkSignal.toArray(configuration.getAWeighting().getFilterNumerator()),
+                BenchmarkSignal.toArray(configuration.getAWeighting().getFilterDenominator())), 0.125);
+    }
+
+    @TearDown
+    public void tearDown() {
+        spectrumChannel.close();
+        halfBandSpectrumChannel.close();
+    }
+
+    @Benchmark
+    public double[] processSamples() {
+        return spectrumChannel.processSamples(signal);
+    }
+
+    @Benchmark
+    public double[] processSamplesHalfBand() {
+        return halfBandSpectrumChannel.processSamples(signal);
+    }
+
+    /**
+     * First decimation of the cascade with the anti-aliasing IIR filter
+     */
+    @Benchmark
+    public float[] iirDecimation() {
+        antiAliasingFilter.filterSlice(signal, decimated, 2);
+        return decimated;
+    }
+
+    /**
+     * First decimation of the cascade with the half-band filter
+     */
+    @Benchmark
+    public float[] halfBandDecimation() {
+        halfBandDecimator.decimate(signal, decimated);
+        return decimated;
+    }
+
+    /**
+     * One band of the bank at full sampling rate (no cascade subsampling)
+     */
+    @Benchmark
+    public double biquadFilterThenLeq() {
+        return bandFilter.filterThenLeq(signal);
+    }
+
+    /**
+     * All bands at full sampling rate, one filter after the other
+     */
+    @Benchmark
+    public double[] bandFiltersThenLeq() {
+        for (int band = 0; band < bandLeqs.length; band++) {
+            bandLeqs[band] = bandFilters.get(band).filterThenLeq(signal);
+        }
+        return bandLeqs;
+    }
+
+    /**
+     * All bands at full sampling rate, advanced together for each sample
+     */
+    @Benchmark
+    public double[] bandFilterBankThenLeq() {
+        bandFilterBank.filterThenLeq(signal, bandLeqs);
+        return bandLeqs;
+    }
+
+    @Benchmark
+    public double digitalFilterLeq() {
+        return aWeightingFilter.filterLeq(signal);
+    }
+
+    /**
+     * A weighting then Fast, Slow and Impulse integration of each sample
+     */
+    @Benchmark
+    public double timeWeightingA() {
+        timeWeighting.processSamples(signal);
+        return timeWeighting.getFastMax();
+    }
+}
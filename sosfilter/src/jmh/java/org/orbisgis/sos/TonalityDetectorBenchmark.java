@@ -0,0 +1,93 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+package org.orbisgis.sos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the tonality analysis of one 125 ms window at 44.1 kHz. spectrum computes the narrow
+ * band spectrum of the window, tonality runs {@link TonalityDetector} on this spectrum.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TonalityDetectorBenchmark {
+    private static final int SAMPLE_RATE = 44100;
+    private float[] samples;
+    private Window window;
+    private FFTSignalProcessing.ProcessingResult result;
+    private TonalityDetector tonalityDetector;
+
+    @Setup
+    public void setUp() throws IOException {
+        float[] signal = BenchmarkSignal.loadPinkNoise(SAMPLE_RATE);
+        for (int i = 0; i < signal.length; i++) {
+            signal[i] += (float) (0.01 * Math.sin(2 * Math.PI * 1000 * i / SAMPLE_RATE));
+        }
+        window = new Window(FFTSignalProcessing.WINDOW_TYPE.HANN, SAMPLE_RATE,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED,
+                AcousticIndicators.TIMEPERIOD_FAST, false, FFTSignalProcessing.DB_FS_REFERENCE,
+                true);
+        samples = Arrays.copyOf(signal, window.getMaximalBufferSize());
+        window.pushSample(samples);
+        // The window reuses its result, the benchmarks push new windows
+        result = new FFTSignalProcessing.ProcessingResult();
+        result.accumulate(window.getLastWindowMean());
+        window.cleanWindows();
+        tonalityDetector = new TonalityDetector(SAMPLE_RATE /
+                (double) (int) (SAMPLE_RATE * AcousticIndicators.TIMEPERIOD_FAST), 50, 10000, 3, 8);
+    }
+
+    @Benchmark
+    public void spectrum(Blackhole blackhole) {
+        window.pushSample(samples);
+        blackhole.consume(window.getLastWindowMean());
+        window.cleanWindows();
+    }
+
+    @Benchmark
+    public void tonality(Blackhole blackhole) {
+        blackhole.consume(tonalityDetector.processResult(result));
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fast (125 ms) A-weighted analysis. pushSample splits the signal according to
+ * {@link Window#getMaximalBufferSize()} as done before the circular buffer, pushRecorderBuffer
+ * pushes 4096 samples buffers as read from the recorder and receives the windows through a
+ * {@link Window.WindowListener}, as done by the measurement activity. pushPcmBuffer pushes the
+ * same buffers as 16 bits PCM read from a direct {@link ByteBuffer}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class WindowBenchmark {
+    @Param({"44100", "48000"})
+    public int sampleRate;
+
+    private Window window;
+    private float[] signal;
+    private int lastPushIndex = 0;
+    private Window recorderWindow;
+    private Blackhole listenerBlackhole;
+    private ByteBuffer pcm;
+
+    @Setup
+    public void setUp() throws IOException {
+        signal = BenchmarkSignal.loadPinkNoise(sampleRate);
+        window = new Window(FFTSignalProcessing.WINDOW_TYPE.TUKEY, sampleRate,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED,
+                AcousticIndicators.TIMEPERIOD_FAST, true, FFTSignalProcessing.DB_FS_REFERENCE,
+                true);
+        recorderWindow = new Window(FFTSignalProcessing.WINDOW_TYPE.TUKEY, sampleRate,
+                ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED,
+                AcousticIndicators.TIMEPERIOD_FAST, true, FFTSignalProcessing.DB_FS_REFERENCE,
+                true);
+        pcm = ByteBuffer.allocateDirect(signal.length * 2).order(ByteOrder.nativeOrder());
+        for (float sample : signal) {
+            pcm.putShort((short) sample);
+        }
+        recorderWindow.setListener(new Window.WindowListener() {
+            @Override
+            public void onWindow(Window window) {
+                listenerBlackhole.consume(window.getLastWindowMean());
+                window.cleanWindows();
+            }
+        });
+    }
+
+    @Benchmark
+    public void pushSample(Blackhole blackhole) {
+        int cursor = 0;
+        while (cursor < signal.length) {
+            int sampleLen = Math.min(window.getMaximalBufferSize(), signal.length - cursor);
+            float[] samples = Arrays.copyOfRange(signal, cursor, cursor + sampleLen);
+            cursor += samples.length;
+            window.pushSample(samples);
+            if (window.getWindowIndex() != lastPushIndex) {
+                lastPushIndex = window.getWindowIndex();
+                blackhole.consume(window.getLastWindowMean());
+                window.cleanWindows();
+            }
+        }
+    }
+
+    @Benchmark
+    public void pushRecorderBuffer(Blackhole blackhole) {
+        listenerBlackhole = blackhole;
+        for (int cursor = 0; cursor < signal.length; cursor += 4096) {
+            recorderWindow.pushSample(signal, cursor, Math.min(4096, signal.length - cursor));
+        }
+    }
+
+    @Benchmark
+    public void pushPcmBuffer(Blackhole blackhole) {
+        listenerBlackhole = blackhole;
+        pcm.clear();
+        while (pcm.position() < pcm.capacity()) {
+            pcm.limit(Math.min(pcm.capacity(), pcm.position() + 4096 * 2));
+            recorderWindow.pushSample(pcm);
+        }
+    }
+}
@@ -67,7 +67,7 @@ public class AcousticIndicators {
     }
 
     public static double todBspl(double rms, double refSoundPressure ) {
-        return 20 * Math.log10(rms / refSoundPressure);
+        return 2 * DecibelMath.toDecibel(rms / refSoundPressure);
     }
 
     /**
@@ -118,44 +118,24 @@ public class AcousticIndicators {
         return leqT;
     }
 
+    /**
+     * Apply a Tukey window to a signal
+     * @param signal time signal
+     * @param tukey_alpha ratio of the window covered by the cosine tapers
+     * @return sum of the square of the window coefficients
+     * @see WindowFunction#tukey(int, double)
+     */
     public static double tukeyWindow(float[] signal, double tukey_alpha) {
-        double energy_correction = 0;
-        int index_begin_flat = (int)((tukey_alpha / 2) * signal.length);
-        int index_end_flat = signal.length - index_begin_flat;
-        double window_value;
-        // Begin Hann part
-        for(int i=0; i < index_begin_flat; i++) {
-            window_value = (0.5 * (1 + Math.cos(2 * Math.PI / tukey_alpha * ((i / (float)signal.length) - tukey_alpha / 2))));
-            energy_correction += window_value * window_value;
-            signal[i] *= window_value;
-        }
-        // Flat part
-        energy_correction += index_end_flat - index_begin_flat;
-        // No changes
-        // End Hann part
-        for(int i=index_end_flat; i < signal.length; i++) {
-            window_value = (0.5 * (1 + Math.cos(2 * Math.PI / tukey_alpha * ((i / (float)signal.length) - 1 + tukey_alpha / 2))));
-            energy_correction += window_value * window_value;
-            signal[i] *= window_value;
-        }
-        return energy_correction;
+        return WindowFunction.tukey(signal.length, tukey_alpha).apply(signal);
     }
     /**
      * Apply a Hanning window to a signal
      * @param signal time signal
-     * @return the windowed signal
+     * @return sum of the square of the window coefficients
+     * @see WindowFunction#hann(int)
      */
     public static double hannWindow(float[] signal) {
-        double energyCorrection = 0;
-        // Iterate until the last line of the data buffer
-        for (int n = 1; n < signal.length; n++) {
-            // reduce unnecessarily performed frequency part of each and every frequency
-            double coeff = 0.5 * (1 - Math.cos((2 * Math.PI * n) / (signal.length - 1)));
-            signal[n] *= coeff;
-            energyCorrection += coeff * coeff;
-        }
-        // Return modified buffer
-        return energyCorrection;
+        return WindowFunction.hann(signal.length).apply(signal);
     }
 
     /**
@@ -0,0 +1,426 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyze many audio files using all the processor cores. Each worker thread analyzes one file
+ * at a time with its own signal processing instances, and takes the next file as soon as it is
+ * done, so long and short files are balanced between workers. Each worker reads one window at a
+ * time, so the memory usage only depends on the number of workers and the window length.
+ */
+public class AudioBatchAnalyzer {
+    private final AudioFileAnalyzer analyzer;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private ProgressListener progressListener = null;
+
+    /**
+     * @param analyzer Analysis settings, shared by all the workers. It must not be changed
+     * during {@link #run(List, File)}.
+     */
+    public AudioBatchAnalyzer(AudioFileAnalyzer analyzer) {
+        this.analyzer = analyzer;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @param workers Number of files analyzed at the same time
+     */
+    public void setWorkers(int workers) {
+        if(workers < 1) {
+            throw new IllegalArgumentException("At least one worker is required");
+        }
+        this.workers = workers;
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * List the audio files of a directory and its sub-directories, or of a manifest
+     * (text file with one path per line, relative paths are resolved from the manifest folder)
+     * @param source Directory or manifest
+     * @return Audio files, in name order for directories
+     */
+    public static List<File> listInputs(File source) throws IOException {
+        List<File> inputs = new ArrayList<>();
+        if(source.isDirectory()) {
+            listDirectory(source, inputs);
+        } else {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(source), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if(!line.isEmpty() && !line.startsWith("#")) {
+                        File file = new File(line);
+                        inputs.add(file.isAbsolute() ? file : new File(source.getAbsoluteFile().getParentFile(), line));
+                    }
+                }
+            }
+        }
+        return inputs;
+    }
+
+    private static void listDirectory(File directory, List<File> inputs) throws IOException {
+        File[] files = directory.listFiles();
+        if(files == null) {
+            throw new IOException("Cannot list directory " + directory);
+        }
+        Arrays.sort(files);
+        for(File file : files) {
+            if(file.isDirectory()) {
+                listDirectory(file, inputs);
+            } else {
+                String name = file.getName().toLowerCase(Locale.ROOT);
+                if(name.endsWith(".wav") || name.endsWith(".raw") || name.endsWith(".pcm")) {
+                    inputs.add(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param inputs Audio files
+     * @return Deepest directory containing all the inputs, after resolution of the . and ..
+     * segments of their paths. Null if they do not share a root
+     */
+    public static File getCommonDirectory(List<File> inputs) {
+        Path common = null;
+        for(File input : inputs) {
+            Path parent = normalize(input).getParent();
+            if(common == null) {
+                common = parent;
+            } else {
+                while(common != null && !parent.startsWith(common)) {
+                    common = common.getParent();
+                }
+                if(common == null) {
+                    return null;
+                }
+            }
+        }
+        return common == null ? null : common.toFile();
+    }
+
+    private static Path normalize(File file) {
+        return file.toPath().toAbsolutePath().normalize();
+    }
+
+    /**
+     * @param input Audio file
+     * @param inputDirectory Directory of the inputs, see {@link #getCommonDirectory(List)}. The
+     *                       path of the input relative to this directory is mirrored in the output
+     *                       directory. If null the absolute path of the input is mirrored.
+     * @param outputDirectory Destination directory
+     * @return Output file of this input, csv or bin is appended to the input file name so that
+     * inputs differing only by their extension do not share an output
+     * @throws IllegalArgumentException If the input is not in the input directory, its output
+     * would not be in the output directory
+     */
+    public File getOutputFile(File input, File inputDirectory, File outputDirectory) {
+        Path inputPath = normalize(input);
+        Path relative = inputDirectory == null ? inputPath.getRoot().relativize(inputPath) :
+                normalize(inputDirectory).relativize(inputPath);
+        Path outputRoot = normalize(outputDirectory);
+        Path output = outputRoot.resolve(relative).normalize();
+        if(output.getFileName() == null || output.equals(outputRoot) || !output.startsWith(outputRoot)) {
+            throw new IllegalArgumentException("The output of " + input + " is not in the output directory");
+        }
+        return output.resolveSibling(output.getFileName() +
+                (analyzer.getFormat() == AudioFileAnalyzer.FORMAT.CSV ? ".csv" : ".bin")).toFile();
+    }
+
+    /**
+     * Analyze all the files. A failure on one file does not stop the batch.
+     * The levels files are written in the output directory with the same sub-directories as
+     * the inputs relative to their common directory.
+     * @param inputs Audio files
+     * @param outputDirectory Destination directory of the levels files
+     * @return Summary of the batch
+     */
+    public BatchResult run(List<File> inputs, File outputDirectory) throws InterruptedException {
+        if(!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create output directory " + outputDirectory);
+        }
+        File inputDirectory = getCommonDirectory(inputs);
+        Set<File> outputs = new HashSet<>();
+        for(File input : inputs) {
+            File output = getOutputFile(input, inputDirectory, outputDirectory);
+            if(!outputs.add(output)) {
+                throw new IllegalArgumentException("Several inputs are written to " + output +
+                        ", the input " + input + " is listed twice");
+            }
+        }
+        BatchResult result = new BatchResult(inputs.size());
+        long start = System.nanoTime();
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(workers, Math.max(1, inputs.size())));
+        try {
+            ExecutorCompletionService<FileResult> completionService = new ExecutorCompletionService<>(executorService);
+            for(File input : inputs) {
+                completionService.submit(new FileAnalysis(input, getOutputFile(input, inputDirectory,
+                        outputDirectory)));
+            }
+            for(int i = 0; i < inputs.size(); i++) {
+                FileResult fileResult;
+                try {
+                    fileResult = completionService.take().get();
+                } catch (ExecutionException ex) {
+                    // FileAnalysis catches analysis errors
+                    throw new IllegalStateException(ex.getCause());
+                }
+                result.add(fileResult);
+                result.elapsedSeconds = (System.nanoTime() - start) / 1e9;
+                if(progressListener != null) {
+                    progressListener.onFileProcessed(fileResult, result);
+                }
+            }
+        } finally {
+            executorService.shutdownNow();
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        return result;
+    }
+
+    private class FileAnalysis implements Callable<FileResult> {
+        private final File input;
+        private final File output;
+
+        FileAnalysis(File input, File output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        @Override
+        public FileResult call() {
+            long start = System.nanoTime();
+            File outputParent = output.getParentFile();
+            if(!outputParent.isDirectory() && !outputParent.mkdirs() && !outputParent.isDirectory()) {
+                return new FileResult(input, output, 0, (System.nanoTime() - start) / 1e9,
+                        new IOException("Cannot create output directory " + outputParent));
+            }
+            try (OutputStream outputStream = new FileOutputStream(output)) {
+                long windows = analyzer.analyze(input, outputStream);
+                return new FileResult(input, output, windows * analyzer.getWindowTime(),
+                        (System.nanoTime() - start) / 1e9, null);
+            } catch (IOException | RuntimeException ex) {
+                // Do not leave a truncated levels file
+                output.delete();
+                return new FileResult(input, output, 0, (System.nanoTime() - start) / 1e9, ex);
+            }
+        }
+    }
+
+    public interface ProgressListener {
+        /**
+         * Called from the thread running the batch each time a file is done
+         * @param fileResult Done file
+         * @param batchResult Batch progression
+         */
+        void onFileProcessed(FileResult fileResult, BatchResult batchResult);
+    }
+
+    public static final class FileResult {
+        private final File input;
+        private final File output;
+        private final double audioSeconds;
+        private final double processingSeconds;
+        private final Exception error;
+
+        FileResult(File input, File output, double audioSeconds, double processingSeconds, Exception error) {
+            this.input = input;
+            this.output = output;
+            this.audioSeconds = audioSeconds;
+            this.processingSeconds = processingSeconds;
+            this.error = error;
+        }
+
+        public File getInput() {
+            return input;
+        }
+
+        public File getOutput() {
+            return output;
+        }
+
+        /**
+         * @return Duration of the analyzed audio in seconds
+         */
+        public double getAudioSeconds() {
+            return audioSeconds;
+        }
+
+        public double getProcessingSeconds() {
+            return processingSeconds;
+        }
+
+        /**
+         * @return Analysis failure, null if the file has been analyzed
+         */
+        public Exception getError() {
+            return error;
+        }
+    }
+
+    public static final class BatchResult {
+        private final int totalFiles;
+        private int processedFiles = 0;
+        private double audioSeconds = 0;
+        private double elapsedSeconds = 0;
+        private final Map<File, Exception> failures = new LinkedHashMap<>();
+
+        BatchResult(int totalFiles) {
+            this.totalFiles = totalFiles;
+        }
+
+        void add(FileResult fileResult) {
+            processedFiles++;
+            audioSeconds += fileResult.getAudioSeconds();
+            if(fileResult.getError() != null) {
+                failures.put(fileResult.getInput(), fileResult.getError());
+            }
+        }
+
+        public int getTotalFiles() {
+            return totalFiles;
+        }
+
+        /**
+         * @return Number of done files, including failures
+         */
+        public int getProcessedFiles() {
+            return processedFiles;
+        }
+
+        public double getAudioSeconds() {
+            return audioSeconds;
+        }
+
+        public double getElapsedSeconds() {
+            return elapsedSeconds;
+        }
+
+        /**
+         * @return Analyzed audio duration divided by elapsed time
+         */
+        public double getRealTimeFactor() {
+            return elapsedSeconds > 0 ? audioSeconds / elapsedSeconds : 0;
+        }
+
+        public Map<File, Exception> getFailures() {
+            return Collections.unmodifiableMap(failures);
+        }
+    }
+
+    private static void printUsage(PrintStream out) {
+        out.println("Usage: AudioBatchAnalyzer [options] --output-dir <directory> <directory or manifest>...");
+        out.println("  --output-dir <directory> Destination of the levels files, with the sub-directories of the inputs");
+        out.println("  --workers <count>        Files analyzed in parallel (default all processors)");
+        AudioFileAnalyzer.printOptionsUsage(out);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        AudioFileAnalyzer analyzer = new AudioFileAnalyzer();
+        AudioBatchAnalyzer batchAnalyzer = new AudioBatchAnalyzer(analyzer);
+        File outputDirectory = null;
+        List<File> inputs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                int consumed = analyzer.parseOption(args, i);
+                if (consumed > 0) {
+                    i += consumed - 1;
+                } else if ("--help".equals(arg) || "-h".equals(arg)) {
+                    printUsage(System.out);
+                    return;
+                } else if ("--output-dir".equals(arg) && i + 1 < args.length) {
+                    outputDirectory = new File(args[++i]);
+                } else if ("--workers".equals(arg) && i + 1 < args.length) {
+                    batchAnalyzer.setWorkers(Integer.parseInt(args[++i]));
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                } else {
+                    inputs.addAll(listInputs(new File(arg)));
+                }
+            }
+            if (outputDirectory == null) {
+                throw new IllegalArgumentException("Missing output directory");
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            printUsage(System.err);
+            System.exit(1);
+            return;
+        }
+        batchAnalyzer.setProgressListener(new ProgressListener() {
+            @Override
+            public void onFileProcessed(FileResult fileResult, BatchResult batchResult) {
+                System.err.println(String.format(Locale.ROOT, "[%d/%d] %s %s (%.0f s of audio, %.1fx real time overall)",
+                        batchResult.getProcessedFiles(), batchResult.getTotalFiles(), fileResult.getInput(),
+                        fileResult.getError() == null ? "done" : "failed: " + fileResult.getError().getMessage(),
+                        batchResult.getAudioSeconds(), batchResult.getRealTimeFactor()));
+            }
+        });
+        BatchResult result = batchAnalyzer.run(inputs, outputDirectory);
+        System.err.println(String.format(Locale.ROOT, "%d files, %.0f s of audio analyzed in %.1f s, %d failures",
+                result.getProcessedFiles(), result.getAudioSeconds(), result.getElapsedSeconds(),
+                result.getFailures().size()));
+        if (!result.getFailures().isEmpty()) {
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Command line analysis of recorded audio files. The file is read by chunks of one window so
+ * the memory usage does not depend on the file length. For each window the LAeq and the third
+ * octave levels are written as CSV or as a binary stream:
+ * <ul>
+ *     <li>Header: "NCLV" int version, int sample rate, double window time (s), int band count,
+ *     double[band count] nominal frequencies (Hz)</li>
+ *     <li>Each window: double start time (s), float LAeq, float[band count] levels (dB)</li>
+ * </ul>
+ * Binary values are big endian ({@link DataOutputStream}). An incomplete last window is ignored.
+ */
+public class AudioFileAnalyzer {
+    public enum METHOD { FFT, FILTER }
+    public enum FORMAT { CSV, BINARY }
+    public static final int BINARY_VERSION = 1;
+    private static final byte[] BINARY_MAGIC = {'N', 'C', 'L', 'V'};
+    private static final double MAX_FREQUENCY = 16000;
+
+    private METHOD method = METHOD.FFT;
+    private FORMAT format = FORMAT.CSV;
+    private double windowTime = 1.0;
+    private double dbFsReference = FFTSignalProcessing.DB_FS_REFERENCE;
+    private int parallelism = 1;
+    private int bandsPerOctave = FractionalOctaveBands.THIRD_OCTAVE;
+    private int rawSampleRate = 0;
+    private ByteOrder rawByteOrder = ByteOrder.LITTLE_ENDIAN;
+
+    public METHOD getMethod() {
+        return method;
+    }
+
+    /**
+     * @param method FFT (Tukey window) or FILTER (filter bank)
+     */
+    public void setMethod(METHOD method) {
+        this.method = method;
+    }
+
+    public FORMAT getFormat() {
+        return format;
+    }
+
+    public void setFormat(FORMAT format) {
+        this.format = format;
+    }
+
+    public double getWindowTime() {
+        return windowTime;
+    }
+
+    /**
+     * @param windowTime Duration of a window in seconds
+     */
+    public void setWindowTime(double windowTime) {
+        this.windowTime = windowTime;
+    }
+
+    public double getDbFsReference() {
+        return dbFsReference;
+    }
+
+    /**
+     * @param dbFsReference Sound level in dB of a full scale sinusoidal signal
+     */
+    public void setDbFsReference(double dbFsReference) {
+        this.dbFsReference = dbFsReference;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism Number of threads of the filter bank method
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getBandsPerOctave() {
+        return bandsPerOctave;
+    }
+
+    /**
+     * @param bandsPerOctave Band resolution, 1 for octave bands, 3 for third octave bands..
+     */
+    public void setBandsPerOctave(int bandsPerOctave) {
+        FractionalOctaveBands.checkBandsPerOctave(bandsPerOctave);
+        this.bandsPerOctave = bandsPerOctave;
+    }
+
+    public int getRawSampleRate() {
+        return rawSampleRate;
+    }
+
+    /**
+     * @param rawSampleRate Sample rate of raw mono PCM files in Hz
+     */
+    public void setRawSampleRate(int rawSampleRate) {
+        this.rawSampleRate = rawSampleRate;
+    }
+
+    public ByteOrder getRawByteOrder() {
+        return rawByteOrder;
+    }
+
+    public void setRawByteOrder(ByteOrder rawByteOrder) {
+        this.rawByteOrder = rawByteOrder;
+    }
+
+    /**
+     * Analyze the whole audio file. This method can be called concurrently, each call uses its own
+     * signal processing instances.
+     * @param reader Audio source, it is not closed
+     * @param outputStream Destination of the levels, it is flushed but not closed
+     * @return Number of windows written
+     */
+    public long analyze(AudioFileReader reader, OutputStream outputStream) throws IOException {
+        final int sampleRate = reader.getSampleRate();
+        final int windowSize = (int) (sampleRate * windowTime);
+        if(windowSize <= 0) {
+            throw new IllegalArgumentException("Window time too short");
+        }
+        LevelWriter writer = format == FORMAT.CSV ? new CsvLevelWriter(outputStream) :
+                new BinaryLevelWriter(outputStream);
+        float[] samples = new float[windowSize];
+        long windowCount = 0;
+        if(method == METHOD.FFT) {
+            double[] frequencies = FFTSignalProcessing.computeFFTCenterFrequency(
+                    (int) Math.min(MAX_FREQUENCY, sampleRate / 2.0), bandsPerOctave);
+            Window window = new Window(FFTSignalProcessing.WINDOW_TYPE.TUKEY, sampleRate,
+                    frequencies, windowTime, true, dbFsReference, false, 0, bandsPerOctave);
+            writer.writeHeader(sampleRate, windowTime, frequencies);
+            while (reader.read(samples) == samples.length) {
+                window.pushSample(samples);
+                FFTSignalProcessing.ProcessingResult result = window.getLastWindowMean();
+                writer.writeWindow(windowCount * windowTime, result.getWindowLaeq(), result.getSpl());
+                window.cleanWindows();
+                windowCount++;
+            }
+        } else {
+            try (SpectrumChannel spectrumChannel = new SpectrumChannel(parallelism)) {
+                spectrumChannel.loadConfiguration(
+                        FilterDesignCache.loadConfiguration(sampleRate, bandsPerOctave), true);
+                if(windowSize % spectrumChannel.getMinimumSamplesLength() != 0) {
+                    throw new IllegalArgumentException(String.format(Locale.ROOT,
+                            "The filter bank window must be a multiple of %d samples at %d Hz",
+                            spectrumChannel.getMinimumSamplesLength(), sampleRate));
+                }
+                List<Double> nominalFrequency = spectrumChannel.getNominalFrequency();
+                double[] frequencies = new double[nominalFrequency.size()];
+                for (int i = 0; i < frequencies.length; i++) {
+                    frequencies[i] = nominalFrequency.get(i);
+                }
+                writer.writeHeader(sampleRate, windowTime, frequencies);
+                while (reader.read(samples) == samples.length) {
+                    double lAeq = spectrumChannel.processSamplesWeightA(samples) + dbFsReference;
+                    double[] spl = spectrumChannel.processSamples(samples);
+                    for (int i = 0; i < spl.length; i++) {
+                        spl[i] += dbFsReference;
+                    }
+                    writer.writeWindow(windowCount * windowTime, lAeq, spl);
+                    windowCount++;
+                }
+            }
+        }
+        writer.flush();
+        return windowCount;
+    }
+
+    /**
+     * Open the audio file, a .wav file is read as WAV, other files as raw PCM
+     * @param file Audio file
+     * @return Audio reader, to be closed by the caller
+     */
+    public AudioFileReader openReader(File file) throws IOException {
+        if(file.getName().toLowerCase(Locale.ROOT).endsWith(".wav")) {
+            return new AudioFileReader(file);
+        } else if(rawSampleRate > 0) {
+            return new AudioFileReader(file, rawSampleRate, rawByteOrder);
+        } else {
+            throw new IllegalArgumentException("Sample rate of raw PCM file " + file + " is not set");
+        }
+    }
+
+    /**
+     * Analyze the whole audio file
+     * @param file Audio file, see {@link #openReader(File)}
+     * @param outputStream Destination of the levels, it is flushed but not closed
+     * @return Number of windows written
+     */
+    public long analyze(File file, OutputStream outputStream) throws IOException {
+        try (AudioFileReader reader = openReader(file)) {
+            return analyze(reader, outputStream);
+        }
+    }
+
+    /**
+     * Apply a command line option shared by the command line tools
+     * @param args Command line arguments
+     * @param index Index of the option
+     * @return Number of consumed arguments, 0 if this is not an analyzer option
+     */
+    int parseOption(String[] args, int index) {
+        String arg = args[index];
+        if ("--big-endian".equals(arg)) {
+            setRawByteOrder(ByteOrder.BIG_ENDIAN);
+            return 1;
+        }
+        if (!arg.equals("--method") && !arg.equals("--window") && !arg.equals("--format")
+                && !arg.equals("--dbfs-reference") && !arg.equals("--threads") && !arg.equals("--rate")
+                && !arg.equals("--bands")) {
+            return 0;
+        }
+        if (index + 1 >= args.length) {
+            throw new IllegalArgumentException("Missing value of " + arg);
+        }
+        String value = args[index + 1];
+        switch (arg) {
+            case "--method":
+                setMethod(METHOD.valueOf(value.toUpperCase(Locale.ROOT)));
+                break;
+            case "--window":
+                setWindowTime(Double.parseDouble(value));
+                break;
+            case "--format":
+                setFormat(FORMAT.valueOf(value.toUpperCase(Locale.ROOT)));
+                break;
+            case "--dbfs-reference":
+                setDbFsReference(Double.parseDouble(value));
+                break;
+            case "--threads":
+                setParallelism(Integer.parseInt(value));
+                break;
+            case "--bands":
+                setBandsPerOctave(Integer.parseInt(value));
+                break;
+            default:
+                setRawSampleRate(Integer.parseInt(value));
+        }
+        return 2;
+    }
+
+    static void printOptionsUsage(PrintStream out) {
+        out.println("  Audio files are 16 bits PCM WAV files (.wav), other files are raw PCM");
+        out.println("  --method fft|filter      FFT or filter bank (default fft)");
+        out.println("  --bands 1|3|6|12         Bands per octave (default 3)");
+        out.println("  --window <seconds>       Window duration (default 1)");
+        out.println("  --format csv|binary      Output format (default csv)");
+        out.println("  --dbfs-reference <dB>    Level of a full scale signal (default "
+                + String.format(Locale.ROOT, "%.2f", FFTSignalProcessing.DB_FS_REFERENCE) + ")");
+        out.println("  --threads <count>        Filter bank threads (default 1)");
+        out.println("  --rate <Hz>              Sample rate of raw mono PCM files");
+        out.println("  --big-endian             Byte order of raw PCM files (default little endian)");
+    }
+
+    private static void printUsage(PrintStream out) {
+        out.println("Usage: AudioFileAnalyzer [options] <audio file>");
+        out.println("  --output <file>          Output file (default standard output)");
+        printOptionsUsage(out);
+    }
+
+    public static void main(String[] args) throws IOException {
+        AudioFileAnalyzer analyzer = new AudioFileAnalyzer();
+        File input = null;
+        File output = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                int consumed = analyzer.parseOption(args, i);
+                if (consumed > 0) {
+                    i += consumed - 1;
+                } else if ("--help".equals(arg) || "-h".equals(arg)) {
+                    printUsage(System.out);
+                    return;
+                } else if ("--output".equals(arg) && i + 1 < args.length) {
+                    output = new File(args[++i]);
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option " + arg);
+                } else if (input == null) {
+                    input = new File(arg);
+                } else {
+                    throw new IllegalArgumentException("Only one audio file is expected");
+                }
+            }
+            if (input == null) {
+                throw new IllegalArgumentException("Missing audio file");
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            printUsage(System.err);
+            System.exit(1);
+            return;
+        }
+        try (OutputStream outputStream = output != null ? new FileOutputStream(output) : null) {
+            analyzer.analyze(input, outputStream != null ? outputStream : System.out);
+        }
+    }
+
+    private interface LevelWriter {
+        void writeHeader(int sampleRate, double windowTime, double[] frequencies) throws IOException;
+
+        void writeWindow(double time, double lAeq, double[] spl) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    private static class CsvLevelWriter implements LevelWriter {
+        private final Writer writer;
+        private final StringBuilder line = new StringBuilder();
+
+        CsvLevelWriter(OutputStream outputStream) {
+            writer = new OutputStreamWriter(new BufferedOutputStream(outputStream), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void writeHeader(int sampleRate, double windowTime, double[] frequencies) throws IOException {
+            line.setLength(0);
+            line.append("time,LAeq");
+            for (double frequency : frequencies) {
+                line.append(",").append(frequency);
+            }
+            line.append("\n");
+            writer.write(line.toString());
+        }
+
+        @Override
+        public void writeWindow(double time, double lAeq, double[] spl) throws IOException {
+            line.setLength(0);
+            line.append(String.format(Locale.ROOT, "%.3f,%.2f", time, lAeq));
+            for (double level : spl) {
+                line.append(String.format(Locale.ROOT, ",%.2f", level));
+            }
+            line.append("\n");
+            writer.write(line.toString());
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writer.flush();
+        }
+    }
+
+    private static class BinaryLevelWriter implements LevelWriter {
+        private final DataOutputStream outputStream;
+
+        BinaryLevelWriter(OutputStream outputStream) {
+            this.outputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+        }
+
+        @Override
+        public void writeHeader(int sampleRate, double windowTime, double[] frequencies) throws IOException {
+            outputStream.write(BINARY_MAGIC);
+            outputStream.writeInt(BINARY_VERSION);
+            outputStream.writeInt(sampleRate);
+            outputStream.writeDouble(windowTime);
+            outputStream.writeInt(frequencies.length);
+            for (double frequency : frequencies) {
+                outputStream.writeDouble(frequency);
+            }
+        }
+
+        @Override
+        public void writeWindow(double time, double lAeq, double[] spl) throws IOException {
+            outputStream.writeDouble(time);
+            outputStream.writeFloat((float) lAeq);
+            for (double level : spl) {
+                outputStream.writeFloat((float) level);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            outputStream.flush();
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read 16 bits PCM audio from a WAV or raw file by chunks, using a constant amount of memory
+ * whatever the file length. Multi-channel files are mixed down to mono.
+ */
+public class AudioFileReader implements Closeable {
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+    private static final int BYTES_PER_SAMPLE = 2;
+
+    private final FileInputStream inputStream;
+    private final FileChannel channel;
+    private final int sampleRate;
+    private final int channels;
+    private final ByteOrder byteOrder;
+    // Remaining bytes of audio data, Long.MAX_VALUE to read up to the end of file
+    private long remainingBytes;
+    private ByteBuffer buffer = ByteBuffer.allocate(0);
+
+    /**
+     * Open a WAV file, only 16 bits PCM is supported
+     * @param file WAV file
+     */
+    public AudioFileReader(File file) throws IOException {
+        inputStream = new FileInputStream(file);
+        channel = inputStream.getChannel();
+        byteOrder = ByteOrder.LITTLE_ENDIAN;
+        try {
+            ByteBuffer header = readHeader(12);
+            if (header.getInt() != 0x46464952 || header.getInt(8) != 0x45564157) {
+                throw new IOException("Not a RIFF WAVE file " + file);
+            }
+            int formatSampleRate = 0;
+            int formatChannels = 0;
+            while (true) {
+                ByteBuffer chunk = readHeader(8);
+                int chunkId = chunk.getInt();
+                long chunkSize = chunk.getInt() & 0xFFFFFFFFL;
+                if (chunkId == 0x20746d66) {
+                    // "fmt " chunk
+                    if (chunkSize < 16) {
+                        throw new IOException("Invalid fmt chunk");
+                    }
+                    ByteBuffer format = readHeader(16);
+                    int audioFormat = format.getShort() & 0xFFFF;
+                    formatChannels = format.getShort() & 0xFFFF;
+                    formatSampleRate = format.getInt();
+                    int bitsPerSample = format.getShort(14) & 0xFFFF;
+                    if ((audioFormat != WAVE_FORMAT_PCM && audioFormat != WAVE_FORMAT_EXTENSIBLE)
+                            || bitsPerSample != BYTES_PER_SAMPLE * 8) {
+                        throw new IOException("Only 16 bits PCM WAV files are supported");
+                    }
+                    skip(chunkSize - 16 + (chunkSize % 2));
+                } else if (chunkId == 0x61746164) {
+                    // "data" chunk, the size may be left empty by streaming recorders
+                    if (formatChannels == 0) {
+                        throw new IOException("WAV data chunk found before format chunk");
+                    }
+                    remainingBytes = chunkSize == 0 || chunkSize == 0xFFFFFFFFL ? Long.MAX_VALUE : chunkSize;
+                    break;
+                } else {
+                    skip(chunkSize + (chunkSize % 2));
+                }
+            }
+            sampleRate = formatSampleRate;
+            channels = formatChannels;
+        } catch (IOException | RuntimeException ex) {
+            inputStream.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Open a raw 16 bits mono PCM file
+     * @param file Raw file
+     * @param sampleRate Sampling rate in Hz
+     * @param byteOrder Samples byte order
+     */
+    public AudioFileReader(File file, int sampleRate, ByteOrder byteOrder) throws IOException {
+        inputStream = new FileInputStream(file);
+        channel = inputStream.getChannel();
+        this.sampleRate = sampleRate;
+        this.channels = 1;
+        this.byteOrder = byteOrder;
+        this.remainingBytes = Long.MAX_VALUE;
+    }
+
+    private ByteBuffer readHeader(int length) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header) == -1) {
+                throw new EOFException("Unexpected end of WAV header");
+            }
+        }
+        header.flip();
+        return header;
+    }
+
+    private void skip(long length) throws IOException {
+        channel.position(channel.position() + length);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Read the next samples, mixed down to mono and rescaled to [-1, 1]
+     * @param samples Output, completely filled unless the end of file is reached
+     * @return Number of samples read, -1 if the end of file has been reached
+     */
+    public int read(float[] samples) throws IOException {
+        final int frameBytes = channels * BYTES_PER_SAMPLE;
+        int bytesToRead = (int) Math.min((long) samples.length * frameBytes,
+                remainingBytes - remainingBytes % frameBytes);
+        if (buffer.capacity() < bytesToRead) {
+            buffer = ByteBuffer.allocate(bytesToRead);
+        }
+        buffer.clear();
+        buffer.limit(bytesToRead);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                break;
+            }
+        }
+        buffer.flip();
+        buffer.order(byteOrder);
+        // Ignore a last incomplete frame
+        int frames = buffer.remaining() / frameBytes;
+        if (remainingBytes != Long.MAX_VALUE) {
+            remainingBytes -= buffer.remaining();
+        }
+        if (frames == 0) {
+            return -1;
+        }
+        final float scale = 32768.0f * channels;
+        for (int frame = 0; frame < frames; frame++) {
+            int sum = 0;
+            for (int idChannel = 0; idChannel < channels; idChannel++) {
+                sum += buffer.getShort();
+            }
+            samples[frame] = sum / scale;
+        }
+        return frames;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inputStream.close();
+    }
+}
@@ -27,6 +27,8 @@
 
 package org.orbisgis.sos;
 
+import java.util.Arrays;
+
 /**
  * A digital biquad filter is a second order recursive linear filter,
  *  containing two poles and two zeros. "Biquad" is an abbreviation of "bi-quadratic",
@@ -81,7 +83,7 @@ public class BiquadFilter {
             }
             square_sum += input_acc * input_acc;
         }
-        return 10 * Math.log10(square_sum / samples.length);
+        return DecibelMath.toDecibel(square_sum / samples.length);
     }
 
     public void filterSlice(float[] samplesIn, float[] samplesOut, int subsampling_factor) {
@@ -105,4 +107,47 @@ public class BiquadFilter {
             }
         }
     }
+
+    /**
+     * Same as {@link #filterSlice(float[], float[], int)} on an interleaved signal, in a single
+     * pass. Each channel has its own delays, the first channel shares the delays of the mono
+     * methods.
+     * @param samplesIn Input signal, frame after frame
+     * @param samplesOut Interleaved subsampled signal
+     * @param subsampling_factor Keep one frame over subsampling_factor
+     * @param channelCount Number of channels
+     */
+    public void filterSlice(float[] samplesIn, float[] samplesOut, int subsampling_factor,
+                            int channelCount) {
+        final int sections = b0.length;
+        if(delay1.length < channelCount * sections) {
+            delay1 = Arrays.copyOf(delay1, channelCount * sections);
+            delay2 = Arrays.copyOf(delay2, channelCount * sections);
+        }
+        int samples_out_index = 0;
+        double output_acc;
+        final int frameCount = samplesIn.length / channelCount;
+        for(int frame=0; frame < frameCount; frame++) {
+            final boolean keep = frame % subsampling_factor == 0;
+            for(int channel = 0; channel < channelCount; channel++) {
+                final int delayOffset = channel * sections;
+                double input_acc = samplesIn[frame * channelCount + channel];
+                for(int j=0; j < sections; j++) {
+                    final int d = delayOffset + j;
+                    input_acc -= delay1[d] * a1[j];
+                    input_acc -= delay2[d] * a2[j];
+                    output_acc = input_acc * b0[j];
+                    output_acc += delay1[d] * b1[j];
+                    output_acc += delay2[d] * b2[j];
+                    delay2[d] = delay1[d];
+                    delay1[d] = input_acc;
+                    input_acc = output_acc;
+                }
+                if(keep) {
+                    samplesOut[samples_out_index] = (float)input_acc;
+                    samples_out_index++;
+                }
+            }
+        }
+    }
 }
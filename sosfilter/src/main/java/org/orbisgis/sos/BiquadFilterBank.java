@@ -0,0 +1,223 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Cascade of second order sections of several band filters sharing the same input signal.
+ * Coefficients and delays are stored band after band for each section (structure of arrays), so
+ * every input sample is read once and all the bands are advanced in the same inner loop. The
+ * inner loop has no dependency between bands, which lets the JIT compiler use SIMD instructions.
+ * Results are identical to calling {@link BiquadFilter#filterThenLeq(float[])} on each filter.
+ * Interleaved multi-channel signals are filtered in the same pass, each channel having its own
+ * delays.
+ */
+public class BiquadFilterBank {
+    private final int bandCount;
+    private final int sectionCount;
+    // Index is section * bandCount + band
+    private final double[] b0;
+    private final double[] b1;
+    private final double[] b2;
+    private final double[] a1;
+    private final double[] a2;
+    // Index is (channel * sectionCount + section) * bandCount + band
+    private double[] delay1;
+    private double[] delay2;
+    private int channelCount = 1;
+    // Scratch buffers, index is channel * bandCount + band
+    private double[] bandOutput;
+    private double[] squareSum;
+
+    /**
+     * @param filters Band filters, coefficients are copied but not the delays. Filters with less
+     * sections than the others are completed with pass-through sections.
+     */
+    public BiquadFilterBank(List<BiquadFilter> filters) {
+        bandCount = filters.size();
+        int maxSections = 0;
+        for(BiquadFilter filter : filters) {
+            maxSections = Math.max(maxSections, filter.b0.length);
+        }
+        sectionCount = maxSections;
+        b0 = new double[sectionCount * bandCount];
+        b1 = new double[b0.length];
+        b2 = new double[b0.length];
+        a1 = new double[b0.length];
+        a2 = new double[b0.length];
+        delay1 = new double[b0.length];
+        delay2 = new double[b0.length];
+        bandOutput = new double[bandCount];
+        squareSum = new double[bandCount];
+        // Pass-through section y = x
+        Arrays.fill(b0, 1);
+        for(int band = 0; band < bandCount; band++) {
+            BiquadFilter filter = filters.get(band);
+            for(int section = 0; section < filter.b0.length; section++) {
+                int k = section * bandCount + band;
+                b0[k] = filter.b0[section];
+                b1[k] = filter.b1[section];
+                b2[k] = filter.b2[section];
+                a1[k] = filter.a1[section];
+                a2[k] = filter.a2[section];
+            }
+        }
+    }
+
+    public int getBandCount() {
+        return bandCount;
+    }
+
+    public void reset() {
+        Arrays.fill(delay1, 0);
+        Arrays.fill(delay2, 0);
+    }
+
+    /**
+     * Filter the samples with all the bands
+     * @param samples Input signal
+     * @param leqs Output, equivalent level in dB of each band (10 log10 of the mean square)
+     */
+    public void filterThenLeq(float[] samples, double[] leqs) {
+        if(leqs.length < bandCount) {
+            throw new IllegalArgumentException("Output array shorter than the number of bands");
+        }
+        // Single channel loop kept apart, the channel offsets prevent the JIT vectorization
+        final double[] delay1 = this.delay1;
+        final double[] delay2 = this.delay2;
+        final double[] bandOutput = this.bandOutput;
+        final double[] squareSum = this.squareSum;
+        Arrays.fill(squareSum, 0);
+        for(int i = 0; i < samples.length; i++) {
+            Arrays.fill(bandOutput, 0, bandCount, samples[i]);
+            for(int section = 0; section < sectionCount; section++) {
+                final int offset = section * bandCount;
+                for(int band = 0; band < bandCount; band++) {
+                    final int k = offset + band;
+                    double input_acc = bandOutput[band];
+                    input_acc -= delay1[k] * a1[k];
+                    input_acc -= delay2[k] * a2[k];
+                    double output_acc = input_acc * b0[k];
+                    output_acc += delay1[k] * b1[k];
+                    output_acc += delay2[k] * b2[k];
+                    delay2[k] = delay1[k];
+                    delay1[k] = input_acc;
+                    bandOutput[band] = output_acc;
+                }
+            }
+            for(int band = 0; band < bandCount; band++) {
+                squareSum[band] += bandOutput[band] * bandOutput[band];
+            }
+        }
+        for(int band = 0; band < bandCount; band++) {
+            leqs[band] = DecibelMath.toDecibel(squareSum[band] / samples.length);
+        }
+    }
+
+    /**
+     * Filter an interleaved signal with all the bands, the channels are read in a single pass.
+     * The first channel shares its delays with {@link #filterThenLeq(float[], double[])}.
+     * @param samples Input signal, frame after frame
+     * @param channelCount Number of channels of the signal
+     * @param leqs Output, equivalent level in dB of each band for each channel [channel][band]
+     */
+    public void filterThenLeq(float[] samples, int channelCount, double[][] leqs) {
+        if(channelCount <= 0 || samples.length % channelCount != 0) {
+            throw new IllegalArgumentException("Samples length is not a multiple of the " +
+                    "channel count");
+        }
+        if(leqs.length < channelCount) {
+            throw new IllegalArgumentException("Output array shorter than the number of channels");
+        }
+        for(int channel = 0; channel < channelCount; channel++) {
+            if(leqs[channel].length < bandCount) {
+                throw new IllegalArgumentException("Output array shorter than the number of bands");
+            }
+        }
+        filterSquareSum(samples, channelCount);
+        final int frameCount = samples.length / channelCount;
+        for(int channel = 0; channel < channelCount; channel++) {
+            for(int band = 0; band < bandCount; band++) {
+                leqs[channel][band] = DecibelMath.toDecibel(
+                        squareSum[channel * bandCount + band] / frameCount);
+            }
+        }
+    }
+
+    /**
+     * Grow the delays and scratch buffers for more channels, the existing delays are kept
+     */
+    private void ensureChannelCount(int count) {
+        if(count > channelCount) {
+            channelCount = count;
+            delay1 = Arrays.copyOf(delay1, channelCount * b0.length);
+            delay2 = Arrays.copyOf(delay2, channelCount * b0.length);
+            bandOutput = new double[channelCount * bandCount];
+            squareSum = new double[channelCount * bandCount];
+        }
+    }
+
+    /**
+     * Filter the interleaved samples, squareSum receives the sum of the squared output of each
+     * channel and band
+     */
+    private void filterSquareSum(float[] samples, int channels) {
+        ensureChannelCount(channels);
+        Arrays.fill(squareSum, 0);
+        for(int i = 0; i < samples.length; i += channels) {
+            for(int channel = 0; channel < channels; channel++) {
+                final int outputOffset = channel * bandCount;
+                final int delayOffset = channel * b0.length;
+                Arrays.fill(bandOutput, outputOffset, outputOffset + bandCount,
+                        samples[i + channel]);
+                for(int section = 0; section < sectionCount; section++) {
+                    final int offset = section * bandCount;
+                    for(int band = 0; band < bandCount; band++) {
+                        final int k = offset + band;
+                        final int d = delayOffset + k;
+                        double input_acc = bandOutput[outputOffset + band];
+                        input_acc -= delay1[d] * a1[k];
+                        input_acc -= delay2[d] * a2[k];
+                        double output_acc = input_acc * b0[k];
+                        output_acc += delay1[d] * b1[k];
+                        output_acc += delay2[d] * b2[k];
+                        delay2[d] = delay1[d];
+                        delay1[d] = input_acc;
+                        bandOutput[outputOffset + band] = output_acc;
+                    }
+                }
+                for(int band = 0; band < bandCount; band++) {
+                    final double output = bandOutput[outputOffset + band];
+                    squareSum[outputOffset + band] += output * output;
+                }
+            }
+        }
+    }
+}
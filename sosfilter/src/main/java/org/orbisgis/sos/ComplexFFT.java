@@ -0,0 +1,326 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.util.Arrays;
+
+/**
+ * In-place forward discrete Fourier transform of complex signals.
+ * Sizes made of small prime factors are computed with a mixed radix Stockham algorithm, other
+ * sizes are computed with the Bluestein algorithm on top of a power of two transform.
+ * The trigonometric tables are shared through {@link FFTPlan}, the scratch buffers are allocated
+ * by the constructor, so {@link #forward(double[])} does not allocate memory.
+ * An instance is not thread safe.
+ */
+class ComplexFFT {
+    private final int n;
+    private final int[] factors;
+    // twiddles[stage] = interleaved exp(-2i.pi.j.k/stageLength) for j < m and 1 <= k < radix
+    private final double[][] twiddles;
+    // roots[stage] = interleaved exp(-2i.pi.t/radix) for t < radix (generic butterfly only)
+    private final double[][] roots;
+    private final double[] work;
+    private final double[] butterfly;
+    // Bluestein algorithm
+    private final ComplexFFT convolution;
+    private final double[] chirp;
+    private final double[] chirpSpectrum;
+    private final double[] convolutionBuffer;
+
+    /**
+     * @param n Number of complex values
+     */
+    ComplexFFT(int n) {
+        this(FFTPlan.get(n));
+    }
+
+    /**
+     * @param plan Shared tables of the transform, only the scratch buffers are allocated
+     */
+    ComplexFFT(FFTPlan plan) {
+        this.n = plan.n;
+        factors = plan.factors;
+        twiddles = plan.twiddles;
+        roots = plan.roots;
+        chirp = plan.chirp;
+        chirpSpectrum = plan.chirpSpectrum;
+        if(factors != null) {
+            work = new double[2 * n];
+            butterfly = new double[2 * plan.maxRadix];
+            convolution = null;
+            convolutionBuffer = null;
+        } else {
+            work = null;
+            butterfly = null;
+            convolution = new ComplexFFT(plan.convolution);
+            convolutionBuffer = new double[2 * convolution.size()];
+        }
+    }
+
+    int size() {
+        return n;
+    }
+
+    /**
+     * Forward transform X[k] = sum(x[j].exp(-2i.pi.j.k/n))
+     * @param data Interleaved real and imaginary parts, replaced by the transform
+     */
+    void forward(double[] data) {
+        if(factors != null) {
+            stockham(data);
+        } else {
+            bluestein(data);
+        }
+    }
+
+    private void stockham(double[] data) {
+        double[] x = data;
+        double[] y = work;
+        int stageLength = n;
+        int stride = 1;
+        for(int stage = 0; stage < factors.length; stage++) {
+            int radix = factors[stage];
+            int m = stageLength / radix;
+            switch (radix) {
+                case 2:
+                    radix2(x, y, m, stride, twiddles[stage]);
+                    break;
+                case 3:
+                    radix3(x, y, m, stride, twiddles[stage]);
+                    break;
+                case 4:
+                    radix4(x, y, m, stride, twiddles[stage]);
+                    break;
+                case 5:
+                    radix5(x, y, m, stride, twiddles[stage]);
+                    break;
+                default:
+                    radixGeneric(x, y, m, stride, radix, twiddles[stage], roots[stage]);
+            }
+            double[] swap = x;
+            x = y;
+            y = swap;
+            stageLength = m;
+            stride *= radix;
+        }
+        if(x != data) {
+            System.arraycopy(x, 0, data, 0, 2 * n);
+        }
+    }
+
+    private static void radix2(double[] x, double[] y, int m, int s, double[] tw) {
+        for(int j = 0; j < m; j++) {
+            final double wr = tw[2 * j];
+            final double wi = tw[2 * j + 1];
+            for(int q = 0; q < s; q++) {
+                final int i0 = 2 * (q + s * j);
+                final int i1 = i0 + 2 * s * m;
+                final int o0 = 2 * (q + s * 2 * j);
+                final int o1 = o0 + 2 * s;
+                final double ar = x[i0], ai = x[i0 + 1];
+                final double br = x[i1], bi = x[i1 + 1];
+                y[o0] = ar + br;
+                y[o0 + 1] = ai + bi;
+                final double dr = ar - br, di = ai - bi;
+                y[o1] = dr * wr - di * wi;
+                y[o1 + 1] = dr * wi + di * wr;
+            }
+        }
+    }
+
+    private static void radix3(double[] x, double[] y, int m, int s, double[] tw) {
+        final double c = -0.5;
+        final double d = Math.sqrt(3) / 2;
+        for(int j = 0; j < m; j++) {
+            final double w1r = tw[4 * j], w1i = tw[4 * j + 1];
+            final double w2r = tw[4 * j + 2], w2i = tw[4 * j + 3];
+            for(int q = 0; q < s; q++) {
+                final int i0 = 2 * (q + s * j);
+                final int i1 = i0 + 2 * s * m;
+                final int i2 = i1 + 2 * s * m;
+                final int o0 = 2 * (q + s * 3 * j);
+                final int o1 = o0 + 2 * s;
+                final int o2 = o1 + 2 * s;
+                final double ar = x[i0], ai = x[i0 + 1];
+                final double tr = x[i1] + x[i2], ti = x[i1 + 1] + x[i2 + 1];
+                // sqrt(3)/2.(-i).(x1 - x2)
+                final double ur = d * (x[i1 + 1] - x[i2 + 1]), ui = -d * (x[i1] - x[i2]);
+                y[o0] = ar + tr;
+                y[o0 + 1] = ai + ti;
+                final double br = ar + c * tr, bi = ai + c * ti;
+                final double x1r = br + ur, x1i = bi + ui;
+                final double x2r = br - ur, x2i = bi - ui;
+                y[o1] = x1r * w1r - x1i * w1i;
+                y[o1 + 1] = x1r * w1i + x1i * w1r;
+                y[o2] = x2r * w2r - x2i * w2i;
+                y[o2 + 1] = x2r * w2i + x2i * w2r;
+            }
+        }
+    }
+
+    private static void radix4(double[] x, double[] y, int m, int s, double[] tw) {
+        for(int j = 0; j < m; j++) {
+            final double w1r = tw[6 * j], w1i = tw[6 * j + 1];
+            final double w2r = tw[6 * j + 2], w2i = tw[6 * j + 3];
+            final double w3r = tw[6 * j + 4], w3i = tw[6 * j + 5];
+            for(int q = 0; q < s; q++) {
+                final int i0 = 2 * (q + s * j);
+                final int i1 = i0 + 2 * s * m;
+                final int i2 = i1 + 2 * s * m;
+                final int i3 = i2 + 2 * s * m;
+                final int o0 = 2 * (q + s * 4 * j);
+                final int o1 = o0 + 2 * s;
+                final int o2 = o1 + 2 * s;
+                final int o3 = o2 + 2 * s;
+                final double t0r = x[i0] + x[i2], t0i = x[i0 + 1] + x[i2 + 1];
+                final double t1r = x[i0] - x[i2], t1i = x[i0 + 1] - x[i2 + 1];
+                final double t2r = x[i1] + x[i3], t2i = x[i1 + 1] + x[i3 + 1];
+                // -i.(x1 - x3)
+                final double t3r = x[i1 + 1] - x[i3 + 1], t3i = x[i3] - x[i1];
+                y[o0] = t0r + t2r;
+                y[o0 + 1] = t0i + t2i;
+                final double x1r = t1r + t3r, x1i = t1i + t3i;
+                final double x2r = t0r - t2r, x2i = t0i - t2i;
+                final double x3r = t1r - t3r, x3i = t1i - t3i;
+                y[o1] = x1r * w1r - x1i * w1i;
+                y[o1 + 1] = x1r * w1i + x1i * w1r;
+                y[o2] = x2r * w2r - x2i * w2i;
+                y[o2 + 1] = x2r * w2i + x2i * w2r;
+                y[o3] = x3r * w3r - x3i * w3i;
+                y[o3 + 1] = x3r * w3i + x3i * w3r;
+            }
+        }
+    }
+
+    private static void radix5(double[] x, double[] y, int m, int s, double[] tw) {
+        final double c1 = Math.cos(2 * Math.PI / 5), c2 = Math.cos(4 * Math.PI / 5);
+        final double s1 = Math.sin(2 * Math.PI / 5), s2 = Math.sin(4 * Math.PI / 5);
+        for(int j = 0; j < m; j++) {
+            final int w = 8 * j;
+            for(int q = 0; q < s; q++) {
+                final int i0 = 2 * (q + s * j);
+                final int i1 = i0 + 2 * s * m;
+                final int i2 = i1 + 2 * s * m;
+                final int i3 = i2 + 2 * s * m;
+                final int i4 = i3 + 2 * s * m;
+                final int o0 = 2 * (q + s * 5 * j);
+                final int o1 = o0 + 2 * s;
+                final int o2 = o1 + 2 * s;
+                final int o3 = o2 + 2 * s;
+                final int o4 = o3 + 2 * s;
+                final double ar = x[i0], ai = x[i0 + 1];
+                final double t1r = x[i1] + x[i4], t1i = x[i1 + 1] + x[i4 + 1];
+                final double t2r = x[i2] + x[i3], t2i = x[i2 + 1] + x[i3 + 1];
+                final double t3r = x[i1] - x[i4], t3i = x[i1 + 1] - x[i4 + 1];
+                final double t4r = x[i2] - x[i3], t4i = x[i2 + 1] - x[i3 + 1];
+                y[o0] = ar + t1r + t2r;
+                y[o0 + 1] = ai + t1i + t2i;
+                final double b1r = ar + c1 * t1r + c2 * t2r, b1i = ai + c1 * t1i + c2 * t2i;
+                final double b2r = ar + c2 * t1r + c1 * t2r, b2i = ai + c2 * t1i + c1 * t2i;
+                // -i.(s1.t3 + s2.t4) and -i.(s2.t3 - s1.t4)
+                final double u1r = s1 * t3i + s2 * t4i, u1i = -(s1 * t3r + s2 * t4r);
+                final double u2r = s2 * t3i - s1 * t4i, u2i = -(s2 * t3r - s1 * t4r);
+                final double x1r = b1r + u1r, x1i = b1i + u1i;
+                final double x4r = b1r - u1r, x4i = b1i - u1i;
+                final double x2r = b2r + u2r, x2i = b2i + u2i;
+                final double x3r = b2r - u2r, x3i = b2i - u2i;
+                y[o1] = x1r * tw[w] - x1i * tw[w + 1];
+                y[o1 + 1] = x1r * tw[w + 1] + x1i * tw[w];
+                y[o2] = x2r * tw[w + 2] - x2i * tw[w + 3];
+                y[o2 + 1] = x2r * tw[w + 3] + x2i * tw[w + 2];
+                y[o3] = x3r * tw[w + 4] - x3i * tw[w + 5];
+                y[o3 + 1] = x3r * tw[w + 5] + x3i * tw[w + 4];
+                y[o4] = x4r * tw[w + 6] - x4i * tw[w + 7];
+                y[o4 + 1] = x4r * tw[w + 7] + x4i * tw[w + 6];
+            }
+        }
+    }
+
+    private void radixGeneric(double[] x, double[] y, int m, int s, int radix, double[] tw,
+                              double[] root) {
+        final double[] a = butterfly;
+        for(int j = 0; j < m; j++) {
+            for(int q = 0; q < s; q++) {
+                for(int r = 0; r < radix; r++) {
+                    final int i = 2 * (q + s * (j + r * m));
+                    a[2 * r] = x[i];
+                    a[2 * r + 1] = x[i + 1];
+                }
+                for(int k = 0; k < radix; k++) {
+                    double sumr = 0, sumi = 0;
+                    int t = 0;
+                    for(int r = 0; r < radix; r++) {
+                        final double wr = root[2 * t], wi = root[2 * t + 1];
+                        sumr += a[2 * r] * wr - a[2 * r + 1] * wi;
+                        sumi += a[2 * r] * wi + a[2 * r + 1] * wr;
+                        t += k;
+                        if(t >= radix) {
+                            t -= radix;
+                        }
+                    }
+                    final int o = 2 * (q + s * (radix * j + k));
+                    if(k == 0) {
+                        y[o] = sumr;
+                        y[o + 1] = sumi;
+                    } else {
+                        final int w = 2 * (j * (radix - 1) + k - 1);
+                        y[o] = sumr * tw[w] - sumi * tw[w + 1];
+                        y[o + 1] = sumr * tw[w + 1] + sumi * tw[w];
+                    }
+                }
+            }
+        }
+    }
+
+    private void bluestein(double[] data) {
+        final double[] buffer = convolutionBuffer;
+        final int m = convolution.size();
+        for(int k = 0; k < n; k++) {
+            final double xr = data[2 * k], xi = data[2 * k + 1];
+            final double wr = chirp[2 * k], wi = chirp[2 * k + 1];
+            buffer[2 * k] = xr * wr - xi * wi;
+            buffer[2 * k + 1] = xr * wi + xi * wr;
+        }
+        Arrays.fill(buffer, 2 * n, 2 * m, 0);
+        convolution.forward(buffer);
+        // Pointwise product then inverse transform using conj(fft(conj(X)))
+        for(int k = 0; k < m; k++) {
+            final double ar = buffer[2 * k], ai = buffer[2 * k + 1];
+            final double br = chirpSpectrum[2 * k], bi = chirpSpectrum[2 * k + 1];
+            buffer[2 * k] = ar * br - ai * bi;
+            buffer[2 * k + 1] = -(ar * bi + ai * br);
+        }
+        convolution.forward(buffer);
+        for(int k = 0; k < n; k++) {
+            final double cr = buffer[2 * k] / m, ci = -buffer[2 * k + 1] / m;
+            final double wr = chirp[2 * k], wi = chirp[2 * k + 1];
+            data[2 * k] = cr * wr - ci * wi;
+            data[2 * k + 1] = cr * wi + ci * wr;
+        }
+    }
+}
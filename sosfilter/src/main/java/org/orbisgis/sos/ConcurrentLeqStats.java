@@ -0,0 +1,128 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Accumulate leq statistics from several threads without locking. Levels are added to
+ * striped energy sums and counters and to a fixed histogram of atomic counters covering the
+ * whole class range. Call {@link #toLeqStats()} to compute the statistics.
+ */
+public class ConcurrentLeqStats {
+    // One stripe per cache line (8 longs), in order to avoid false sharing between threads
+    private static final int STRIPE_STRIDE = 8;
+    private static final int ENERGY_OFFSET = 0;
+    private static final int COUNT_OFFSET = 1;
+    private final double classStep;
+    private final int stripeMask;
+    private final AtomicLongArray stripes;
+    private final int minClassKey;
+    private final AtomicLongArray classCounts;
+    private final AtomicLong leqMinBits = new AtomicLong(Double.doubleToLongBits(Double.MAX_VALUE));
+    private final AtomicLong leqMaxBits = new AtomicLong(Double.doubleToLongBits(Double.MIN_VALUE));
+    private volatile double lastLeq = 0;
+
+    public ConcurrentLeqStats() {
+        this(0.1);
+    }
+
+    /**
+     * @param classStep Histogram class width in dB
+     */
+    public ConcurrentLeqStats(double classStep) {
+        this.classStep = classStep;
+        int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) * 2;
+        stripeMask = stripeCount - 1;
+        stripes = new AtomicLongArray(stripeCount * STRIPE_STRIDE);
+        minClassKey = LeqStats.getClassKey(LeqStats.MIN_CLASS_LEVEL, classStep);
+        classCounts = new AtomicLongArray(LeqStats.getClassKey(LeqStats.MAX_CLASS_LEVEL, classStep) - minClassKey + 1);
+    }
+
+    public double getClassStep() {
+        return classStep;
+    }
+
+    /**
+     * Add a level, can be called concurrently
+     * @param leq Level in dB
+     */
+    public void addLeq(double leq) {
+        lastLeq = leq;
+        int stripe = ((int) Thread.currentThread().getId() & stripeMask) * STRIPE_STRIDE;
+        double energy = DecibelMath.toEnergy(leq);
+        long bits;
+        do {
+            bits = stripes.get(stripe + ENERGY_OFFSET);
+        } while (!stripes.compareAndSet(stripe + ENERGY_OFFSET, bits,
+                Double.doubleToRawLongBits(Double.longBitsToDouble(bits) + energy)));
+        stripes.incrementAndGet(stripe + COUNT_OFFSET);
+        classCounts.incrementAndGet(LeqStats.getClassKey(leq, classStep) - minClassKey);
+        // The extremes are rarely updated, so the compare and set loops are not contended
+        while (leq < Double.longBitsToDouble(bits = leqMinBits.get())) {
+            if (leqMinBits.compareAndSet(bits, Double.doubleToLongBits(leq))) {
+                break;
+            }
+        }
+        while (leq > Double.longBitsToDouble(bits = leqMaxBits.get())) {
+            if (leqMaxBits.compareAndSet(bits, Double.doubleToLongBits(leq))) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Compute the statistics of the levels added so far. Levels added concurrently with this
+     * call may be partially taken into account.
+     * @return Independent statistics
+     */
+    public LeqStats toLeqStats() {
+        double rmsSum = 0;
+        long count = 0;
+        for (int stripe = 0; stripe < stripes.length(); stripe += STRIPE_STRIDE) {
+            rmsSum += Double.longBitsToDouble(stripes.get(stripe + ENERGY_OFFSET));
+            count += stripes.get(stripe + COUNT_OFFSET);
+        }
+        // Only keep the used part of the histogram
+        int first = 0;
+        while (first < classCounts.length() && classCounts.get(first) == 0) {
+            first++;
+        }
+        int last = classCounts.length() - 1;
+        while (last > first && classCounts.get(last) == 0) {
+            last--;
+        }
+        int[] counts = new int[Math.max(0, last - first + 1)];
+        for (int idClass = 0; idClass < counts.length; idClass++) {
+            counts[idClass] = (int) classCounts.get(first + idClass);
+        }
+        return new LeqStats(classStep, rmsSum, (int) count, Double.longBitsToDouble(leqMinBits.get()),
+                Double.longBitsToDouble(leqMaxBits.get()), lastLeq, counts, first + minClassKey);
+    }
+}
@@ -6,7 +6,8 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonPropertyOrder({
-    "sample_rate"
+    "sample_rate",
+    "bands_per_octave"
 })
 public class ConfigurationMeta {
 
@@ -16,6 +17,9 @@ public class ConfigurationMeta {
     @JsonProperty("sample_rate")
     private Integer sampleRate;
 
+    @JsonProperty("bands_per_octave")
+    private Integer bandsPerOctave;
+
     @JsonProperty("sample_rate")
     public Integer getSampleRate() {
         return sampleRate;
@@ -26,4 +30,14 @@ public class ConfigurationMeta {
         this.sampleRate = sampleRate;
     }
 
+    @JsonProperty("bands_per_octave")
+    public Integer getBandsPerOctave() {
+        return bandsPerOctave;
+    }
+
+    @JsonProperty("bands_per_octave")
+    public void setBandsPerOctave(Integer bandsPerOctave) {
+        this.bandsPerOctave = bandsPerOctave;
+    }
+
 }
@@ -0,0 +1,139 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+/**
+ * Conversions between linear energies and levels in dB.
+ * By default {@link Math#log10(double)} and {@link Math#pow(double, double)} are used. When fast
+ * math is enabled with {@link #setFastMath(boolean)} a table and polynomial approximation is used
+ * instead. The approximation error is below 1e-9 dB for {@link #toDecibel(double)} and below
+ * 1e-12 dB for {@link #toEnergy(double)}, levels are only reported to 0.01 dB.
+ */
+public final class DecibelMath {
+    // Table resolution of the mantissa and of the fractional power of two
+    private static final int TABLE_BITS = 8;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+    private static final double LOG10_2 = Math.log10(2);
+    private static final double LOG10_E = Math.log10(Math.E);
+    private static final double LOG2_10 = Math.log(10) / Math.log(2);
+    private static final double LN_2 = Math.log(2);
+    private static final long MANTISSA_MASK = 0x000FFFFFFFFFFFFFL;
+    // log2(1 + i / TABLE_SIZE) and 1 / (1 + i / TABLE_SIZE)
+    private static final double[] LOG2_TABLE = new double[TABLE_SIZE];
+    private static final double[] INVERSE_TABLE = new double[TABLE_SIZE];
+    // 2^(i / TABLE_SIZE)
+    private static final double[] EXP2_TABLE = new double[TABLE_SIZE];
+    private static volatile boolean fastMath = false;
+
+    static {
+        for (int i = 0; i < TABLE_SIZE; i++) {
+            double t = 1 + i / (double) TABLE_SIZE;
+            LOG2_TABLE[i] = Math.log(t) / LN_2;
+            INVERSE_TABLE[i] = 1 / t;
+            EXP2_TABLE[i] = Math.pow(2, i / (double) TABLE_SIZE);
+        }
+    }
+
+    private DecibelMath() {
+    }
+
+    /**
+     * @return True if the approximations are used by {@link #toDecibel(double)} and
+     * {@link #toEnergy(double)}
+     */
+    public static boolean isFastMath() {
+        return fastMath;
+    }
+
+    /**
+     * @param fastMath True to use the approximations in all the level conversions, false (default)
+     * to use {@link Math}
+     */
+    public static void setFastMath(boolean fastMath) {
+        DecibelMath.fastMath = fastMath;
+    }
+
+    /**
+     * @param energy Linear energy
+     * @return 10.log10(energy)
+     */
+    public static double toDecibel(double energy) {
+        return 10 * (fastMath ? fastLog10(energy) : Math.log10(energy));
+    }
+
+    /**
+     * @param level Level in dB
+     * @return 10^(level/10)
+     */
+    public static double toEnergy(double level) {
+        return fastMath ? fastPow10(level / 10) : Math.pow(10, level / 10);
+    }
+
+    /**
+     * Base 10 logarithm with an absolute error below 1e-10.
+     * The mantissa is split into a tabulated part t and a remainder 1 + r with r &lt; 1/256,
+     * log(1 + r) is then evaluated by a third degree polynomial.
+     * @param x Value
+     * @return log10(x), same special values as {@link Math#log10(double)}
+     */
+    public static double fastLog10(double x) {
+        if (!(x >= Double.MIN_NORMAL) || x == Double.POSITIVE_INFINITY) {
+            // zero, negative, NaN, sub-normal and infinite values
+            return Math.log10(x);
+        }
+        final long bits = Double.doubleToRawLongBits(x);
+        final int exponent = (int) (bits >>> 52) - 1023;
+        final int index = (int) ((bits & MANTISSA_MASK) >>> (52 - TABLE_BITS));
+        // Mantissa in [1, 2[
+        final double mantissa = Double.longBitsToDouble((bits & MANTISSA_MASK) | 0x3FF0000000000000L);
+        final double r = mantissa * INVERSE_TABLE[index] - 1;
+        final double ln1pr = r * (1 - r * (0.5 - r * (1 / 3.)));
+        return (exponent + LOG2_TABLE[index]) * LOG10_2 + ln1pr * LOG10_E;
+    }
+
+    /**
+     * Power of ten with a relative error below 1e-13.
+     * 10^x = 2^n.2^(j/256).2^g with g &lt; 1/256, 2^g is evaluated by a fourth degree polynomial.
+     * @param x Exponent
+     * @return 10^x
+     */
+    public static double fastPow10(double x) {
+        final double z = x * LOG2_10;
+        if (!(z > -1022 && z < 1023)) {
+            // Sub-normal results, overflow and NaN
+            return Math.pow(10, x);
+        }
+        final double n = Math.floor(z);
+        final double f = (z - n) * TABLE_SIZE;
+        final int index = (int) f;
+        final double u = (f - index) * (LN_2 / TABLE_SIZE);
+        final double exp = 1 + u * (1 + u * (0.5 + u * (1 / 6. + u * (1 / 24.))));
+        final double scale = Double.longBitsToDouble(((long) n + 1023) << 52);
+        return EXP2_TABLE[index] * exp * scale;
+    }
+}
@@ -56,8 +56,19 @@ public class DigitalFilter {
     }
 
     public double filterLeq(float[] samplesIn) {
+        return DecibelMath.toDecibel(filterSquareSum(samplesIn, 0, samplesIn.length) / samplesIn.length);
+    }
+
+    /**
+     * Filter a part of a signal, the filter state is kept for the next call
+     * @param samplesIn Input samples
+     * @param offset Index of the first sample to filter
+     * @param length Number of samples to filter
+     * @return Sum of the square of the filtered samples
+     */
+    double filterSquareSum(float[] samplesIn, int offset, int length) {
         double squareSum = 0;
-        for(int i=0; i < samplesIn.length; i++) {
+        for(int i=offset; i < offset + length; i++) {
             double inputAccumulator = 0;
             delay2[circularIndex] = samplesIn[i];
             for(int j=0; j < order; j++) {
@@ -80,6 +91,6 @@ public class DigitalFilter {
                 circularIndex = 0;
             squareSum += inputAccumulator * inputAccumulator;
         }
-        return 10 * Math.log10(squareSum / samplesIn.length);
+        return squareSum;
     }
 }
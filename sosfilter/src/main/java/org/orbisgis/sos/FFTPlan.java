@@ -0,0 +1,206 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.util.Map;
+
+/**
+ * Immutable trigonometric tables of a {@link ComplexFFT} size.
+ * Plans are computed once per size and shared by all the transforms of the process, so creating
+ * a new {@link RealFFT} for an already used window size only allocates its scratch buffers.
+ * Only the {@link #CACHE_SIZE} most recently used sizes are kept, transforms keep a reference to
+ * their own plan.
+ * This class is thread safe.
+ */
+final class FFTPlan {
+    // Prime factors above this value are not processed by the generic butterfly
+    private static final int MAX_GENERIC_RADIX = 13;
+    static final int CACHE_SIZE = 16;
+    private static final Map<Integer, FFTPlan> PLANS = new LruCache<Integer, FFTPlan>(CACHE_SIZE);
+    private static final Map<Integer, double[]> SPLIT_TWIDDLES =
+            new LruCache<Integer, double[]>(CACHE_SIZE);
+
+    final int n;
+    // Radix list of the Stockham algorithm or null if n has a large prime factor
+    final int[] factors;
+    // twiddles[stage] = interleaved exp(-2i.pi.j.k/stageLength) for j < m and 1 <= k < radix
+    final double[][] twiddles;
+    // roots[stage] = interleaved exp(-2i.pi.t/radix) for t < radix (generic butterfly only)
+    final double[][] roots;
+    final int maxRadix;
+    // Bluestein algorithm
+    final FFTPlan convolution;
+    final double[] chirp;
+    final double[] chirpSpectrum;
+
+    private FFTPlan(int n) {
+        this.n = n;
+        int[] smallFactors = factorize(n);
+        if(smallFactors != null) {
+            factors = smallFactors;
+            twiddles = new double[factors.length][];
+            roots = new double[factors.length][];
+            int stageLength = n;
+            int largestRadix = 0;
+            for(int stage = 0; stage < factors.length; stage++) {
+                int radix = factors[stage];
+                int m = stageLength / radix;
+                largestRadix = Math.max(largestRadix, radix);
+                double[] stageTwiddles = new double[2 * m * (radix - 1)];
+                for(int j = 0; j < m; j++) {
+                    for(int k = 1; k < radix; k++) {
+                        double angle = -2 * Math.PI * ((long) j * k % stageLength) / stageLength;
+                        int index = 2 * (j * (radix - 1) + k - 1);
+                        stageTwiddles[index] = Math.cos(angle);
+                        stageTwiddles[index + 1] = Math.sin(angle);
+                    }
+                }
+                twiddles[stage] = stageTwiddles;
+                if(radix > 5) {
+                    double[] stageRoots = new double[2 * radix];
+                    for(int t = 0; t < radix; t++) {
+                        double angle = -2 * Math.PI * t / radix;
+                        stageRoots[2 * t] = Math.cos(angle);
+                        stageRoots[2 * t + 1] = Math.sin(angle);
+                    }
+                    roots[stage] = stageRoots;
+                }
+                stageLength = m;
+            }
+            maxRadix = largestRadix;
+            convolution = null;
+            chirp = null;
+            chirpSpectrum = null;
+        } else {
+            factors = null;
+            twiddles = null;
+            roots = null;
+            maxRadix = 0;
+            int m = Integer.highestOneBit(2 * n - 1);
+            if(m < 2 * n - 1) {
+                m <<= 1;
+            }
+            convolution = get(m);
+            chirp = new double[2 * n];
+            for(int k = 0; k < n; k++) {
+                // k^2 modulo 2n keeps the angle accurate for large k
+                double angle = -Math.PI * ((long) k * k % (2L * n)) / n;
+                chirp[2 * k] = Math.cos(angle);
+                chirp[2 * k + 1] = Math.sin(angle);
+            }
+            chirpSpectrum = new double[2 * m];
+            chirpSpectrum[0] = chirp[0];
+            chirpSpectrum[1] = -chirp[1];
+            for(int k = 1; k < n; k++) {
+                chirpSpectrum[2 * k] = chirpSpectrum[2 * (m - k)] = chirp[2 * k];
+                chirpSpectrum[2 * k + 1] = chirpSpectrum[2 * (m - k) + 1] = -chirp[2 * k + 1];
+            }
+            new ComplexFFT(convolution).forward(chirpSpectrum);
+        }
+    }
+
+    /**
+     * @param n Number of complex values
+     * @return The shared plan of this size, computed on first use
+     */
+    static FFTPlan get(int n) {
+        if(n < 1) {
+            throw new IllegalArgumentException("FFT size must be strictly positive");
+        }
+        synchronized (PLANS) {
+            FFTPlan plan = PLANS.get(n);
+            if(plan == null) {
+                plan = new FFTPlan(n);
+                PLANS.put(n, plan);
+            }
+            return plan;
+        }
+    }
+
+    /**
+     * @param n Even number of real samples
+     * @return Shared interleaved exp(-2i.pi.k/n) for k &lt; n/2, used by {@link RealFFT} to split
+     * the half size transform. The returned array must not be modified.
+     */
+    static double[] getSplitTwiddles(int n) {
+        synchronized (SPLIT_TWIDDLES) {
+            double[] splitTwiddles = SPLIT_TWIDDLES.get(n);
+            if(splitTwiddles == null) {
+                int half = n / 2;
+                splitTwiddles = new double[n];
+                for(int k = 0; k < half; k++) {
+                    double angle = -2 * Math.PI * k / n;
+                    splitTwiddles[2 * k] = Math.cos(angle);
+                    splitTwiddles[2 * k + 1] = Math.sin(angle);
+                }
+                SPLIT_TWIDDLES.put(n, splitTwiddles);
+            }
+            return splitTwiddles;
+        }
+    }
+
+    /**
+     * Release all the shared tables. Transforms already created keep their own references.
+     */
+    static void clearCache() {
+        synchronized (PLANS) {
+            PLANS.clear();
+        }
+        synchronized (SPLIT_TWIDDLES) {
+            SPLIT_TWIDDLES.clear();
+        }
+    }
+
+    /**
+     * @return Radix list of the Stockham algorithm or null if n has a large prime factor
+     */
+    private static int[] factorize(int n) {
+        int[] found = new int[32];
+        int count = 0;
+        int remaining = n;
+        while(remaining % 4 == 0) {
+            found[count++] = 4;
+            remaining /= 4;
+        }
+        for(int radix = 2; remaining > 1; radix++) {
+            while(remaining % radix == 0) {
+                if(radix > MAX_GENERIC_RADIX) {
+                    return null;
+                }
+                found[count++] = radix;
+                remaining /= radix;
+            }
+            if(radix > MAX_GENERIC_RADIX) {
+                return null;
+            }
+        }
+        int[] factors = new int[count];
+        System.arraycopy(found, 0, factors, 0, count);
+        return factors;
+    }
+}
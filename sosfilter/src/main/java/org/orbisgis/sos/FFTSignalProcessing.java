@@ -27,10 +27,10 @@
 
 package org.orbisgis.sos;
 
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
 import java.util.Arrays;
 
-import org.jtransforms.fft.FloatFFT_1D;
-
 /**
  * Signal processing core
  */
@@ -41,32 +41,141 @@ public class FFTSignalProcessing {
     private float[] sampleBuffer;
     private int sampleBufferPosition=0;
     double[] standardFrequencies;
-    double tukeyAlpha = 0.2;
+    private final int bandsPerOctave;
+    final double tukeyAlpha = 0.2;
     private final int windowSize;
-    private FloatFFT_1D floatFFT_1D;
+    private final RealFFT realFFT;
+    // Shared coefficient tables, resolved on first use of the window type
+    private WindowFunction hannWindow;
+    private WindowFunction tukeyWindow;
+    // Scratch buffers of processSampleBuffer, owned by this instance
+    private final float[] fftBuffer;
+    private final float[] squareAbsoluteFFT;
+    // Band plan of thirdOctaveProcessing, depends only on sampling rate, window size, frequencies
+    // and bands per octave
+    private boolean fractionalBinWeighting = false;
+    private int[] bandFirstCell;
+    private int[] bandLastCell;
+    private double[] bandFirstCellWeight;
+    private double[] bandLastCellWeight;
+    private double[] bandAWeighting;
     // RMS level for 90 dB on 16 bits according to Android specification
     public static final double RMS_REFERENCE_90DB = 2500;
     // -22.35 dB Full Scale level of a 90 dB sinusoidal signal for PCM values
     public static final double DB_FS_REFERENCE = - (20 * Math.log10(RMS_REFERENCE_90DB/Short.MAX_VALUE)) + 90;
     private double refSoundPressure;
     private long sampleAdded = 0;
+    private ProcessingMetrics metrics = ProcessingMetrics.NONE;
 
     public FFTSignalProcessing(int samplingRate, double[] standardFrequencies, int windowSize) {
-        this.windowSize = windowSize;
-        this.standardFrequencies = standardFrequencies;
-        this.samplingRate = samplingRate;
-        this.sampleBuffer = new float[windowSize];
-        this.floatFFT_1D = new FloatFFT_1D(windowSize);
-        setDbFsReference(DB_FS_REFERENCE);
+        this(samplingRate, standardFrequencies, windowSize, DB_FS_REFERENCE);
     }
 
     public FFTSignalProcessing(int samplingRate, double[] standardFrequencies, int windowSize, double dbFsReference) {
+        this(samplingRate, standardFrequencies, windowSize, dbFsReference,
+                FractionalOctaveBands.THIRD_OCTAVE);
+    }
+
+    /**
+     * @param standardFrequencies Nominal frequencies of the bands, see
+     * {@link #computeFFTCenterFrequency(int, int)}
+     * @param bandsPerOctave Band resolution, ex: {@link FractionalOctaveBands#OCTAVE}
+     */
+    public FFTSignalProcessing(int samplingRate, double[] standardFrequencies, int windowSize,
+                               double dbFsReference, int bandsPerOctave) {
+        FractionalOctaveBands.checkBandsPerOctave(bandsPerOctave);
+        this.bandsPerOctave = bandsPerOctave;
         this.windowSize = windowSize;
         this.standardFrequencies = standardFrequencies;
         this.samplingRate = samplingRate;
         this.sampleBuffer = new float[windowSize];
-        this.floatFFT_1D = new FloatFFT_1D(windowSize);
+        this.fftBuffer = new float[windowSize];
+        this.squareAbsoluteFFT = new float[windowSize / 2];
+        this.realFFT = new RealFFT(windowSize);
         setDbFsReference(dbFsReference);
+        computeBandPlan();
+    }
+
+    /**
+     * @return True if FFT cells crossing a band limit are shared between the two bands
+     */
+    public boolean isFractionalBinWeighting() {
+        return fractionalBinWeighting;
+    }
+
+    /**
+     * @param fractionalBinWeighting If false (default) a FFT cell is given entirely to the band
+     * containing the cell center frequency. If true the energy of a cell crossing a band limit is
+     * split according to the overlapping bandwidth. This is more accurate for short windows where
+     * low frequency bands cover only one or two cells.
+     */
+    public void setFractionalBinWeighting(boolean fractionalBinWeighting) {
+        this.fractionalBinWeighting = fractionalBinWeighting;
+        computeBandPlan();
+    }
+
+    /**
+     * Compute the FFT cells range and edge weights of each band
+     */
+    private void computeBandPlan() {
+        final int cellCount = windowSize / 2;
+        final double freqByCell = samplingRate / (double)windowSize;
+        bandFirstCell = new int[standardFrequencies.length];
+        bandLastCell = new int[standardFrequencies.length];
+        bandFirstCellWeight = new double[standardFrequencies.length];
+        bandLastCellWeight = new double[standardFrequencies.length];
+        bandAWeighting = new double[standardFrequencies.length];
+        final double halfBandRatio = FractionalOctaveBands.getHalfBandRatio(
+                FractionalOctaveBands.BASE_TEN_RATIO, bandsPerOctave);
+        for(int idBand = 0; idBand < standardFrequencies.length; idBand++) {
+            // Compute lower and upper value of the band
+            // NF-EN 61260
+            // base 10, band index is deduced from the nominal frequency
+            double fCenter = FractionalOctaveBands.getCenterFrequency(
+                    FractionalOctaveBands.BASE_TEN_RATIO, bandsPerOctave,
+                    FractionalOctaveBands.getBandIndex(FractionalOctaveBands.BASE_TEN_RATIO,
+                            bandsPerOctave, standardFrequencies[idBand]));
+            final double fLower = fCenter / halfBandRatio;
+            final double fUpper = fCenter * halfBandRatio;
+            if(fractionalBinWeighting) {
+                // Cell k covers [(k - 0.5) * freqByCell, (k + 0.5) * freqByCell]
+                bandFirstCell[idBand] = (int)(Math.floor(fLower / freqByCell + 0.5));
+                bandLastCell[idBand] = Math.min(cellCount - 1, (int)(Math.floor(fUpper / freqByCell + 0.5)));
+                bandFirstCellWeight[idBand] = cellOverlap(bandFirstCell[idBand], freqByCell, fLower, fUpper);
+                bandLastCellWeight[idBand] = cellOverlap(bandLastCell[idBand], freqByCell, fLower, fUpper);
+            } else {
+                bandFirstCell[idBand] = (int)(Math.ceil(fLower / freqByCell));
+                bandLastCell[idBand] = Math.min(cellCount - 1, (int) (Math.floor(fUpper / freqByCell)));
+                bandFirstCellWeight[idBand] = 1;
+                bandLastCellWeight[idBand] = 1;
+            }
+            int freqIndex = Arrays.binarySearch(ThirdOctaveFrequencies.STANDARD_FREQUENCIES,
+                    standardFrequencies[idBand]);
+            if(bandsPerOctave == FractionalOctaveBands.THIRD_OCTAVE) {
+                bandAWeighting[idBand] = freqIndex >= 0 ? ThirdOctaveFrequencies.A_WEIGHTING[freqIndex] : Double.NaN;
+            } else {
+                bandAWeighting[idBand] = FractionalOctaveBands.getAWeighting(fCenter);
+            }
+        }
+    }
+
+    /**
+     * @return Ratio of the FFT cell bandwidth inside [fLower, fUpper]
+     */
+    private static double cellOverlap(int cell, double freqByCell, double fLower, double fUpper) {
+        double overlap = Math.min(fUpper, (cell + 0.5) * freqByCell) - Math.max(fLower, (cell - 0.5) * freqByCell);
+        return Math.max(0, overlap / freqByCell);
+    }
+
+    /**
+     * @param metrics Receive the duration of the windowing, FFT and band recombination stages
+     */
+    public void setMetrics(ProcessingMetrics metrics) {
+        this.metrics = metrics == null ? ProcessingMetrics.NONE : metrics;
+    }
+
+    public ProcessingMetrics getMetrics() {
+        return metrics;
     }
 
     public void setDbFsReference(double dbFsReference) {
@@ -87,6 +196,23 @@ public class FFTSignalProcessing {
         return Arrays.copyOfRange(retCenterFreq, 0, retSize);
     }
 
+    /**
+     * @param maxLimitation Highest nominal frequency in Hz
+     * @param bandsPerOctave Band resolution, ex: {@link FractionalOctaveBands#OCTAVE}
+     * @return Nominal frequencies of the bands from 100 Hz (125 Hz for octave bands)
+     */
+    public static double[] computeFFTCenterFrequency(int maxLimitation, int bandsPerOctave) {
+        if(bandsPerOctave == FractionalOctaveBands.THIRD_OCTAVE) {
+            return computeFFTCenterFrequency(maxLimitation);
+        }
+        double firstFrequency = ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED[0];
+        if(bandsPerOctave == FractionalOctaveBands.OCTAVE) {
+            firstFrequency = ThirdOctaveBandsFiltering.STANDARD_OCTAVE_FREQUENCIES_REDUCED[0];
+        }
+        return FractionalOctaveBands.getNominalFrequencies(bandsPerOctave, firstFrequency,
+                maxLimitation);
+    }
+
     /**
      * @return Time in seconds of sample buffer
      */
@@ -98,6 +224,13 @@ public class FFTSignalProcessing {
         return windowSize;
     }
 
+    /**
+     * @return Band resolution, 3 for third octave bands
+     */
+    public int getBandsPerOctave() {
+        return bandsPerOctave;
+    }
+
     /**
      * @return Computed frequencies
      */
@@ -126,6 +259,37 @@ public class FFTSignalProcessing {
         sampleAdded+=sample.length;
     }
 
+    /**
+     * Add all the remaining 16 bits PCM samples of the buffer, rescaled as done by
+     * {@link Window#convertShortToFloat(short[])}, without intermediate array.
+     * @param samples audio samples, its position is moved to its limit
+     */
+    public void addSample(ShortBuffer samples) {
+        int length = samples.remaining();
+        if(length + sampleBufferPosition > sampleBuffer.length) {
+            throw new IllegalArgumentException("Too much samples for configured window size");
+        }
+        Window.convertShortToFloat(samples, sampleBuffer, sampleBufferPosition, length);
+        sampleBufferPosition += length;
+        sampleAdded += length;
+    }
+
+    /**
+     * Add all the remaining 16 bits PCM samples of the buffer, read with the byte order of the
+     * buffer and rescaled as done by {@link Window#convertShortToFloat(short[])}, without
+     * intermediate array.
+     * @param samples audio samples, its position is moved to its limit (minus an odd last byte)
+     */
+    public void addSample(ByteBuffer samples) {
+        int length = samples.remaining() / 2;
+        if(length + sampleBufferPosition > sampleBuffer.length) {
+            throw new IllegalArgumentException("Too much samples for configured window size");
+        }
+        Window.convertBytesToFloat(samples, sampleBuffer, sampleBufferPosition, length);
+        sampleBufferPosition += length;
+        sampleAdded += length;
+    }
+
     public double computeRms() {
         return AcousticIndicators.computeRms(sampleBuffer);
     }
@@ -144,23 +308,63 @@ public class FFTSignalProcessing {
      * @return List of double array of equivalent sound pressure level per third octave bands
      */
     public ProcessingResult processSampleBuffer(WINDOW_TYPE window, boolean outputThinFrequency) {
+        return processSampleBuffer(window, outputThinFrequency, new ProcessingResult());
+    }
+
+    /**
+     * Calculation of the equivalent sound pressure level per third octave bands.
+     * The result arrays are allocated on the first call only, so providing the same result
+     * instance on each window does not allocate memory.
+     * @param result Reusable result, its content is overwritten
+     * @return The provided result
+     */
+    public ProcessingResult processSampleBuffer(WINDOW_TYPE window, boolean outputThinFrequency,
+                                                ProcessingResult result) {
         if(sampleBufferPosition > 0 && sampleBufferPosition != sampleBuffer.length) {
             throw new IllegalStateException("Sample window incomplete");
         }
         sampleBufferPosition = 0;
-        float[] signal = Arrays.copyOf(sampleBuffer, sampleBuffer.length);
+        processSampleBuffer(sampleBuffer, 0, window, outputThinFrequency, result);
+        result.id = sampleAdded;
+        return result;
+    }
+
+    /**
+     * Calculation of the equivalent sound pressure level per third octave bands of a circular
+     * buffer. The samples are copied once from the circular buffer into the FFT buffer, so the
+     * caller does not have to unroll its buffer. The result id is not modified.
+     * @param samples Circular buffer of {@link #getWindowSize()} samples
+     * @param oldestSample Index of the oldest sample in the circular buffer
+     * @param result Reusable result, its content is overwritten
+     * @return The provided result
+     */
+    public ProcessingResult processSampleBuffer(float[] samples, int oldestSample, WINDOW_TYPE window,
+                                                boolean outputThinFrequency, ProcessingResult result) {
+        if(samples.length != windowSize || oldestSample < 0 || oldestSample >= windowSize) {
+            throw new IllegalArgumentException("Circular buffer does not match the window size");
+        }
+        long time = metrics.startTime();
+        float[] signal = fftBuffer;
+        System.arraycopy(samples, oldestSample, signal, 0, windowSize - oldestSample);
+        System.arraycopy(samples, 0, signal, windowSize - oldestSample, oldestSample);
         double energyCorrection = signal.length;
         switch (window) {
             case HANN:
-                energyCorrection = AcousticIndicators.hannWindow(signal);
+                if(hannWindow == null) {
+                    hannWindow = WindowFunction.hann(signal.length);
+                }
+                energyCorrection = hannWindow.apply(signal);
                 break;
             case TUKEY:
-                energyCorrection = AcousticIndicators.tukeyWindow(signal, tukeyAlpha);
+                if(tukeyWindow == null) {
+                    tukeyWindow = WindowFunction.tukey(signal.length, tukeyAlpha);
+                }
+                energyCorrection = tukeyWindow.apply(signal);
         }
         energyCorrection = 1.0 / Math.sqrt(energyCorrection / signal.length);
-        floatFFT_1D.realForward(signal);
+        time = metrics.record(ProcessingMetrics.STAGE.WINDOWING, time, windowSize);
+        realFFT.realForward(signal);
         final double freqByCell = samplingRate / (double)windowSize;
-        float[] squareAbsoluteFFT = new float[signal.length / 2];
         //a[offa+2*k] = Re[k], 0<=k<n/2
         double sumRMS = 0;
         for(int k = 0; k < squareAbsoluteFFT.length; k++) {
@@ -169,25 +373,36 @@ public class FFTSignalProcessing {
             squareAbsoluteFFT[k] = re * re + im * im;
             sumRMS += squareAbsoluteFFT[k];
         }
-        // Compute A weighted third octave bands
-        float[] splLevels = thirdOctaveProcessing(squareAbsoluteFFT, false, energyCorrection);
-        // Limit spectrum output by specified frequencies and convert to dBspl
-        float[] spectrumSplLevels = null;
+        time = metrics.record(ProcessingMetrics.STAGE.FFT, time, windowSize);
+        // Linear energy of a square absolute FFT sum, energy = 10^(dBspl/10)
+        final double energyScale = energyCorrection * energyCorrection / (2.0 *
+                squareAbsoluteFFT.length * squareAbsoluteFFT.length * refSoundPressure *
+                refSoundPressure);
+        // Compute third octave bands
+        result.splEnergy = reuse(result.splEnergy, standardFrequencies.length);
+        for(int idBand = 0; idBand < standardFrequencies.length; idBand++) {
+            result.splEnergy[idBand] = (float) (bandSum(squareAbsoluteFFT, idBand) * energyScale);
+        }
+        // Limit spectrum output by specified frequencies
         if(outputThinFrequency) {
-            spectrumSplLevels = new float[(int) (Math.min(samplingRate / 2.0,
-                    standardFrequencies[standardFrequencies.length - 1]) /
-                    freqByCell)];
-            for (int i = 0; i < spectrumSplLevels.length; i++) {
-                spectrumSplLevels[i] = (float) todBspl(squareAbsoluteFFTToRMS(squareAbsoluteFFT[i
-                        ], squareAbsoluteFFT.length) * energyCorrection);
+            result.fftEnergy = reuse(result.fftEnergy, (int) (Math.min(samplingRate / 2.0,
+                    standardFrequencies[standardFrequencies.length - 1]) / freqByCell));
+            for (int i = 0; i < result.fftEnergy.length; i++) {
+                result.fftEnergy[i] = (float) (squareAbsoluteFFT[i] * energyScale);
             }
+        } else {
+            result.fftEnergy = null;
         }
-        return new ProcessingResult(sampleAdded,
-                spectrumSplLevels == null ? null : Window.convertFloatToDouble(
-                        spectrumSplLevels),
-                Window.convertFloatToDouble(splLevels),
-                todBspl(squareAbsoluteFFTToRMS(sumRMS, squareAbsoluteFFT.length)
-                        * energyCorrection));
+        result.leqEnergy = sumRMS * energyScale;
+        result.laeqEnergy = 1;
+        result.count = 1;
+        result.levelsValid = false;
+        metrics.record(ProcessingMetrics.STAGE.BAND_RECOMBINATION, time, windowSize);
+        return result;
+    }
+
+    private static float[] reuse(float[] array, int length) {
+        return array != null && array.length == length ? array : new float[length];
     }
 
     private double squareAbsoluteFFTToRMS(double squareAbsoluteFFT, int sampleSize) {
@@ -206,34 +421,54 @@ public class FFTSignalProcessing {
      * @return Third octave bands
      */
     public float[] thirdOctaveProcessing(float[] squareAbsoluteFFT, boolean thirdOctaveAWeighting, double energyCorrection) {
-        final double freqByCell = samplingRate / (double)windowSize;
-        float[] splLevels = new float[standardFrequencies.length];
-        int thirdOctaveId = 0;
-        int refFreq = Arrays.binarySearch(standardFrequencies, 1000);
-        for(double fNominal : standardFrequencies) {
-            // Compute lower and upper value of third-octave
-            // NF-EN 61260
-            // base 10
-            double fCenter = Math.pow(10, (Arrays.binarySearch(standardFrequencies, fNominal) - refFreq)/10.) * 1000;
-            final double fLower = fCenter * Math.pow(10, -1. / 20.);
-            final double fUpper = fCenter * Math.pow(10, 1. / 20.);
-            double sumVal = 0;
-            int cellLower = (int)(Math.ceil(fLower / freqByCell));
-            int cellUpper = Math.min(squareAbsoluteFFT.length - 1, (int) (Math.floor(fUpper / freqByCell)));
-            for(int idCell = cellLower; idCell <= cellUpper; idCell++) {
-                sumVal += squareAbsoluteFFT[idCell];
-            }
+        double[] levels = new double[standardFrequencies.length];
+        thirdOctaveProcessing(squareAbsoluteFFT, thirdOctaveAWeighting, energyCorrection, levels);
+        float[] splLevels = new float[levels.length];
+        for(int i = 0; i < levels.length; i++) {
+            splLevels[i] = (float) levels[i];
+        }
+        return splLevels;
+    }
+
+    /**
+     * Third-octave recombination method
+     * @param squareAbsoluteFFT Narrow frequency array
+     * @param thirdOctaveAWeighting True to apply a A weighting on bands
+     * @param splLevels Third octave bands output, same length as standard frequencies
+     */
+    private void thirdOctaveProcessing(float[] squareAbsoluteFFT, boolean thirdOctaveAWeighting,
+                                       double energyCorrection, double[] splLevels) {
+        if(squareAbsoluteFFT.length < windowSize / 2) {
+            throw new IllegalArgumentException("Narrow frequency array shorter than half window size");
+        }
+        for(int idBand = 0; idBand < splLevels.length; idBand++) {
+            double sumVal = bandSum(squareAbsoluteFFT, idBand);
             sumVal = todBspl(squareAbsoluteFFTToRMS(sumVal, squareAbsoluteFFT.length) * energyCorrection);
             if(thirdOctaveAWeighting) {
                 // Apply A weighting
-                int freqIndex = Arrays.binarySearch(
-                        ThirdOctaveFrequencies.STANDARD_FREQUENCIES, fNominal);
-                sumVal = (float) (sumVal + ThirdOctaveFrequencies.A_WEIGHTING[freqIndex]);
+                sumVal = (float) (sumVal + bandAWeighting[idBand]);
             }
-            splLevels[thirdOctaveId] = (float) sumVal;
-            thirdOctaveId++;
+            splLevels[idBand] = (float) sumVal;
         }
-        return splLevels;
+    }
+
+    /**
+     * @return Sum of the square absolute FFT cells of the band
+     */
+    private double bandSum(float[] squareAbsoluteFFT, int idBand) {
+        final int firstCell = bandFirstCell[idBand];
+        final int lastCell = bandLastCell[idBand];
+        double sumVal = 0;
+        if(firstCell == lastCell) {
+            sumVal = bandFirstCellWeight[idBand] * squareAbsoluteFFT[firstCell];
+        } else if(firstCell < lastCell) {
+            sumVal = bandFirstCellWeight[idBand] * squareAbsoluteFFT[firstCell]
+                    + bandLastCellWeight[idBand] * squareAbsoluteFFT[lastCell];
+            for (int idCell = firstCell + 1; idCell < lastCell; idCell++) {
+                sumVal += squareAbsoluteFFT[idCell];
+            }
+        }
+        return sumVal;
     }
 
     /**
@@ -241,17 +476,37 @@ public class FFTSignalProcessing {
      * TODO provide warning information about approximate value about 30 dB range from -18 dB to +12dB around 90 dB
      */
     public static final class ProcessingResult {
-        double[] fftResult;
-        double[] spl;
-        double windowLeq;
+        // Linear energies, level = 10.log10(energy / count)
+        float[] fftEnergy;
+        float[] splEnergy;
+        double leqEnergy;
+        double laeqEnergy = 1;
+        // Number of accumulated windows, 0 for an empty result
+        double count = 0;
         long id;
-        double windowLaeq=0;
+        // Levels in dB, computed from the energies on first read
+        private double[] fftResult;
+        private double[] spl;
+        boolean levelsValid = false;
+
+        /**
+         * Empty result, to be filled by
+         * {@link FFTSignalProcessing#processSampleBuffer(WINDOW_TYPE, boolean, ProcessingResult)}
+         * or by {@link #accumulate(ProcessingResult)}
+         */
+        public ProcessingResult() {
+        }
 
         public ProcessingResult(long id, double[] fftResult, double[] spl, double windowLeq) {
+            this.fftEnergy = toEnergy(fftResult);
+            this.splEnergy = toEnergy(spl);
+            this.leqEnergy = DecibelMath.toEnergy(windowLeq);
+            this.count = 1;
+            this.id = id;
+            // Provided levels are kept as is
             this.fftResult = fftResult;
             this.spl = spl;
-            this.windowLeq = windowLeq;
-            this.id = id;
+            this.levelsValid = true;
         }
 
         public long getId() {
@@ -263,11 +518,11 @@ public class FFTSignalProcessing {
         }
 
         public double getWindowLaeq() {
-            return windowLaeq;
+            return DecibelMath.toDecibel(laeqEnergy / count);
         }
 
         public void setWindowLaeq(double windowLaeq) {
-            this.windowLaeq = windowLaeq;
+            this.laeqEnergy = DecibelMath.toEnergy(windowLaeq) * count;
         }
 
         /**
@@ -277,56 +532,157 @@ public class FFTSignalProcessing {
             // Take the last processing result as reference because results are moved from
             // the right to the left in the array
             if(toMerge[toMerge.length - 1] != null) {
-                id = toMerge[toMerge.length - 1].id;
-                if(toMerge[toMerge.length - 1].fftResult != null) {
-                    this.fftResult = new double[toMerge[toMerge.length - 1].fftResult.length];
-                    for(ProcessingResult merge : toMerge) {
-                        if(merge != null) {
-                            for (int i = 0; i < fftResult.length; i++) {
-                                fftResult[i] += Math.pow(10, merge.fftResult[i] / 10.);
-                            }
-                        }
-                    }
-                    for(int i = 0; i < fftResult.length; i++) {
-                        fftResult[i] = (float)(10. * Math.log10(fftResult[i] / windowCount));
-                    }
-                }
-                this.spl = new double[toMerge[toMerge.length - 1].spl.length];
+                int sumCount = 0;
                 for(ProcessingResult merge : toMerge) {
                     if(merge != null) {
-                        for (int i = 0; i < spl.length; i++) {
-                            spl[i] += Math.pow(10, merge.spl[i] / 10.);
-                        }
+                        sumCount++;
+                        // Each merged result weights as one window
+                        add(merge, 1 / merge.count);
                     }
                 }
-                for(int i = 0; i < spl.length; i++) {
-                    spl[i] = (float)(10. * Math.log10(spl[i] / windowCount));
+                id = toMerge[toMerge.length - 1].id;
+                count = windowCount;
+                // The global levels are averaged on the merged results only
+                leqEnergy *= windowCount / sumCount;
+                laeqEnergy *= windowCount / sumCount;
+            } else {
+                // Nothing to merge, levels of 0 dB and no bands
+                count = windowCount;
+                leqEnergy = windowCount;
+                laeqEnergy = windowCount;
+            }
+        }
+
+        /**
+         * Add the energies of another result, the levels of this result become the energetic
+         * average of all the accumulated windows. The id becomes the id of the other result.
+         * @param other Result with the same bands, not modified
+         */
+        public void accumulate(ProcessingResult other) {
+            add(other, 1);
+            count += other.count;
+            id = other.id;
+        }
+
+        /**
+         * Empty this result, its energy arrays are kept for the next accumulations
+         */
+        void reset() {
+            if(splEnergy != null) {
+                Arrays.fill(splEnergy, 0);
+            }
+            if(fftEnergy != null) {
+                Arrays.fill(fftEnergy, 0);
+            }
+            leqEnergy = 0;
+            laeqEnergy = 0;
+            count = 0;
+            levelsValid = false;
+        }
+
+        private void add(ProcessingResult other, double weight) {
+            if(splEnergy == null) {
+                // Empty result
+                count = 0;
+                splEnergy = new float[other.splEnergy.length];
+                fftEnergy = other.fftEnergy == null ? null : new float[other.fftEnergy.length];
+                leqEnergy = 0;
+                laeqEnergy = 0;
+            } else if(splEnergy.length != other.splEnergy.length ||
+                    (fftEnergy == null) != (other.fftEnergy == null) ||
+                    (fftEnergy != null && fftEnergy.length != other.fftEnergy.length)) {
+                throw new IllegalArgumentException("Cannot accumulate results of different bands");
+            }
+            addEnergy(splEnergy, other.splEnergy, weight);
+            if(fftEnergy != null) {
+                addEnergy(fftEnergy, other.fftEnergy, weight);
+            }
+            leqEnergy += other.leqEnergy * weight;
+            laeqEnergy += other.laeqEnergy * weight;
+            // Level arrays may have been provided or returned, do not overwrite them
+            spl = null;
+            fftResult = null;
+            levelsValid = false;
+        }
+
+        private static void addEnergy(float[] energy, float[] other, double weight) {
+            if(weight == 1) {
+                for(int i = 0; i < energy.length; i++) {
+                    energy[i] += other[i];
                 }
-                double sum = 0;
-                double sumLAeq=0;
-                int sumCount=0;
-                for(ProcessingResult merge : toMerge) {
-                    if(merge != null) {
-                        sumCount++;
-                        sum += Math.pow(10, merge.getWindowLeq() / 10.);
-                        sumLAeq += Math.pow(10, merge.getWindowLaeq() / 10.);
-                    }
+            } else {
+                final float w = (float) weight;
+                for(int i = 0; i < energy.length; i++) {
+                    energy[i] += other[i] * w;
                 }
-                this.windowLeq = (float)(10. * Math.log10(sum / sumCount));
-                this.windowLaeq = 10. * Math.log10(sumLAeq / sumCount);
             }
         }
 
+        private static float[] toEnergy(double[] levels) {
+            if(levels == null) {
+                return null;
+            }
+            float[] energy = new float[levels.length];
+            for(int i = 0; i < levels.length; i++) {
+                energy[i] = (float) DecibelMath.toEnergy(levels[i]);
+            }
+            return energy;
+        }
+
+        private static double[] toLevels(float[] energy, double[] levels, double count) {
+            if(energy == null) {
+                return null;
+            }
+            if(levels == null || levels.length != energy.length) {
+                levels = new double[energy.length];
+            }
+            final double scale = 1 / count;
+            for(int i = 0; i < energy.length; i++) {
+                levels[i] = DecibelMath.toDecibel(energy[i] * scale);
+            }
+            return levels;
+        }
+
+        private void updateLevels() {
+            if(!levelsValid) {
+                spl = toLevels(splEnergy, spl, count);
+                fftResult = toLevels(fftEnergy, fftResult, count);
+                levelsValid = true;
+            }
+        }
+
+        /**
+         * @return Narrow band levels in dB, null if not computed
+         */
         public double[] getFftResult() {
+            updateLevels();
             return fftResult;
         }
 
+        /**
+         * @return Band levels in dB
+         */
         public double[] getSpl() {
+            updateLevels();
             return spl;
         }
 
         public double getWindowLeq() {
-            return windowLeq;
+            return DecibelMath.toDecibel(leqEnergy / count);
+        }
+
+        /**
+         * @return Mean linear energy of the window, 10^(windowLeq/10)
+         */
+        public double getWindowLeqEnergy() {
+            return leqEnergy / count;
+        }
+
+        /**
+         * @return Number of accumulated windows
+         */
+        public double getCount() {
+            return count;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,167 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keep the filter designs of {@link FilterDesigner} in memory and optionally in a directory, the
+ * designs are identified by {@link FilterDesigner#getKey()}. Returned configurations are shared
+ * and must not be modified.
+ */
+public class FilterDesignCache {
+    private static final FilterDesignCache DEFAULT_CACHE = new FilterDesignCache();
+    private static final String FILE_PREFIX = "filter_design_";
+    private static final String FILE_EXTENSION = ".json";
+
+    private final File directory;
+    private final Map<String, ConfigurationSpectrumChannel> designs = new HashMap<>();
+
+    /**
+     * Memory only cache
+     */
+    public FilterDesignCache() {
+        this(null);
+    }
+
+    /**
+     * @param directory Folder where the designs are written and read back, null for a memory only
+     * cache
+     */
+    public FilterDesignCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return Memory cache shared by the application
+     */
+    public static FilterDesignCache getDefault() {
+        return DEFAULT_CACHE;
+    }
+
+    /**
+     * @param designer Design parameters
+     * @return File used to store the design, null if the cache has no directory
+     */
+    public File getFile(FilterDesigner designer) {
+        if(directory == null) {
+            return null;
+        }
+        return new File(directory, FILE_PREFIX + designer.getKey() + FILE_EXTENSION);
+    }
+
+    /**
+     * @param designer Design parameters
+     * @return Configuration from memory, from the cache directory or newly designed
+     * @throws IOException If the design cannot be written in the cache directory
+     */
+    public synchronized ConfigurationSpectrumChannel getConfiguration(FilterDesigner designer)
+            throws IOException {
+        final String key = designer.getKey();
+        ConfigurationSpectrumChannel configuration = designs.get(key);
+        if(configuration != null) {
+            return configuration;
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        File file = getFile(designer);
+        if(file != null && file.isFile()) {
+            try {
+                configuration = objectMapper.readValue(file, ConfigurationSpectrumChannel.class);
+            } catch (IOException ex) {
+                // Truncated or outdated file, design again
+                configuration = null;
+            }
+        }
+        if(configuration == null) {
+            configuration = designer.design();
+            if(file != null) {
+                if(!directory.isDirectory() && !directory.mkdirs()) {
+                    throw new IOException("Cannot create directory " + directory);
+                }
+                // Concurrent processes must never read a partial file
+                File partFile = new File(directory, file.getName() + ".part");
+                objectMapper.writeValue(partFile, configuration);
+                if(!partFile.renameTo(file)) {
+                    if(!partFile.delete()) {
+                        partFile.deleteOnExit();
+                    }
+                    throw new IOException("Cannot write " + file);
+                }
+            }
+        }
+        designs.put(key, configuration);
+        return configuration;
+    }
+
+    /**
+     * Third octave filter bank configuration from 100 Hz to 16 kHz. The configuration files
+     * shipped for 44.1 kHz and 48 kHz are used when available, other sampling rates are designed
+     * and kept in the default cache.
+     * @param sampleRate Sampling rate in Hz
+     * @return New configuration instance for the shipped files, shared instance otherwise
+     */
+    public static ConfigurationSpectrumChannel loadThirdOctaveConfiguration(int sampleRate)
+            throws IOException {
+        return loadConfiguration(sampleRate, FractionalOctaveBands.THIRD_OCTAVE);
+    }
+
+    /**
+     * Filter bank configuration from 100 Hz to 16 kHz. The third octave configuration files
+     * shipped for 44.1 kHz and 48 kHz are used when available, other configurations are designed
+     * and kept in the default cache.
+     * @param sampleRate Sampling rate in Hz
+     * @param bandsPerOctave Band resolution, ex: {@link FractionalOctaveBands#OCTAVE}
+     * @return New configuration instance for the shipped files, shared instance otherwise
+     */
+    public static ConfigurationSpectrumChannel loadConfiguration(int sampleRate, int bandsPerOctave)
+            throws IOException {
+        String resource = null;
+        if(bandsPerOctave == FractionalOctaveBands.THIRD_OCTAVE) {
+            if (sampleRate == 44100) {
+                resource = "config_44100_third_octave.json";
+            } else if (sampleRate == 48000) {
+                resource = "config_48000_third_octave.json";
+            }
+        }
+        if(resource != null) {
+            try (InputStream s = SpectrumChannel.class.getResourceAsStream(resource)) {
+                ObjectMapper objectMapper = new ObjectMapper();
+                return objectMapper.readValue(s, ConfigurationSpectrumChannel.class);
+            }
+        }
+        FilterDesigner designer = new FilterDesigner(sampleRate);
+        designer.setBandsPerOctave(bandsPerOctave);
+        return DEFAULT_CACHE.getConfiguration(designer);
+    }
+}
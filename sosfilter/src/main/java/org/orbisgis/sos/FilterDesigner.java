@@ -0,0 +1,443 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Design of the filter bank configuration for any sampling rate, equivalent to the configuration
+ * files generated by filterdesign.py. Band-pass filters are Butterworth filters converted with the
+ * bilinear transform. In cascade mode a band is filtered at the lowest sampling rate where its
+ * upper frequency is still below the Nyquist frequency, the signal being decimated by 2 after a
+ * Butterworth low-pass filter cut at half the Nyquist frequency.
+ */
+public class FilterDesigner {
+    public static final int DEFAULT_BAND_FILTER_ORDER = 6;
+    public static final int DEFAULT_ANTI_ALIASING_ORDER = 20;
+    public static final int SUBSAMPLING_RATIO = 2;
+    // Rounded pole frequencies and 1 kHz normalization of the A and C weightings (IEC 61672-1),
+    // values used for the shipped configuration files
+    private static final double F1 = 20.6;
+    private static final double F2 = 107.7;
+    private static final double F3 = 737.9;
+    private static final double F4 = 12194;
+    private static final double A1000 = 2.0;
+    private static final double C1000 = 0.062;
+    private static final double POLE_IMAGINARY_EPSILON = 1e-12;
+
+    private final int sampleRate;
+    private int bandsPerOctave = FractionalOctaveBands.THIRD_OCTAVE;
+    private double firstFrequency = 100;
+    private double lastFrequency = 16000;
+    private int bandFilterOrder = DEFAULT_BAND_FILTER_ORDER;
+    private int antiAliasingOrder = DEFAULT_ANTI_ALIASING_ORDER;
+    private int maxSubsamplingDepth;
+
+    /**
+     * @param sampleRate Sampling rate in Hz
+     */
+    public FilterDesigner(int sampleRate) {
+        if(sampleRate <= 0) {
+            throw new IllegalArgumentException("Invalid sample rate " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        // One second of signal stays a multiple of the cascade length (4 at 44.1 kHz, 128 at 48 kHz)
+        this.maxSubsamplingDepth = Integer.numberOfTrailingZeros(sampleRate);
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getBandsPerOctave() {
+        return bandsPerOctave;
+    }
+
+    /**
+     * @param bandsPerOctave 1 for octave bands, 3 for third octave bands..
+     */
+    public void setBandsPerOctave(int bandsPerOctave) {
+        FractionalOctaveBands.checkBandsPerOctave(bandsPerOctave);
+        this.bandsPerOctave = bandsPerOctave;
+    }
+
+    /**
+     * @param firstFrequency Frequency in Hz contained by the first band
+     * @param lastFrequency Frequency in Hz contained by the last band
+     */
+    public void setFrequencyRange(double firstFrequency, double lastFrequency) {
+        if(firstFrequency <= 0 || lastFrequency < firstFrequency) {
+            throw new IllegalArgumentException("Invalid frequency range " + firstFrequency + " - " +
+                    lastFrequency);
+        }
+        this.firstFrequency = firstFrequency;
+        this.lastFrequency = lastFrequency;
+    }
+
+    public double getFirstFrequency() {
+        return firstFrequency;
+    }
+
+    public double getLastFrequency() {
+        return lastFrequency;
+    }
+
+    public int getBandFilterOrder() {
+        return bandFilterOrder;
+    }
+
+    /**
+     * @param bandFilterOrder Order of the low-pass prototype of the band-pass filters, one second
+     * order section is generated per order
+     */
+    public void setBandFilterOrder(int bandFilterOrder) {
+        if(bandFilterOrder <= 0) {
+            throw new IllegalArgumentException("Invalid filter order " + bandFilterOrder);
+        }
+        this.bandFilterOrder = bandFilterOrder;
+    }
+
+    public int getAntiAliasingOrder() {
+        return antiAliasingOrder;
+    }
+
+    /**
+     * @param antiAliasingOrder Order of the low-pass filter applied before each decimation
+     */
+    public void setAntiAliasingOrder(int antiAliasingOrder) {
+        if(antiAliasingOrder <= 0) {
+            throw new IllegalArgumentException("Invalid filter order " + antiAliasingOrder);
+        }
+        this.antiAliasingOrder = antiAliasingOrder;
+    }
+
+    public int getMaxSubsamplingDepth() {
+        return maxSubsamplingDepth;
+    }
+
+    /**
+     * @param maxSubsamplingDepth Maximum number of decimations of the cascade, by default the
+     * sampling rate is divisible by 2^maxSubsamplingDepth
+     */
+    public void setMaxSubsamplingDepth(int maxSubsamplingDepth) {
+        if(maxSubsamplingDepth < 0) {
+            throw new IllegalArgumentException("Invalid subsampling depth " + maxSubsamplingDepth);
+        }
+        this.maxSubsamplingDepth = maxSubsamplingDepth;
+    }
+
+    /**
+     * @return Identifier of the design parameters, usable as a file name
+     */
+    public String getKey() {
+        return String.format(Locale.ROOT, "%d_%d_%s_%s_%d_%d_%d", sampleRate, bandsPerOctave,
+                Double.toString(firstFrequency), Double.toString(lastFrequency), bandFilterOrder,
+                antiAliasingOrder, maxSubsamplingDepth);
+    }
+
+    /**
+     * Compute all the filters. This may take a few milliseconds, see {@link FilterDesignCache}.
+     * @return Configuration to be used with
+     * {@link SpectrumChannel#loadConfiguration(ConfigurationSpectrumChannel, boolean)}
+     */
+    public ConfigurationSpectrumChannel design() {
+        final double nyquist = sampleRate / 2.0;
+        final double halfBandFactor = FractionalOctaveBands.getHalfBandRatio(
+                FractionalOctaveBands.BASE_TWO_RATIO, bandsPerOctave);
+        ConfigurationSpectrumChannel configuration = new ConfigurationSpectrumChannel();
+        ConfigurationMeta meta = new ConfigurationMeta();
+        meta.setSampleRate(sampleRate);
+        meta.setBandsPerOctave(bandsPerOctave);
+        configuration.setConfiguration(meta);
+        ConfigurationSos antiAliasing = butterworthLowPass(antiAliasingOrder, 0.5);
+        antiAliasing.setSampleRatio(SUBSAMPLING_RATIO);
+        configuration.setAntiAliasing(antiAliasing);
+        int bandIndex = FractionalOctaveBands.getBandIndex(FractionalOctaveBands.BASE_TWO_RATIO,
+                bandsPerOctave, firstFrequency) - 1;
+        for(; ; bandIndex++) {
+            double center = FractionalOctaveBands.getCenterFrequency(
+                    FractionalOctaveBands.BASE_TWO_RATIO, bandsPerOctave, bandIndex);
+            double minFrequency = center / halfBandFactor;
+            double maxFrequency = center * halfBandFactor;
+            if(minFrequency > lastFrequency || maxFrequency >= nyquist) {
+                break;
+            }
+            if(maxFrequency <= firstFrequency) {
+                continue;
+            }
+            int depth = 0;
+            while(depth < maxSubsamplingDepth &&
+                    maxFrequency < nyquist / Math.pow(SUBSAMPLING_RATIO, depth + 1)) {
+                depth++;
+            }
+            ConfigurationBiquad band = new ConfigurationBiquad();
+            band.setCenterFrequency(center);
+            band.setMinFrequency(minFrequency);
+            band.setMaxFrequency(maxFrequency);
+            band.setNominalFrequency(
+                    FractionalOctaveBands.getNominalFrequency(bandsPerOctave, center));
+            band.setSubsamplingDepth(depth);
+            band.setSos(butterworthBandPass(bandFilterOrder, minFrequency / nyquist,
+                    maxFrequency / nyquist));
+            ConfigurationBiquad subsamplingFilter = new ConfigurationBiquad();
+            double depthNyquist = nyquist / Math.pow(SUBSAMPLING_RATIO, depth);
+            subsamplingFilter.setSos(butterworthBandPass(bandFilterOrder, minFrequency / depthNyquist,
+                    maxFrequency / depthNyquist));
+            band.setSubsamplingFilter(subsamplingFilter);
+            configuration.getBandpass().add(band);
+        }
+        if(configuration.getBandpass().isEmpty()) {
+            throw new IllegalArgumentException("No band between " + firstFrequency + " Hz and " +
+                    lastFrequency + " Hz at " + sampleRate + " Hz");
+        }
+        configuration.setAWeighting(aWeighting(sampleRate));
+        configuration.setCWeighting(cWeighting(sampleRate));
+        return configuration;
+    }
+
+    /**
+     * Analog Butterworth prototype poles
+     */
+    private static Complex[] butterworthPoles(int order) {
+        Complex[] poles = new Complex[order];
+        for(int i = 0; i < order; i++) {
+            double angle = Math.PI * (2 * i - order + 1) / (2.0 * order);
+            poles[i] = new Complex(-Math.cos(angle), -Math.sin(angle));
+        }
+        return poles;
+    }
+
+    /**
+     * Frequency pre-warping of the bilinear transform with a sampling rate of 2
+     * @param frequency Frequency normalized by the Nyquist frequency
+     */
+    private static double warp(double frequency) {
+        return 4 * Math.tan(Math.PI * frequency / 2);
+    }
+
+    private static Complex sqrt(Complex value) {
+        double modulus = Math.sqrt(value.abs());
+        double angle = value.phase() / 2;
+        return new Complex(modulus * Math.cos(angle), modulus * Math.sin(angle));
+    }
+
+    /**
+     * @param order Filter order
+     * @param cutoff Cutoff frequency normalized by the Nyquist frequency
+     * @return Digital low-pass Butterworth filter as second order sections
+     */
+    public static ConfigurationSos butterworthLowPass(int order, double cutoff) {
+        final double wc = warp(cutoff);
+        Complex[] analogPoles = butterworthPoles(order);
+        Complex[] poles = new Complex[order];
+        for(int i = 0; i < order; i++) {
+            poles[i] = analogPoles[i].times(wc);
+        }
+        return toSos(poles, Math.pow(wc, order), 0, order);
+    }
+
+    /**
+     * @param order Order of the low-pass prototype, the band-pass filter order is 2 * order
+     * @param low Lower cutoff frequency normalized by the Nyquist frequency
+     * @param high Upper cutoff frequency normalized by the Nyquist frequency
+     * @return Digital band-pass Butterworth filter as second order sections
+     */
+    public static ConfigurationSos butterworthBandPass(int order, double low, double high) {
+        if(low <= 0 || high >= 1 || low >= high) {
+            throw new IllegalArgumentException("Invalid band " + low + " - " + high);
+        }
+        final double w1 = warp(low);
+        final double w2 = warp(high);
+        final double bandwidth = w2 - w1;
+        final Complex wo2 = new Complex(w1 * w2, 0);
+        Complex[] analogPoles = butterworthPoles(order);
+        Complex[] poles = new Complex[2 * order];
+        for(int i = 0; i < order; i++) {
+            Complex p = analogPoles[i].times(bandwidth / 2);
+            Complex root = sqrt(p.times(p).minus(wo2));
+            poles[2 * i] = p.plus(root);
+            poles[2 * i + 1] = p.minus(root);
+        }
+        return toSos(poles, Math.pow(bandwidth, order), order, order);
+    }
+
+    /**
+     * Bilinear transform of the analog filter then grouping as second order sections. Sections are
+     * sorted by increasing pole radius and the zeros of a section are the nearest to its poles.
+     * @param analogPoles Poles of the analog filter, in conjugate pairs
+     * @param gain Analog gain
+     * @param zerosAtZero Number of analog zeros at 0, mapped to 1
+     * @param zerosAtInfinity Number of analog zeros at infinity, mapped to -1
+     */
+    private static ConfigurationSos toSos(Complex[] analogPoles, double gain, int zerosAtZero,
+                                          int zerosAtInfinity) {
+        final Complex fs2 = new Complex(4, 0);
+        List<Complex> poles = new ArrayList<>();
+        // Digital gain is gain * prod(fs2 - z) / prod(fs2 - p)
+        Complex denominator = new Complex(1, 0);
+        for(Complex p : analogPoles) {
+            denominator = denominator.times(fs2.minus(p));
+            Complex z = fs2.plus(p).divides(fs2.minus(p));
+            // keep one pole of each conjugate pair, and real poles
+            if(z.im() > -POLE_IMAGINARY_EPSILON) {
+                poles.add(z);
+            }
+        }
+        double digitalGain = gain * Math.pow(4, zerosAtZero) / denominator.re();
+        // Process the poles nearest to the unit circle first, they are placed last
+        Collections.sort(poles, new Comparator<Complex>() {
+            @Override
+            public int compare(Complex a, Complex b) {
+                return Double.compare(b.abs(), a.abs());
+            }
+        });
+        int remainingPositive = zerosAtZero;
+        int remainingNegative = zerosAtInfinity;
+        ConfigurationSos sos = new ConfigurationSos();
+        for(Complex p : poles) {
+            boolean realPole = p.im() < POLE_IMAGINARY_EPSILON;
+            int sectionOrder = realPole ? 1 : 2;
+            double[] zeros = new double[sectionOrder];
+            for(int i = 0; i < sectionOrder; i++) {
+                boolean positive = remainingNegative == 0 || (remainingPositive > 0 && p.re() >= 0);
+                if(positive) {
+                    remainingPositive--;
+                    zeros[i] = 1;
+                } else {
+                    remainingNegative--;
+                    zeros[i] = -1;
+                }
+            }
+            if(realPole) {
+                sos.getB0().add(0, 1.0);
+                sos.getB1().add(0, -zeros[0]);
+                sos.getB2().add(0, 0.0);
+                sos.getA1().add(0, -p.re());
+                sos.getA2().add(0, 0.0);
+            } else {
+                sos.getB0().add(0, 1.0);
+                sos.getB1().add(0, -(zeros[0] + zeros[1]));
+                sos.getB2().add(0, zeros[0] * zeros[1]);
+                sos.getA1().add(0, -2 * p.re());
+                sos.getA2().add(0, p.re() * p.re() + p.im() * p.im());
+            }
+        }
+        sos.getB0().set(0, sos.getB0().get(0) * digitalGain);
+        sos.getB1().set(0, sos.getB1().get(0) * digitalGain);
+        sos.getB2().set(0, sos.getB2().get(0) * digitalGain);
+        return sos;
+    }
+
+    private static double[] polynomialMultiply(double[] a, double[] b) {
+        double[] result = new double[a.length + b.length - 1];
+        for(int i = 0; i < a.length; i++) {
+            for(int j = 0; j < b.length; j++) {
+                result[i + j] += a[i] * b[j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Bilinear transform of an analog transfer function
+     * @param numerator Analog numerator coefficients, by decreasing powers of s
+     * @param denominator Analog denominator coefficients, by decreasing powers of s
+     * @param sampleRate Sampling rate in Hz
+     * @return Digital filter coefficients by increasing powers of z^-1, normalized by a0
+     */
+    static ConfigurationDigitalFilter bilinear(double[] numerator, double[] denominator,
+                                               double sampleRate) {
+        final int order = Math.max(numerator.length, denominator.length) - 1;
+        final double fs2 = 2 * sampleRate;
+        double[] b = new double[order + 1];
+        double[] a = new double[order + 1];
+        for(int power = 0; power <= order; power++) {
+            // s^power = fs2^power (1 - z^-1)^power (1 + z^-1)^(order - power) / (1 + z^-1)^order
+            double[] term = new double[]{Math.pow(fs2, power)};
+            for(int i = 0; i < power; i++) {
+                term = polynomialMultiply(term, new double[]{1, -1});
+            }
+            for(int i = power; i < order; i++) {
+                term = polynomialMultiply(term, new double[]{1, 1});
+            }
+            int numeratorIndex = numerator.length - 1 - power;
+            int denominatorIndex = denominator.length - 1 - power;
+            for(int i = 0; i <= order; i++) {
+                if(numeratorIndex >= 0) {
+                    b[i] += numerator[numeratorIndex] * term[i];
+                }
+                if(denominatorIndex >= 0) {
+                    a[i] += denominator[denominatorIndex] * term[i];
+                }
+            }
+        }
+        ConfigurationDigitalFilter filter = new ConfigurationDigitalFilter();
+        final double a0 = a[0];
+        for(int i = 0; i <= order; i++) {
+            filter.getFilterNumerator().add(b[i] / a0);
+            filter.getFilterDenominator().add(a[i] / a0);
+        }
+        return filter;
+    }
+
+    private static double[] weightingDenominator(boolean aWeighting) {
+        final double w1 = 2 * Math.PI * F1;
+        final double w4 = 2 * Math.PI * F4;
+        double[] denominator = polynomialMultiply(new double[]{1, 2 * w4, w4 * w4},
+                new double[]{1, 2 * w1, w1 * w1});
+        if(aWeighting) {
+            denominator = polynomialMultiply(denominator, new double[]{1, 2 * Math.PI * F3});
+            denominator = polynomialMultiply(denominator, new double[]{1, 2 * Math.PI * F2});
+        }
+        return denominator;
+    }
+
+    /**
+     * @param sampleRate Sampling rate in Hz
+     * @return A weighting filter (IEC 61672-1)
+     */
+    public static ConfigurationDigitalFilter aWeighting(double sampleRate) {
+        final double w4 = 2 * Math.PI * F4;
+        return bilinear(new double[]{w4 * w4 * Math.pow(10, A1000 / 20), 0, 0, 0, 0},
+                weightingDenominator(true), sampleRate);
+    }
+
+    /**
+     * @param sampleRate Sampling rate in Hz
+     * @return C weighting filter (IEC 61672-1)
+     */
+    public static ConfigurationDigitalFilter cWeighting(double sampleRate) {
+        final double w4 = 2 * Math.PI * F4;
+        return bilinear(new double[]{w4 * w4 * Math.pow(10, C1000 / 20), 0, 0},
+                weightingDenominator(false), sampleRate);
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Octave and fractional octave bands (IEC 61260-1). A resolution is given as a number of bands
+ * per octave: 1 for octave bands, 3 for third octave bands, 6 or 12 for finer bands. Band index 0
+ * is the band of the reference frequency (1 kHz) for an odd number of bands per octave, the band
+ * just above the reference frequency otherwise.
+ */
+public class FractionalOctaveBands {
+    public static final double REFERENCE_FREQUENCY = 1000;
+    /** Octave ratio of base 2 bands */
+    public static final double BASE_TWO_RATIO = 2;
+    /** Octave ratio of base 10 bands */
+    public static final double BASE_TEN_RATIO = Math.pow(10, 3 / 10.);
+    public static final int OCTAVE = 1;
+    public static final int THIRD_OCTAVE = 3;
+    public static final int SIXTH_OCTAVE = 6;
+    public static final int TWELFTH_OCTAVE = 12;
+
+    private FractionalOctaveBands() {}
+
+    /**
+     * @param bandsPerOctave Number of bands per octave
+     * @throws IllegalArgumentException If bandsPerOctave is not a positive number
+     */
+    public static void checkBandsPerOctave(int bandsPerOctave) {
+        if(bandsPerOctave <= 0) {
+            throw new IllegalArgumentException("Invalid number of bands per octave " + bandsPerOctave);
+        }
+    }
+
+    /**
+     * @param octaveRatio {@link #BASE_TWO_RATIO} or {@link #BASE_TEN_RATIO}
+     * @param bandsPerOctave Number of bands per octave
+     * @param bandIndex Band index
+     * @return Exact mid-band frequency in Hz
+     */
+    public static double getCenterFrequency(double octaveRatio, int bandsPerOctave, int bandIndex) {
+        if(bandsPerOctave % 2 == 1) {
+            return REFERENCE_FREQUENCY * Math.pow(octaveRatio, (double) bandIndex / bandsPerOctave);
+        } else {
+            return REFERENCE_FREQUENCY * Math.pow(octaveRatio,
+                    (2.0 * bandIndex + 1) / (2 * bandsPerOctave));
+        }
+    }
+
+    /**
+     * @param octaveRatio {@link #BASE_TWO_RATIO} or {@link #BASE_TEN_RATIO}
+     * @param bandsPerOctave Number of bands per octave
+     * @return Ratio between the upper edge and the center frequency of a band
+     */
+    public static double getHalfBandRatio(double octaveRatio, int bandsPerOctave) {
+        return Math.pow(octaveRatio, 1.0 / (2 * bandsPerOctave));
+    }
+
+    /**
+     * @param octaveRatio {@link #BASE_TWO_RATIO} or {@link #BASE_TEN_RATIO}
+     * @param bandsPerOctave Number of bands per octave
+     * @param frequency Nominal or exact center frequency in Hz
+     * @return Index of the band centered on this frequency
+     */
+    public static int getBandIndex(double octaveRatio, int bandsPerOctave, double frequency) {
+        double octaves = Math.log(frequency / REFERENCE_FREQUENCY) / Math.log(octaveRatio);
+        if(bandsPerOctave % 2 == 1) {
+            return (int) Math.round(octaves * bandsPerOctave);
+        } else {
+            return (int) Math.round((octaves * 2 * bandsPerOctave - 1) / 2);
+        }
+    }
+
+    /**
+     * @param bandsPerOctave Number of bands per octave
+     * @param center Exact center frequency in Hz
+     * @return The standard third octave frequency for octave and third octave bands, else the
+     * center frequency rounded to 3 significant digits
+     */
+    public static double getNominalFrequency(int bandsPerOctave, double center) {
+        if(THIRD_OCTAVE % bandsPerOctave == 0) {
+            for(double standard : ThirdOctaveFrequencies.STANDARD_FREQUENCIES) {
+                if(Math.abs(Math.log(standard / center) / Math.log(2)) < 1.0 / 12) {
+                    return standard;
+                }
+            }
+        }
+        double scale = Math.pow(10, Math.floor(Math.log10(center)) - 2);
+        return Math.round(center / scale) * scale;
+    }
+
+    /**
+     * @param bandsPerOctave Number of bands per octave
+     * @param minFrequency Lowest nominal frequency in Hz
+     * @param maxFrequency Highest nominal frequency in Hz
+     * @return Nominal frequencies of the base 2 bands in [minFrequency, maxFrequency]
+     */
+    public static double[] getNominalFrequencies(int bandsPerOctave, double minFrequency,
+                                                 double maxFrequency) {
+        checkBandsPerOctave(bandsPerOctave);
+        final double halfBandRatio = getHalfBandRatio(BASE_TWO_RATIO, bandsPerOctave);
+        List<Double> frequencies = new ArrayList<>();
+        int bandIndex = getBandIndex(BASE_TWO_RATIO, bandsPerOctave, minFrequency) - 1;
+        for(double center = getCenterFrequency(BASE_TWO_RATIO, bandsPerOctave, bandIndex);
+            center <= maxFrequency * halfBandRatio;
+            center = getCenterFrequency(BASE_TWO_RATIO, bandsPerOctave, ++bandIndex)) {
+            double nominal = getNominalFrequency(bandsPerOctave, center);
+            if(nominal >= minFrequency && nominal <= maxFrequency) {
+                frequencies.add(nominal);
+            }
+        }
+        double[] nominal = new double[frequencies.size()];
+        for(int i = 0; i < nominal.length; i++) {
+            nominal[i] = frequencies.get(i);
+        }
+        return nominal;
+    }
+
+    /**
+     * A weighting of IEC 61672-1
+     * @param frequency Frequency in Hz
+     * @return A weighting in dB
+     */
+    public static double getAWeighting(double frequency) {
+        final double f2 = frequency * frequency;
+        final double ra = 12194. * 12194. * f2 * f2 / ((f2 + 20.6 * 20.6) *
+                Math.sqrt((f2 + 107.7 * 107.7) * (f2 + 737.9 * 737.9)) * (f2 + 12194. * 12194.));
+        return 20 * Math.log10(ra) + 2.0;
+    }
+}
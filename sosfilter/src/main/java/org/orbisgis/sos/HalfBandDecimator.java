@@ -0,0 +1,218 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.util.Arrays;
+
+/**
+ * Decimation by 2 with a linear phase half-band FIR low-pass filter (Kaiser window design).
+ * Only the retained output samples are computed and, the half-band filter having one coefficient
+ * over two equal to zero and symmetric coefficients, each output costs (taps + 1) / 4
+ * multiplications. This is the polyphase form of the decimation: the even phase is the center
+ * tap and the odd phase the symmetric pairs.
+ * The response is 0.5 (-6 dB) at half the Nyquist frequency, the pass band and the stop band are
+ * at {@code 0.5 -/+ transitionWidth / 2} of the Nyquist frequency.
+ */
+public class HalfBandDecimator {
+    public static final int RATIO = 2;
+    // Transition band normalized by the Nyquist frequency, the bands kept after the decimation
+    // end below 0.47 of the Nyquist frequency for the usual sampling rates
+    public static final double DEFAULT_TRANSITION_WIDTH = 0.06;
+    public static final double DEFAULT_ATTENUATION = 65;
+    // Upper edge of the pass band of the default decimator, normalized by the Nyquist frequency
+    public static final double DEFAULT_PASS_BAND = 0.5 - DEFAULT_TRANSITION_WIDTH / 2;
+    // Odd offsets 1, 3, 5 .. halfLength from the center tap, one side
+    private final double[] coefficients;
+    private final int halfLength;
+    private int channelCount = 1;
+    // Last 2 * halfLength frames of the previous call, interleaved
+    private float[] history;
+    private float[] work = new float[0];
+
+    public HalfBandDecimator() {
+        this(DEFAULT_TRANSITION_WIDTH, DEFAULT_ATTENUATION);
+    }
+
+    /**
+     * @param transitionWidth Width of the transition band centered on half the Nyquist frequency,
+     * normalized by the Nyquist frequency
+     * @param attenuation Stop band attenuation in dB
+     */
+    public HalfBandDecimator(double transitionWidth, double attenuation) {
+        if(!(transitionWidth > 0 && transitionWidth < 1)) {
+            throw new IllegalArgumentException("Transition width must be in ]0, 1[");
+        }
+        if(!(attenuation > 0)) {
+            throw new IllegalArgumentException("Attenuation must be positive");
+        }
+        // Kaiser estimation of the filter order
+        int order = (int) Math.ceil((attenuation - 7.95) / (2.285 * Math.PI * transitionWidth));
+        int m = Math.max(1, (order + 1) / 2);
+        // Half length must be odd to end on a non zero coefficient
+        if(m % 2 == 0) {
+            m++;
+        }
+        halfLength = m;
+        final double beta;
+        if(attenuation > 50) {
+            beta = 0.1102 * (attenuation - 8.7);
+        } else if(attenuation >= 21) {
+            beta = 0.5842 * Math.pow(attenuation - 21, 0.4) + 0.07886 * (attenuation - 21);
+        } else {
+            beta = 0;
+        }
+        coefficients = new double[(halfLength + 1) / 2];
+        double sum = 0;
+        for(int i = 0; i < coefficients.length; i++) {
+            int offset = 2 * i + 1;
+            double ratio = offset / (double) halfLength;
+            double window = besselI0(beta * Math.sqrt(1 - ratio * ratio)) / besselI0(beta);
+            coefficients[i] = Math.sin(Math.PI * offset / 2) / (Math.PI * offset) * window;
+            sum += coefficients[i];
+        }
+        // Unit gain at 0 Hz, the center tap is 0.5
+        for(int i = 0; i < coefficients.length; i++) {
+            coefficients[i] *= 0.25 / sum;
+        }
+        history = new float[2 * halfLength];
+    }
+
+    /**
+     * Modified Bessel function of the first kind, order 0
+     */
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        final double quarterSquare = x * x / 4;
+        for(int k = 1; k < 200 && term > sum * 1e-17; k++) {
+            term *= quarterSquare / ((double) k * k);
+            sum += term;
+        }
+        return sum;
+    }
+
+    /**
+     * @return Number of taps of the filter
+     */
+    public int getLength() {
+        return 2 * halfLength + 1;
+    }
+
+    /**
+     * @return Delay of the filter in input samples
+     */
+    public int getDelay() {
+        return halfLength;
+    }
+
+    /**
+     * @param frequency Frequency normalized by the Nyquist frequency
+     * @return Amplitude response of the filter
+     */
+    public double getResponse(double frequency) {
+        double response = 0.5;
+        for(int i = 0; i < coefficients.length; i++) {
+            response += 2 * coefficients[i] * Math.cos(Math.PI * frequency * (2 * i + 1));
+        }
+        return response;
+    }
+
+    public void reset() {
+        Arrays.fill(history, 0);
+    }
+
+    /**
+     * @param samplesIn Input signal, the length must be even
+     * @param samplesOut Output, receives samplesIn.length / 2 samples
+     */
+    public void decimate(float[] samplesIn, float[] samplesOut) {
+        decimate(samplesIn, samplesOut, 1);
+    }
+
+    /**
+     * Decimate an interleaved signal, each channel has its own filter state. The state is reset
+     * when the channel count changes.
+     * @param samplesIn Input signal frame after frame, the number of frames must be even
+     * @param samplesOut Interleaved output, receives samplesIn.length / 2 samples
+     * @param channelCount Number of channels
+     */
+    public void decimate(float[] samplesIn, float[] samplesOut, int channelCount) {
+        if(channelCount <= 0 || samplesIn.length % (channelCount * RATIO) != 0) {
+            throw new IllegalArgumentException("Input length must be a multiple of " +
+                    "2 * channelCount");
+        }
+        final int outputFrames = samplesIn.length / channelCount / RATIO;
+        if(samplesOut.length < outputFrames * channelCount) {
+            throw new IllegalArgumentException("Output array too short");
+        }
+        if(channelCount != this.channelCount) {
+            this.channelCount = channelCount;
+            history = new float[2 * halfLength * channelCount];
+        }
+        // History followed by the new samples
+        final int workLength = history.length + samplesIn.length;
+        if(work.length < workLength) {
+            work = new float[workLength];
+        }
+        final float[] work = this.work;
+        final double[] coefficients = this.coefficients;
+        System.arraycopy(history, 0, work, 0, history.length);
+        System.arraycopy(samplesIn, 0, work, history.length, samplesIn.length);
+        if(channelCount == 1) {
+            // Contiguous taps, let the JIT unroll the loop
+            for(int frame = 0; frame < outputFrames; frame++) {
+                final int center = halfLength + RATIO * frame;
+                double acc = 0.5 * work[center];
+                for(int i = 0; i < coefficients.length; i++) {
+                    acc += coefficients[i] * (work[center - 2 * i - 1] + work[center + 2 * i + 1]);
+                }
+                samplesOut[frame] = (float) acc;
+            }
+        } else {
+            decimateInterleaved(work, samplesOut, outputFrames, channelCount);
+        }
+        System.arraycopy(work, workLength - history.length, history, 0, history.length);
+    }
+
+    private void decimateInterleaved(float[] work, float[] samplesOut, int outputFrames,
+                                     int channelCount) {
+        final double[] coefficients = this.coefficients;
+        for(int frame = 0; frame < outputFrames; frame++) {
+            for(int channel = 0; channel < channelCount; channel++) {
+                // Center tap of the output kept at input frame 2 * frame
+                final int center = (halfLength + RATIO * frame) * channelCount + channel;
+                double acc = 0.5 * work[center];
+                for(int i = 0; i < coefficients.length; i++) {
+                    final int offset = (2 * i + 1) * channelCount;
+                    acc += coefficients[i] * (work[center - offset] + work[center + offset]);
+                }
+                samplesOut[frame * channelCount + channel] = (float) acc;
+            }
+        }
+    }
+}
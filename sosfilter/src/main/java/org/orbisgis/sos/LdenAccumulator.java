@@ -0,0 +1,248 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Incremental day-evening-night level (Lden, directive 2002/49/EC).
+ * Timestamped LAeq values are accumulated as energy sums of the day, evening and night periods
+ * of the local time. The boundaries of the current period are cached so that a value costs O(1)
+ * while consecutive values stay in the same period, and the calendar of the time zone is used to
+ * find the period boundaries, including the daylight saving time transitions. Accumulators with
+ * the same configuration can be merged, ex: one accumulator per partition of the measurements.
+ * java.time is not used in order to run on all the Android versions supported by the application.
+ */
+public class LdenAccumulator {
+    public static final int DAY = 0;
+    public static final int EVENING = 1;
+    public static final int NIGHT = 2;
+    public static final int DEFAULT_DAY_START = 7;
+    public static final int DEFAULT_EVENING_START = 19;
+    public static final int DEFAULT_NIGHT_START = 23;
+    public static final double DEFAULT_EVENING_PENALTY = 5;
+    public static final double DEFAULT_NIGHT_PENALTY = 10;
+    private final TimeZone timeZone;
+    // Local hour of the start of each period, night start can be 24 (midnight)
+    private final int[] periodStart;
+    private final double[] penalty;
+    private final double[] energySum = new double[3];
+    private final double[] durationSum = new double[3];
+    private final Calendar calendar;
+    // Current period cache, [periodBegin, periodEnd[ in milliseconds since epoch
+    private long periodBegin = Long.MAX_VALUE;
+    private long periodEnd = Long.MIN_VALUE;
+    private int period;
+
+    /**
+     * Periods 7h-19h, 19h-23h, 23h-7h with 0, 5 and 10 dB penalties
+     * @param timeZone Time zone of the local time
+     */
+    public LdenAccumulator(TimeZone timeZone) {
+        this(timeZone, DEFAULT_DAY_START, DEFAULT_EVENING_START, DEFAULT_NIGHT_START, 0,
+                DEFAULT_EVENING_PENALTY, DEFAULT_NIGHT_PENALTY);
+    }
+
+    /**
+     * @param timeZone Time zone of the local time
+     * @param dayStart Local hour of the start of the day period
+     * @param eveningStart Local hour of the start of the evening period
+     * @param nightStart Local hour of the start of the night period, up to 24. The evening period
+     *                   is empty if it is equal to eveningStart.
+     * @param dayPenalty Penalty in dB added to the day level
+     * @param eveningPenalty Penalty in dB added to the evening level
+     * @param nightPenalty Penalty in dB added to the night level
+     */
+    public LdenAccumulator(TimeZone timeZone, int dayStart, int eveningStart, int nightStart,
+                           double dayPenalty, double eveningPenalty, double nightPenalty) {
+        if(dayStart < 0 || dayStart >= eveningStart || eveningStart > nightStart || nightStart > 24
+                || nightStart - dayStart >= 24) {
+            throw new IllegalArgumentException("Period hours must follow " +
+                    "0 <= dayStart < eveningStart <= nightStart <= 24 with a night period");
+        }
+        this.timeZone = (TimeZone) timeZone.clone();
+        this.periodStart = new int[]{dayStart, eveningStart, nightStart};
+        this.penalty = new double[]{dayPenalty, eveningPenalty, nightPenalty};
+        this.calendar = Calendar.getInstance(this.timeZone);
+    }
+
+    public TimeZone getTimeZone() {
+        return (TimeZone) timeZone.clone();
+    }
+
+    /**
+     * @param period {@link #DAY}, {@link #EVENING} or {@link #NIGHT}
+     * @return Nominal duration of the period in hours
+     */
+    public int getPeriodHours(int period) {
+        if(period == NIGHT) {
+            return 24 - periodStart[NIGHT] + periodStart[DAY];
+        }
+        return periodStart[period + 1] - periodStart[period];
+    }
+
+    /**
+     * Add a value of the same duration as the other ones
+     * @param epochMillis Time of the value in milliseconds since epoch
+     * @param laeq Level in dB(A)
+     */
+    public void addLeq(long epochMillis, double laeq) {
+        addLeq(epochMillis, laeq, 1);
+    }
+
+    /**
+     * @param epochMillis Time of the value in milliseconds since epoch
+     * @param laeq Level in dB(A)
+     * @param duration Duration (weight) of the value, in any unit shared by all the values
+     */
+    public void addLeq(long epochMillis, double laeq, double duration) {
+        if(epochMillis < periodBegin || epochMillis >= periodEnd) {
+            updatePeriod(epochMillis);
+        }
+        energySum[period] += DecibelMath.toEnergy(laeq) * duration;
+        durationSum[period] += duration;
+    }
+
+    /**
+     * @param epochMillis Time in milliseconds since epoch
+     * @return Period of this time, {@link #DAY}, {@link #EVENING} or {@link #NIGHT}
+     */
+    public int getPeriod(long epochMillis) {
+        if(epochMillis < periodBegin || epochMillis >= periodEnd) {
+            updatePeriod(epochMillis);
+        }
+        return period;
+    }
+
+    /**
+     * Find the period of this time and its boundaries in the local time
+     */
+    private void updatePeriod(long epochMillis) {
+        calendar.setTimeInMillis(epochMillis);
+        final int hour = calendar.get(Calendar.HOUR_OF_DAY);
+        // Day offsets from the current local day of the period boundaries
+        int beginDay = 0;
+        int endDay = 0;
+        if(hour >= periodStart[DAY] && hour < periodStart[EVENING]) {
+            period = DAY;
+        } else if(hour >= periodStart[EVENING] && hour < periodStart[NIGHT]) {
+            period = EVENING;
+        } else {
+            period = NIGHT;
+            if(hour < periodStart[DAY]) {
+                beginDay = -1;
+            } else {
+                endDay = 1;
+            }
+        }
+        final int endHour = period == NIGHT ? periodStart[DAY] : periodStart[period + 1];
+        periodBegin = localHourToMillis(epochMillis, beginDay, periodStart[period]);
+        periodEnd = localHourToMillis(epochMillis, endDay, endHour);
+    }
+
+    /**
+     * @return Time of the local hour of the day of epochMillis plus dayOffset days. A local hour
+     * skipped by a daylight saving time transition is moved to the first valid time after it.
+     */
+    private long localHourToMillis(long epochMillis, int dayOffset, int hour) {
+        calendar.setTimeInMillis(epochMillis);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.add(Calendar.DAY_OF_MONTH, dayOffset + hour / 24);
+        calendar.set(Calendar.HOUR_OF_DAY, hour % 24);
+        return calendar.getTimeInMillis();
+    }
+
+    /**
+     * Add the sums of another accumulator
+     * @param other Accumulator with the same periods, penalties and time zone
+     */
+    public void merge(LdenAccumulator other) {
+        if(!Arrays.equals(periodStart, other.periodStart) ||
+                !Arrays.equals(penalty, other.penalty) ||
+                !timeZone.hasSameRules(other.timeZone)) {
+            throw new IllegalArgumentException("Accumulators with different configurations");
+        }
+        for(int i = 0; i < energySum.length; i++) {
+            energySum[i] += other.energySum[i];
+            durationSum[i] += other.durationSum[i];
+        }
+    }
+
+    /**
+     * @param period {@link #DAY}, {@link #EVENING} or {@link #NIGHT}
+     * @return Sum of the durations of the values of this period
+     */
+    public double getDuration(int period) {
+        return durationSum[period];
+    }
+
+    /**
+     * @param period {@link #DAY}, {@link #EVENING} or {@link #NIGHT}
+     * @return Equivalent level of this period without penalty, NaN if there is no value
+     */
+    public double getLeq(int period) {
+        return durationSum[period] > 0 ?
+                DecibelMath.toDecibel(energySum[period] / durationSum[period]) : Double.NaN;
+    }
+
+    public double getLday() {
+        return getLeq(DAY);
+    }
+
+    public double getLevening() {
+        return getLeq(EVENING);
+    }
+
+    public double getLnight() {
+        return getLeq(NIGHT);
+    }
+
+    /**
+     * @return Lden, NaN if a non empty period has no value
+     */
+    public double getLden() {
+        double energy = 0;
+        int hours = 0;
+        for(int i = DAY; i <= NIGHT; i++) {
+            int periodHours = getPeriodHours(i);
+            if(periodHours > 0) {
+                if(!(durationSum[i] > 0)) {
+                    return Double.NaN;
+                }
+                energy += periodHours * DecibelMath.toEnergy(getLeq(i) + penalty[i]);
+                hours += periodHours;
+            }
+        }
+        return DecibelMath.toDecibel(energy / hours);
+    }
+}
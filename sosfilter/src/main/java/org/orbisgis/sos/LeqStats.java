@@ -27,24 +27,25 @@
 
 package org.orbisgis.sos;
 
-import org.apache.commons.math3.stat.descriptive.rank.Percentile;
-
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Compute descriptive statistics on leq
  */
 public class LeqStats {
+    // Levels outside this range are counted in the first or last class
+    static final double MIN_CLASS_LEVEL = -300;
+    static final double MAX_CLASS_LEVEL = 300;
     private double rmsSum = 0;
     private int rmsSumCount = 0;
     private double leqMin = Double.MAX_VALUE;
     private double leqMax = Double.MIN_VALUE;
-    // Sorted map of leq classes
-    private Map<Integer, AtomicInteger> leqClass = new TreeMap<>();
+    // Histogram of leq classes, the class key (leq / classStep) of classCounts[i] is
+    // i + classKeyOffset. The array grows to cover the added levels.
+    private int[] classCounts = new int[0];
+    private int classKeyOffset = 0;
     private static final double DEFAULT_CLASS_STEP = 0.1;
     private double classStep = DEFAULT_CLASS_STEP;
     private double lastLeq=0;
@@ -63,61 +64,177 @@ public class LeqStats {
         rmsSum = copyFrom.rmsSum;
         classStep = copyFrom.classStep;
         rmsSumCount = copyFrom.rmsSumCount;
-        leqClass = new TreeMap<>(copyFrom.leqClass);
+        classCounts = Arrays.copyOf(copyFrom.classCounts, copyFrom.classCounts.length);
+        classKeyOffset = copyFrom.classKeyOffset;
+    }
+
+    /**
+     * Build statistics from accumulated values, see {@link ConcurrentLeqStats}
+     * @param classCounts Histogram, classCounts[i] is the count of the class key i + classKeyOffset
+     */
+    LeqStats(double classStep, double rmsSum, int rmsSumCount, double leqMin, double leqMax,
+             double lastLeq, int[] classCounts, int classKeyOffset) {
+        this.classStep = classStep;
+        this.rmsSum = rmsSum;
+        this.rmsSumCount = rmsSumCount;
+        this.leqMin = leqMin;
+        this.leqMax = leqMax;
+        this.lastLeq = lastLeq;
+        this.classCounts = classCounts;
+        this.classKeyOffset = classKeyOffset;
+    }
+
+    /**
+     * @return Class key of this level, the class level is key * classStep
+     */
+    static int getClassKey(double leq, double classStep) {
+        return (int)(Math.max(MIN_CLASS_LEVEL, Math.min(MAX_CLASS_LEVEL, leq)) / classStep);
     }
 
     public void addLeq(double leq) {
+        addLeq(leq, DecibelMath.toEnergy(leq));
+    }
+
+    /**
+     * Add a level whose linear energy is already known, ex:
+     * {@link FFTSignalProcessing.ProcessingResult#getWindowLeqEnergy()}
+     * @param leq Level in dB
+     * @param energy 10^(leq/10)
+     */
+    public void addLeq(double leq, double energy) {
         lastLeq = leq;
         leqMin = Math.min(leqMin, leq);
         leqMax = Math.max(leqMax, leq);
-        rmsSum += Math.pow(10., leq / 10.);
-        int key = (int)(leq / classStep);
-        AtomicInteger leqCounter = leqClass.get(key);
-        if(leqCounter == null) {
-            leqCounter = new AtomicInteger(0);
-            leqClass.put(key, leqCounter);
-        }
-        leqCounter.addAndGet(1);
+        rmsSum += energy;
+        int key = getClassKey(leq, classStep);
+        ensureClass(key);
+        classCounts[key - classKeyOffset]++;
         rmsSumCount++;
     }
 
+    /**
+     * Add the levels of other statistics, as if they were added to this instance with
+     * {@link #addLeq(double)}. The last leq becomes the last leq of the other statistics.
+     * @param other Statistics with the same class step
+     */
+    public void merge(LeqStats other) {
+        if(Double.compare(classStep, other.classStep) != 0) {
+            throw new IllegalArgumentException("Cannot merge statistics with different class steps");
+        }
+        if(other.rmsSumCount == 0) {
+            return;
+        }
+        lastLeq = other.lastLeq;
+        leqMin = Math.min(leqMin, other.leqMin);
+        leqMax = Math.max(leqMax, other.leqMax);
+        rmsSum += other.rmsSum;
+        rmsSumCount += other.rmsSumCount;
+        for(int idClass = 0; idClass < other.classCounts.length; idClass++) {
+            int count = other.classCounts[idClass];
+            if(count > 0) {
+                int key = idClass + other.classKeyOffset;
+                ensureClass(key);
+                classCounts[key - classKeyOffset] += count;
+            }
+        }
+    }
+
+    /**
+     * @return Number of added levels
+     */
+    public int getLeqCount() {
+        return rmsSumCount;
+    }
+
+    public double getClassStep() {
+        return classStep;
+    }
+
+    /**
+     * Grow the histogram in order to contain the provided class key
+     */
+    private void ensureClass(int key) {
+        if(classCounts.length == 0) {
+            classCounts = new int[16];
+            classKeyOffset = key - classCounts.length / 2;
+        } else if(key < classKeyOffset) {
+            int[] grown = new int[Math.max(classCounts.length * 2, classCounts.length + classKeyOffset - key)];
+            int shift = grown.length - classCounts.length;
+            System.arraycopy(classCounts, 0, grown, shift, classCounts.length);
+            classCounts = grown;
+            classKeyOffset -= shift;
+        } else if(key >= classKeyOffset + classCounts.length) {
+            classCounts = Arrays.copyOf(classCounts, Math.max(classCounts.length * 2,
+                    key - classKeyOffset + 1));
+        }
+    }
+
     public double getLastLeq() {
         return lastLeq;
     }
 
+    /**
+     * @param rank Index of the level in the sorted levels
+     * @return Class level of the sorted level at this index
+     */
+    private double getSortedLevel(long rank) {
+        long cumulated = 0;
+        for(int idClass = 0; idClass < classCounts.length; idClass++) {
+            cumulated += classCounts[idClass];
+            if(cumulated > rank) {
+                return (idClass + classKeyOffset) * classStep;
+            }
+        }
+        throw new IndexOutOfBoundsException("Rank " + rank + " of " + rmsSumCount + " levels");
+    }
+
+    /**
+     * Percentile of the class levels. Same estimation as the default method of
+     * commons-math Percentile, computed from the class counts without sorting the levels.
+     * @param percentile Percentile in ]0, 100], ex: 90 gives the LA10 (level exceeded 10% of time)
+     * @return Class level, NaN if there is no level
+     */
+    public double computePercentile(double percentile) {
+        double rank = getPercentileRank(percentile, rmsSumCount);
+        if(Double.isNaN(rank)) {
+            return Double.NaN;
+        }
+        int lowerRank = (int) rank;
+        double lower = getSortedLevel(lowerRank);
+        if(rank > lowerRank) {
+            return lower + (rank - lowerRank) * (getSortedLevel(lowerRank + 1) - lower);
+        }
+        return lower;
+    }
+
+    /**
+     * Position of a percentile in sorted levels, using the default estimation of commons-math
+     * Percentile. The percentile is interpolated between floor(rank) and floor(rank) + 1.
+     * @param percentile Percentile in ]0, 100]
+     * @param count Number of levels
+     * @return Index in [0, count - 1] with a fractional part, NaN if count is 0
+     */
+    static double getPercentileRank(double percentile, int count) {
+        if(percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile out of ]0, 100] range");
+        }
+        if(count == 0) {
+            return Double.NaN;
+        }
+        double pos = percentile * (count + 1) / 100;
+        return Math.max(0, Math.min(count - 1, pos - 1));
+    }
+
     /**
      * Compute Leq stats using specified range.double[][] classRanges = ;
      * @param laOccurrencesRanges Min-Max range ex: new double[][]{{Double.MIN_VALUE, 45}, {45, 55}, {55, 65}, {65, 75},{75, Double.MAX_VALUE}}
      * @return LeqOccurrences instance
      */
     public LeqOccurrences computeLeqOccurrences(double[][] laOccurrencesRanges) {
-        // Compute invert sum of class occurrences
-        List<Double> classList = new ArrayList<>(leqClass.size());
-        List<Integer> classValue = new ArrayList<>(leqClass.size());
-        long sum = 0;
-        double[] values = new double[rmsSumCount];
-        int valCounter = 0;
-        for(Map.Entry<Integer, AtomicInteger> entry : leqClass.entrySet()) {
-            double leq = entry.getKey() * classStep;
-            classList.add(leq);
-            classValue.add(0, entry.getValue().get());
-            sum += entry.getValue().get();
-            for(int classValCount = 0; classValCount < entry.getValue().get(); classValCount++) {
-                values[valCounter++] = leq;
-            }
-        }
-        List<Double> sumClassValuePerc = new ArrayList<>(classValue.size());
-        double invSum = 0.;
-        for(int classVal : classValue) {
-            invSum += classVal / (double)sum;
-            sumClassValuePerc.add(0, invSum);
-        }
-        Percentile percentile = new Percentile();
-        percentile.setData(values);
         // Fetch level at each lae
-        double la10 = percentile.evaluate(100 - 10);
-        double la50 = percentile.evaluate(50);
-        double la90 = percentile.evaluate(100 - 90);
+        double la10 = computePercentile(100 - 10);
+        double la50 = computePercentile(50);
+        double la90 = computePercentile(100 - 90);
 
         // Sum percentage between provided laOccurrancesRanges
         List<Double> laOccurrencesRangesValue = new ArrayList<>();
@@ -125,17 +242,18 @@ public class LeqStats {
             for(double[] range : laOccurrencesRanges) {
                 double min = range[0];
                 double max = range[1];
-                double sumClass = 0;
-                for(int idClass = 0; idClass < sumClassValuePerc.size(); idClass++) {
-                    if(classList.get(idClass) >= min) {
-                        if(classList.get(idClass) < max) {
-                            sumClass += classValue.get(sumClassValuePerc.size() - 1 - idClass) / (double)sum;
+                long sumClass = 0;
+                for(int idClass = 0; idClass < classCounts.length; idClass++) {
+                    double leq = (idClass + classKeyOffset) * classStep;
+                    if(leq >= min) {
+                        if(leq < max) {
+                            sumClass += classCounts[idClass];
                         } else {
                             break;
                         }
                     }
                 }
-                laOccurrencesRangesValue.add(sumClass);
+                laOccurrencesRangesValue.add(rmsSumCount > 0 ? sumClass / (double) rmsSumCount : 0);
             }
         }
 
@@ -152,7 +270,7 @@ public class LeqStats {
 
     public double getLeqMean() {
         if(rmsSumCount > 0) {
-            return 10 * Math.log10(rmsSum / rmsSumCount);
+            return DecibelMath.toDecibel(rmsSum / rmsSumCount);
         } else {
             return 0;
         }
@@ -0,0 +1,223 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.nio.ShortBuffer;
+
+/**
+ * Overlapped windows of an interleaved multi-channel signal.
+ * Each channel is analysed by its own {@link Window}, pushed samples are de-interleaved in a
+ * single pass directly into the circular buffers of the channels. Results are available for each
+ * channel and combined as the energetic mean of the channels.
+ */
+public class MultiChannelWindow {
+    private final Window[] channels;
+    private MultiChannelWindowListener listener;
+
+    /**
+     * @param channelCount Number of interleaved channels
+     * @see Window#Window(FFTSignalProcessing.WINDOW_TYPE, int, double[], double, boolean, double, boolean, double)
+     */
+    public MultiChannelWindow(int channelCount, FFTSignalProcessing.WINDOW_TYPE window,
+                              int samplingRate, double[] standardFrequencies, double windowTime,
+                              boolean aWeighting, double dbFsReference,
+                              boolean outputThinFrequency, double overlap) {
+        if(channelCount <= 0) {
+            throw new IllegalArgumentException("Channel count must be positive");
+        }
+        channels = new Window[channelCount];
+        for(int channel = 0; channel < channelCount; channel++) {
+            channels[channel] = new Window(window, samplingRate, standardFrequencies, windowTime,
+                    aWeighting, dbFsReference, outputThinFrequency, overlap);
+        }
+        // Channels are processed in lockstep, the last one completes the window of all channels
+        channels[channelCount - 1].setListener(new Window.WindowListener() {
+            @Override
+            public void onWindow(Window window) {
+                if(listener != null) {
+                    listener.onWindow(MultiChannelWindow.this);
+                }
+            }
+        });
+    }
+
+    public int getChannelCount() {
+        return channels.length;
+    }
+
+    /**
+     * @param channel Channel index
+     * @return Analysis of this channel
+     */
+    public Window getChannel(int channel) {
+        return channels[channel];
+    }
+
+    /**
+     * @param listener Called each time the non-overlapped window index changes, the results of all
+     * the channels are then available
+     */
+    public void setListener(MultiChannelWindowListener listener) {
+        this.listener = listener;
+    }
+
+    public void setDbFsReference(double dbFsReference) {
+        for(Window channel : channels) {
+            channel.setDbFsReference(dbFsReference);
+        }
+    }
+
+    public void setAWeighting(boolean aWeighting) {
+        for(Window channel : channels) {
+            channel.setAWeighting(aWeighting);
+        }
+    }
+
+    /**
+     * @param metrics Receive the stage durations of all the channels
+     */
+    public void setMetrics(ProcessingMetrics metrics) {
+        for(Window channel : channels) {
+            channel.setMetrics(metrics);
+        }
+    }
+
+    public void cleanWindows() {
+        for(Window channel : channels) {
+            channel.cleanWindows();
+        }
+    }
+
+    public boolean isCacheEmpty() {
+        return channels[0].isCacheEmpty();
+    }
+
+    public int getWindowIndex() {
+        return channels[0].getWindowIndex();
+    }
+
+    /**
+     * @param channel Channel index
+     * @return The energetic mean of the spectrums of this channel computed since the last
+     * {@link #cleanWindows()}, null if not available
+     */
+    public FFTSignalProcessing.ProcessingResult getLastWindowMean(int channel) {
+        return channels[channel].getLastWindowMean();
+    }
+
+    /**
+     * @return The energetic mean of all the channels computed since the last
+     * {@link #cleanWindows()}, null if not available
+     */
+    public FFTSignalProcessing.ProcessingResult getLastWindowMean() {
+        if(isCacheEmpty()) {
+            return null;
+        }
+        FFTSignalProcessing.ProcessingResult combined = new FFTSignalProcessing.ProcessingResult();
+        for(Window channel : channels) {
+            combined.accumulate(channel.getLastWindowMean());
+        }
+        return combined;
+    }
+
+    /**
+     * @param buffer Interleaved audio signal, frame after frame
+     */
+    public void pushSample(float[] buffer) {
+        pushSample(buffer, 0, buffer.length);
+    }
+
+    /**
+     * Push interleaved samples of any number of frames
+     * @param buffer Interleaved audio signal, frame after frame
+     * @param offset Index of the first sample of the first frame
+     * @param length Number of samples, multiple of the channel count
+     */
+    public void pushSample(float[] buffer, int offset, int length) {
+        final int channelCount = channels.length;
+        if(offset < 0 || length < 0 || offset + length > buffer.length) {
+            throw new IllegalArgumentException("Range out of the buffer bounds");
+        }
+        if(length % channelCount != 0) {
+            throw new IllegalArgumentException("Length must be a multiple of the channel count");
+        }
+        int frames = length / channelCount;
+        while(frames > 0) {
+            // All the channels share the same ring position and hop
+            final int copyLength = channels[0].nextCopyLength(frames);
+            final int ringPosition = channels[0].getRingPosition();
+            for(int frame = 0; frame < copyLength; frame++) {
+                final int frameOffset = offset + frame * channelCount;
+                for(int channel = 0; channel < channelCount; channel++) {
+                    channels[channel].getRingBuffer()[ringPosition + frame] =
+                            buffer[frameOffset + channel];
+                }
+            }
+            for(Window channel : channels) {
+                channel.commitCopy(copyLength);
+            }
+            offset += copyLength * channelCount;
+            frames -= copyLength;
+        }
+    }
+
+    /**
+     * Push all the remaining interleaved 16 bits PCM samples of the buffer, rescaled as done by
+     * {@link Window#convertShortToFloat(short[])}
+     * @param samples Interleaved audio signal, its position is moved to the end of the last
+     * complete frame
+     */
+    public void pushSample(ShortBuffer samples) {
+        final int channelCount = channels.length;
+        int frames = samples.remaining() / channelCount;
+        while(frames > 0) {
+            final int copyLength = channels[0].nextCopyLength(frames);
+            final int ringPosition = channels[0].getRingPosition();
+            for(int frame = 0; frame < copyLength; frame++) {
+                for(int channel = 0; channel < channelCount; channel++) {
+                    channels[channel].getRingBuffer()[ringPosition + frame] =
+                            samples.get() / 32768.0f;
+                }
+            }
+            for(Window channel : channels) {
+                channel.commitCopy(copyLength);
+            }
+            frames -= copyLength;
+        }
+    }
+
+    /**
+     * Receive the end of the non-overlapped windows
+     */
+    public interface MultiChannelWindowListener {
+        /**
+         * @param window Window where the results of all the channels are available
+         */
+        void onWindow(MultiChannelWindow window);
+    }
+}
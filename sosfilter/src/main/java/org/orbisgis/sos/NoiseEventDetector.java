@@ -0,0 +1,269 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+/**
+ * Incremental noise event detection on a stream of levels, ex: the windows of {@link Window}.
+ * An event starts when the level reaches the start threshold and ends when the level falls below
+ * the start threshold minus the hysteresis. Events shorter than the minimal duration are
+ * discarded. Only the running sums of the current event are kept, events are sent to the
+ * listener as compact records.
+ */
+public class NoiseEventDetector {
+    private final double frameDuration;
+    private final double startThreshold;
+    private final double hysteresis;
+    private final double minimumDuration;
+    private final boolean aWeighted;
+    private NoiseEventListener listener;
+    // Frames pushed since the creation
+    private long frameIndex = 0;
+    // Running sums of the current event
+    private long eventStartFrame;
+    private long eventStartId;
+    private double eventEnergySum;
+    private double eventMax;
+    private FFTSignalProcessing.ProcessingResult eventSpectrum;
+    private boolean inEvent = false;
+    private long eventCount = 0;
+
+    /**
+     * @param frameDuration Duration of each pushed level in seconds, ex:
+     * {@link AcousticIndicators#TIMEPERIOD_FAST}
+     * @param startThreshold Level in dB starting an event
+     * @param hysteresis The event ends when the level is below startThreshold - hysteresis
+     * @param minimumDuration Minimal duration of an event in seconds
+     * @param aWeighted Read {@link FFTSignalProcessing.ProcessingResult#getWindowLaeq()} if true,
+     * {@link FFTSignalProcessing.ProcessingResult#getWindowLeq()} otherwise
+     */
+    public NoiseEventDetector(double frameDuration, double startThreshold, double hysteresis,
+                              double minimumDuration, boolean aWeighted) {
+        if(!(frameDuration > 0)) {
+            throw new IllegalArgumentException("Frame duration must be positive");
+        }
+        if(hysteresis < 0 || minimumDuration < 0) {
+            throw new IllegalArgumentException("Hysteresis and minimum duration must not be " +
+                    "negative");
+        }
+        this.frameDuration = frameDuration;
+        this.startThreshold = startThreshold;
+        this.hysteresis = hysteresis;
+        this.minimumDuration = minimumDuration;
+        this.aWeighted = aWeighted;
+    }
+
+    /**
+     * @param listener Receive the events when they end
+     */
+    public void setListener(NoiseEventListener listener) {
+        this.listener = listener;
+    }
+
+    public double getStartThreshold() {
+        return startThreshold;
+    }
+
+    public double getHysteresis() {
+        return hysteresis;
+    }
+
+    public double getMinimumDuration() {
+        return minimumDuration;
+    }
+
+    /**
+     * @return True if the current level is part of an event
+     */
+    public boolean isInEvent() {
+        return inEvent;
+    }
+
+    /**
+     * @return Number of events sent to the listener
+     */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Push the next window, its spectrum is added to the spectrum of the current event
+     * @param result Window result
+     * @return The event ended by this window, null if there is none
+     */
+    public NoiseEvent addResult(FFTSignalProcessing.ProcessingResult result) {
+        return addLevel(aWeighted ? result.getWindowLaeq() : result.getWindowLeq(), result.getId(),
+                result);
+    }
+
+    /**
+     * Push the next level, ex: levels read from archived measurements
+     * @param level Equivalent level of the frame in dB
+     * @return The event ended by this level, null if there is none
+     */
+    public NoiseEvent addLevel(double level) {
+        return addLevel(level, frameIndex, null);
+    }
+
+    private NoiseEvent addLevel(double level, long id, FFTSignalProcessing.ProcessingResult result) {
+        NoiseEvent ended = null;
+        if(inEvent && level < startThreshold - hysteresis) {
+            ended = endEvent();
+        }
+        if(!inEvent && level >= startThreshold) {
+            inEvent = true;
+            eventStartFrame = frameIndex;
+            eventStartId = id;
+            eventEnergySum = 0;
+            eventMax = Double.NEGATIVE_INFINITY;
+            eventSpectrum = null;
+        }
+        if(inEvent) {
+            eventEnergySum += DecibelMath.toEnergy(level);
+            eventMax = Math.max(eventMax, level);
+            if(result != null && result.getCount() > 0) {
+                if(eventSpectrum == null) {
+                    eventSpectrum = new FFTSignalProcessing.ProcessingResult();
+                }
+                eventSpectrum.accumulate(result);
+            }
+        }
+        frameIndex++;
+        return ended;
+    }
+
+    /**
+     * End the current event at the end of the stream
+     * @return The event, null if there is none or if it is shorter than the minimal duration
+     */
+    public NoiseEvent flush() {
+        return inEvent ? endEvent() : null;
+    }
+
+    private NoiseEvent endEvent() {
+        inEvent = false;
+        final long frames = frameIndex - eventStartFrame;
+        final double duration = frames * frameDuration;
+        if(duration < minimumDuration) {
+            return null;
+        }
+        NoiseEvent event = new NoiseEvent(eventStartFrame * frameDuration, duration, eventStartId,
+                DecibelMath.toDecibel(eventEnergySum / frames), eventMax,
+                DecibelMath.toDecibel(eventEnergySum * frameDuration),
+                eventSpectrum == null ? null : eventSpectrum.getSpl());
+        eventSpectrum = null;
+        eventCount++;
+        if(listener != null) {
+            listener.onNoiseEvent(event);
+        }
+        return event;
+    }
+
+    /**
+     * Summary of a noise event
+     */
+    public static final class NoiseEvent {
+        private final double startTime;
+        private final double duration;
+        private final long startId;
+        private final double leq;
+        private final double max;
+        private final double sel;
+        private final double[] spectrum;
+
+        public NoiseEvent(double startTime, double duration, long startId, double leq, double max,
+                          double sel, double[] spectrum) {
+            this.startTime = startTime;
+            this.duration = duration;
+            this.startId = startId;
+            this.leq = leq;
+            this.max = max;
+            this.sel = sel;
+            this.spectrum = spectrum;
+        }
+
+        /**
+         * @return Start of the event in seconds since the first pushed level
+         */
+        public double getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @return Duration of the event in seconds
+         */
+        public double getDuration() {
+            return duration;
+        }
+
+        /**
+         * @return Id of the first window of the event ({@link FFTSignalProcessing.ProcessingResult#getId()}),
+         * or its frame index if levels were pushed
+         */
+        public long getStartId() {
+            return startId;
+        }
+
+        /**
+         * @return Equivalent level of the event in dB
+         */
+        public double getLeq() {
+            return leq;
+        }
+
+        /**
+         * @return Maximum frame level of the event (LAmax on fast windows)
+         */
+        public double getMax() {
+            return max;
+        }
+
+        /**
+         * @return Sound exposure level, the event energy normalized to one second
+         */
+        public double getSel() {
+            return sel;
+        }
+
+        /**
+         * @return Mean spectrum of the event, null if only levels were pushed
+         */
+        public double[] getSpectrum() {
+            return spectrum;
+        }
+    }
+
+    /**
+     * Receive the noise events
+     */
+    public interface NoiseEventListener {
+        /**
+         * @param event Event that just ended, longer than the minimal duration
+         */
+        void onNoiseEvent(NoiseEvent event);
+    }
+}
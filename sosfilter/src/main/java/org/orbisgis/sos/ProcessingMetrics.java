@@ -0,0 +1,86 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+/**
+ * Instrumentation of the signal processing stages. The stages measure their duration with
+ * {@link #startTime()} and {@link #record(STAGE, long, int)}; the time returned by record is the
+ * start time of the next stage, so consecutive stages read the clock once each.
+ * {@link #NONE}, the default of {@link FFTSignalProcessing}, {@link Window} and
+ * {@link SpectrumChannel}, does not read the clock. Implementations must not allocate memory
+ * and may be called by several threads.
+ * @see ProcessingMetricsRecorder
+ */
+public interface ProcessingMetrics {
+    /**
+     * Instrumented stages
+     */
+    enum STAGE {
+        /** Copy of the circular buffer and window function before the FFT */
+        WINDOWING,
+        /** Real FFT and square magnitude of the cells */
+        FFT,
+        /** Sum of the FFT cells into fractional octave bands */
+        BAND_RECOMBINATION,
+        /** Band pass biquad filters of one level of the filter cascade */
+        BIQUAD_CASCADE,
+        /** Anti-aliasing filter and subsampling between two levels of the filter cascade */
+        DECIMATION,
+        /** A or C weighting filter */
+        WEIGHTING
+    }
+
+    /**
+     * No-op metrics
+     */
+    ProcessingMetrics NONE = new ProcessingMetrics() {
+        @Override
+        public long startTime() {
+            return 0;
+        }
+
+        @Override
+        public long record(STAGE stage, long startTime, int sampleCount) {
+            return 0;
+        }
+    };
+
+    /**
+     * @return Start time of a stage in nanoseconds
+     */
+    long startTime();
+
+    /**
+     * Record the end of a stage
+     * @param stage Processed stage
+     * @param startTime Value of {@link #startTime()} or of the previous record
+     * @param sampleCount Number of samples processed by the stage
+     * @return End time of the stage in nanoseconds
+     */
+    long record(STAGE stage, long startTime, int sampleCount);
+}
@@ -0,0 +1,272 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the processing stages.
+ * Durations are counted in log-linear buckets as in HdrHistogram: each power of two is split in
+ * {@link #SUB_BUCKET_COUNT} buckets, so a percentile is known with a relative error below
+ * 1 / {@link #SUB_BUCKET_COUNT}. Recording is lock-free and does not allocate memory, the
+ * snapshots are not atomic with concurrent recordings.
+ */
+public class ProcessingMetricsRecorder implements ProcessingMetrics {
+    private static final int SUB_BUCKET_BITS = 4;
+    public static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // Up to the greatest long value
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+    private final StageCounters[] counters;
+
+    public ProcessingMetricsRecorder() {
+        counters = new StageCounters[STAGE.values().length];
+        for(int i = 0; i < counters.length; i++) {
+            counters[i] = new StageCounters();
+        }
+    }
+
+    @Override
+    public long startTime() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public long record(STAGE stage, long startTime, int sampleCount) {
+        final long endTime = System.nanoTime();
+        recordDuration(stage, Math.max(0, endTime - startTime), sampleCount);
+        return endTime;
+    }
+
+    /**
+     * @param duration Duration of the stage in nanoseconds
+     * @param sampleCount Number of samples processed by the stage
+     */
+    void recordDuration(STAGE stage, long duration, int sampleCount) {
+        counters[stage.ordinal()].add(duration, sampleCount);
+    }
+
+    /**
+     * @param duration Duration in nanoseconds
+     * @return Histogram bucket of this duration
+     */
+    static int getBucketIndex(long duration) {
+        if(duration < 2 * SUB_BUCKET_COUNT) {
+            return (int) duration;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(duration) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) (duration >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    /**
+     * @param index Histogram bucket
+     * @return Greatest duration in nanoseconds counted in this bucket
+     */
+    static long getBucketUpperBound(int index) {
+        if(index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_COUNT - 1;
+        final long lowerBound = (long) (index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    /**
+     * @param stage Instrumented stage
+     * @return Copy of the counters of this stage
+     */
+    public StageSnapshot getSnapshot(STAGE stage) {
+        return counters[stage.ordinal()].snapshot(stage);
+    }
+
+    /**
+     * @return Copy of the counters of the stages that have been recorded
+     */
+    public List<StageSnapshot> getSnapshots() {
+        List<StageSnapshot> snapshots = new ArrayList<StageSnapshot>();
+        for(STAGE stage : STAGE.values()) {
+            StageSnapshot snapshot = getSnapshot(stage);
+            if(snapshot.getCount() > 0) {
+                snapshots.add(snapshot);
+            }
+        }
+        return Collections.unmodifiableList(snapshots);
+    }
+
+    /**
+     * Clear all counters
+     */
+    public void reset() {
+        for(StageCounters stageCounters : counters) {
+            stageCounters.reset();
+        }
+    }
+
+    private static final class StageCounters {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong sampleCount = new AtomicLong();
+        final AtomicLong totalTime = new AtomicLong();
+        final AtomicLong maxTime = new AtomicLong();
+        final AtomicLongArray histogram = new AtomicLongArray(BUCKET_COUNT);
+
+        void add(long duration, int samples) {
+            histogram.incrementAndGet(getBucketIndex(duration));
+            count.incrementAndGet();
+            sampleCount.addAndGet(samples);
+            totalTime.addAndGet(duration);
+            long max = maxTime.get();
+            while(duration > max && !maxTime.compareAndSet(max, duration)) {
+                max = maxTime.get();
+            }
+        }
+
+        void reset() {
+            for(int i = 0; i < histogram.length(); i++) {
+                histogram.set(i, 0);
+            }
+            count.set(0);
+            sampleCount.set(0);
+            totalTime.set(0);
+            maxTime.set(0);
+        }
+
+        StageSnapshot snapshot(STAGE stage) {
+            long[] buckets = new long[histogram.length()];
+            for(int i = 0; i < buckets.length; i++) {
+                buckets[i] = histogram.get(i);
+            }
+            return new StageSnapshot(stage, count.get(), sampleCount.get(), totalTime.get(),
+                    maxTime.get(), buckets);
+        }
+    }
+
+    /**
+     * Counters of a stage
+     */
+    public static final class StageSnapshot {
+        private final STAGE stage;
+        private final long count;
+        private final long sampleCount;
+        private final long totalTime;
+        private final long maxTime;
+        private final long[] histogram;
+
+        StageSnapshot(STAGE stage, long count, long sampleCount, long totalTime, long maxTime,
+                      long[] histogram) {
+            this.stage = stage;
+            this.count = count;
+            this.sampleCount = sampleCount;
+            this.totalTime = totalTime;
+            this.maxTime = maxTime;
+            this.histogram = histogram;
+        }
+
+        public STAGE getStage() {
+            return stage;
+        }
+
+        /**
+         * @return Number of recorded executions of the stage
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return Number of samples processed by the stage
+         */
+        public long getSampleCount() {
+            return sampleCount;
+        }
+
+        /**
+         * @return Time spent in the stage in nanoseconds
+         */
+        public long getTotalTime() {
+            return totalTime;
+        }
+
+        /**
+         * @return Longest execution in nanoseconds
+         */
+        public long getMaxTime() {
+            return maxTime;
+        }
+
+        /**
+         * @return Mean execution time in nanoseconds, 0 if not executed
+         */
+        public double getMeanTime() {
+            return count == 0 ? 0 : totalTime / (double) count;
+        }
+
+        /**
+         * @return Processed samples per second of processing time, 0 if not executed
+         */
+        public double getThroughput() {
+            return totalTime == 0 ? 0 : sampleCount * 1e9 / totalTime;
+        }
+
+        /**
+         * @param percentile Percentile in [0, 100]
+         * @return Execution time in nanoseconds below or equal to which this percentage of the
+         * executions is, with the precision of the histogram. 0 if not executed
+         */
+        public long getPercentileTime(double percentile) {
+            if(percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile must be in [0, 100]");
+            }
+            long total = 0;
+            for(long bucketCount : histogram) {
+                total += bucketCount;
+            }
+            if(total == 0) {
+                return 0;
+            }
+            final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+            long cumulated = 0;
+            for(int i = 0; i < histogram.length; i++) {
+                cumulated += histogram[i];
+                if(cumulated >= rank) {
+                    return Math.min(getBucketUpperBound(i), maxTime);
+                }
+            }
+            return maxTime;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s count=%d mean=%.0f ns p50=%d ns p99=%d ns max=%d ns " +
+                    "throughput=%.0f samples/s", stage, count, getMeanTime(),
+                    getPercentileTime(50), getPercentileTime(99), maxTime, getThroughput());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+/**
+ * Forward FFT of real signals that does not allocate memory once constructed.
+ * The output layout is the same as JTransforms FloatFFT_1D#realForward:
+ * a[2k] = Re[k], a[2k+1] = Im[k] for 0 &lt; k &lt; n/2, a[0] = Re[0] and
+ * a[1] = Re[n/2] if n is even, a[1] = Im[(n-1)/2] and a[n-1] = Re[(n-1)/2] if n is odd.
+ * Trigonometric tables are shared by all the instances of the same size, so creating an instance
+ * for an already used size is cheap. An instance is not thread safe.
+ */
+public class RealFFT {
+    private final int n;
+    private final ComplexFFT fft;
+    private final double[] data;
+    // exp(-2i.pi.k/n) for k < n/2, used to split the half size transform of even sizes
+    private final double[] splitTwiddles;
+
+    /**
+     * @param n Number of real samples
+     */
+    public RealFFT(int n) {
+        this.n = n;
+        if(n % 2 == 0) {
+            // Even size: transform the n/2 complex values made of (even samples, odd samples)
+            int half = n / 2;
+            fft = new ComplexFFT(half);
+            data = new double[n];
+            splitTwiddles = FFTPlan.getSplitTwiddles(n);
+        } else {
+            fft = new ComplexFFT(n);
+            data = new double[2 * n];
+            splitTwiddles = null;
+        }
+    }
+
+    /**
+     * @return Number of real samples
+     */
+    public int getSize() {
+        return n;
+    }
+
+    /**
+     * Computes the forward transform of real data, the result is stored in the provided array.
+     * @param a Real signal of length {@link #getSize()}, replaced by the packed spectrum
+     */
+    public void realForward(float[] a) {
+        if(a.length < n) {
+            throw new IllegalArgumentException("Signal length is less than the FFT size");
+        }
+        if(splitTwiddles != null) {
+            realForwardEven(a);
+        } else {
+            realForwardOdd(a);
+        }
+    }
+
+    private void realForwardEven(float[] a) {
+        final int half = n / 2;
+        for(int i = 0; i < n; i++) {
+            data[i] = a[i];
+        }
+        fft.forward(data);
+        // X[k] = (Z[k] + conj(Z[half-k])) / 2 - i.exp(-2i.pi.k/n).(Z[k] - conj(Z[half-k])) / 2
+        a[0] = (float) (data[0] + data[1]);
+        a[1] = (float) (data[0] - data[1]);
+        for(int k = 1; k < half; k++) {
+            final double zr = data[2 * k], zi = data[2 * k + 1];
+            final double cr = data[2 * (half - k)], ci = -data[2 * (half - k) + 1];
+            final double er = (zr + cr) / 2, ei = (zi + ci) / 2;
+            final double or = (zi - ci) / 2, oi = -(zr - cr) / 2;
+            final double wr = splitTwiddles[2 * k], wi = splitTwiddles[2 * k + 1];
+            a[2 * k] = (float) (er + or * wr - oi * wi);
+            a[2 * k + 1] = (float) (ei + or * wi + oi * wr);
+        }
+    }
+
+    private void realForwardOdd(float[] a) {
+        for(int i = 0; i < n; i++) {
+            data[2 * i] = a[i];
+            data[2 * i + 1] = 0;
+        }
+        fft.forward(data);
+        a[0] = (float) data[0];
+        for(int k = 1; k < (n - 1) / 2; k++) {
+            a[2 * k] = (float) data[2 * k];
+            a[2 * k + 1] = (float) data[2 * k + 1];
+        }
+        if(n > 1) {
+            final int last = (n - 1) / 2;
+            a[1] = (float) data[2 * last + 1];
+            a[n - 1] = (float) data[2 * last];
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of the last levels only, ex: LAeq and L10 of the last 15 minutes.
+ * Each {@link #addLeq(double)} replaces the oldest level once the window is full. Updates cost
+ * O(1) (amortized) and percentiles O(classes between min and max level), without allocation.
+ */
+public class SlidingLeqStats {
+    private final double classStep;
+    // Ring buffers of the levels in the window
+    private final double[] levels;
+    private final double[] energies;
+    // Total number of added levels, the next level is stored at addedCount % windowLength
+    private long addedCount = 0;
+    private double energySum = 0;
+    // Histogram of the levels in the window, index is class key - minClassKey
+    private final int[] classCounts;
+    private final int minClassKey;
+    // Indices (in added order) of the candidates of the window min and max levels,
+    // levels are increasing in minQueue and decreasing in maxQueue
+    private final MonotonicQueue minQueue;
+    private final MonotonicQueue maxQueue;
+
+    /**
+     * @param windowLength Number of levels in the window, ex: 7200 for 15 minutes of 125 ms levels
+     */
+    public SlidingLeqStats(int windowLength) {
+        this(windowLength, 0.1);
+    }
+
+    /**
+     * @param windowLength Number of levels in the window
+     * @param classStep Histogram class width in dB used by percentiles
+     */
+    public SlidingLeqStats(int windowLength, double classStep) {
+        if(windowLength < 1) {
+            throw new IllegalArgumentException("Window length must be at least 1");
+        }
+        this.classStep = classStep;
+        levels = new double[windowLength];
+        energies = new double[windowLength];
+        minClassKey = LeqStats.getClassKey(LeqStats.MIN_CLASS_LEVEL, classStep);
+        classCounts = new int[LeqStats.getClassKey(LeqStats.MAX_CLASS_LEVEL, classStep) - minClassKey + 1];
+        minQueue = new MonotonicQueue(windowLength);
+        maxQueue = new MonotonicQueue(windowLength);
+    }
+
+    public int getWindowLength() {
+        return levels.length;
+    }
+
+    /**
+     * @return Number of levels in the window
+     */
+    public int getLeqCount() {
+        return (int) Math.min(addedCount, levels.length);
+    }
+
+    public void clear() {
+        addedCount = 0;
+        energySum = 0;
+        Arrays.fill(classCounts, 0);
+        minQueue.clear();
+        maxQueue.clear();
+    }
+
+    /**
+     * Add a level, the oldest level leaves the window if the window is full
+     * @param leq Level in dB
+     */
+    public void addLeq(double leq) {
+        final int index = (int) (addedCount % levels.length);
+        if(addedCount >= levels.length) {
+            // Evict the oldest level
+            long evicted = addedCount - levels.length;
+            energySum -= energies[index];
+            classCounts[LeqStats.getClassKey(levels[index], classStep) - minClassKey]--;
+            minQueue.removeFirstIf(evicted);
+            maxQueue.removeFirstIf(evicted);
+        }
+        levels[index] = leq;
+        energies[index] = DecibelMath.toEnergy(leq);
+        classCounts[LeqStats.getClassKey(leq, classStep) - minClassKey]++;
+        while(!minQueue.isEmpty() && levels[(int) (minQueue.last() % levels.length)] >= leq) {
+            minQueue.removeLast();
+        }
+        minQueue.add(addedCount);
+        while(!maxQueue.isEmpty() && levels[(int) (maxQueue.last() % levels.length)] <= leq) {
+            maxQueue.removeLast();
+        }
+        maxQueue.add(addedCount);
+        addedCount++;
+        if(index == levels.length - 1) {
+            // Sum again once per window in order to remove the rounding errors of the
+            // additions and subtractions
+            energySum = 0;
+            for(double energy : energies) {
+                energySum += energy;
+            }
+        } else {
+            energySum += energies[index];
+        }
+    }
+
+    /**
+     * @return Equivalent level of the window, NaN if empty
+     */
+    public double getLeqMean() {
+        int count = getLeqCount();
+        return count > 0 ? DecibelMath.toDecibel(energySum / count) : Double.NaN;
+    }
+
+    /**
+     * @return Minimum level of the window, NaN if empty
+     */
+    public double getLeqMin() {
+        return minQueue.isEmpty() ? Double.NaN : levels[(int) (minQueue.first() % levels.length)];
+    }
+
+    /**
+     * @return Maximum level of the window, NaN if empty
+     */
+    public double getLeqMax() {
+        return maxQueue.isEmpty() ? Double.NaN : levels[(int) (maxQueue.first() % levels.length)];
+    }
+
+    /**
+     * Percentile of the class levels of the window, same estimation as
+     * {@link LeqStats#computePercentile(double)}
+     * @param percentile Percentile in ]0, 100], ex: 90 gives the L10 (level exceeded 10% of time)
+     * @return Class level, NaN if empty
+     */
+    public double computePercentile(double percentile) {
+        double rank = LeqStats.getPercentileRank(percentile, getLeqCount());
+        if(Double.isNaN(rank)) {
+            return Double.NaN;
+        }
+        int lowerRank = (int) rank;
+        // Only scan the classes between the window min and max levels
+        int firstClass = LeqStats.getClassKey(getLeqMin(), classStep) - minClassKey;
+        int lastClass = LeqStats.getClassKey(getLeqMax(), classStep) - minClassKey;
+        long cumulated = 0;
+        double lower = Double.NaN;
+        for(int idClass = firstClass; idClass <= lastClass; idClass++) {
+            cumulated += classCounts[idClass];
+            if(Double.isNaN(lower) && cumulated > lowerRank) {
+                lower = (idClass + minClassKey) * classStep;
+                if(rank == lowerRank) {
+                    return lower;
+                }
+            }
+            if(cumulated > lowerRank + 1) {
+                double upper = (idClass + minClassKey) * classStep;
+                return lower + (rank - lowerRank) * (upper - lower);
+            }
+        }
+        throw new IllegalStateException("Histogram does not match the window content");
+    }
+
+    /**
+     * Fixed capacity double-ended queue of level indices
+     */
+    private static final class MonotonicQueue {
+        private final long[] values;
+        private int head = 0;
+        private int size = 0;
+
+        MonotonicQueue(int capacity) {
+            values = new long[capacity];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        long first() {
+            return values[head];
+        }
+
+        long last() {
+            return values[(head + size - 1) % values.length];
+        }
+
+        void add(long value) {
+            values[(head + size) % values.length] = value;
+            size++;
+        }
+
+        void removeLast() {
+            size--;
+        }
+
+        void removeFirstIf(long value) {
+            if(size > 0 && values[head] == value) {
+                head = (head + 1) % values.length;
+                size--;
+            }
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+    }
+}
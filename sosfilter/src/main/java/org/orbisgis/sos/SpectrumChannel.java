@@ -1,30 +1,136 @@
 package org.orbisgis.sos;
 
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class SpectrumChannel {
+/**
+ * Third octave filter bank. Bands of the same cascade level are filtered in parallel using
+ * a worker pool that lives as long as this instance, call {@link #close()} to release it.
+ */
+public class SpectrumChannel implements Closeable {
+    // Idle worker threads of the owned pool are released after this delay
+    private static final long WORKER_KEEP_ALIVE_SECONDS = 60;
     private int subsamplingRatio;
     private int minimum_samples_length;
     private List<BiquadFilter> subSamplers = new ArrayList<>();
+    // Replace subSamplers when the half-band decimation is selected
+    private List<HalfBandDecimator> decimators = new ArrayList<>();
     // Cascaded filters are placed here, each element will take less and less samples as input
     private List<HashMap<Integer, BiquadFilter>> iirFilters = new ArrayList<>();
     private DigitalFilter aWeightingFilter = null;
     private DigitalFilter cWeightingFilter = null;
     private int bandFilterSize = 0;
     private List<Double> nominalFrequency = new ArrayList<>();
+    private int bandsPerOctave = FractionalOctaveBands.THIRD_OCTAVE;
+    // Band filters of each cascade level, built from iirFilters and split in at most
+    // parallelism filter banks
+    private BandAnalysis[][] cascadeBands = new BandAnalysis[0][];
+    // Subsampled signal of each cascade level, reused between calls
+    private float[][] cascadeSamples = new float[0][];
+    // Converted 16 bits PCM samples, reused between calls of the same length
+    private float[] pcmSamples = new float[0];
+    private final ExecutorService executorService;
+    private final boolean ownExecutorService;
+    private final int parallelism;
+    private final Future<?>[] workerFutures;
+    private boolean closed = false;
+    private ProcessingMetrics metrics = ProcessingMetrics.NONE;
 
+    /**
+     * Filter bands using all available processors
+     */
     public SpectrumChannel() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism Number of threads filtering the bands, including the calling thread.
+     * 1 filters all the bands in the calling thread without any worker thread.
+     */
+    public SpectrumChannel(int parallelism) {
+        this(parallelism > 1 ? createWorkerPool(parallelism - 1) : null, parallelism, true);
+    }
+
+    /**
+     * @param executorService Externally managed executor, it is not shut down by {@link #close()}.
+     * @param parallelism Number of threads filtering the bands, including the calling thread.
+     * parallelism - 1 tasks are submitted to the executor on each cascade level.
+     */
+    public SpectrumChannel(ExecutorService executorService, int parallelism) {
+        this(executorService, parallelism, false);
+    }
+
+    private SpectrumChannel(ExecutorService executorService, int parallelism, boolean ownExecutorService) {
+        if(parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        if(parallelism > 1 && executorService == null) {
+            throw new IllegalArgumentException("An executor is required for a parallelism of " + parallelism);
+        }
+        this.executorService = parallelism > 1 ? executorService : null;
+        this.ownExecutorService = ownExecutorService;
+        this.parallelism = parallelism;
+        this.workerFutures = new Future<?>[parallelism - 1];
+    }
+
+    private static ExecutorService createWorkerPool(int threadCount) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threadCount, threadCount,
+                WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new WorkerThreadFactory());
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
 
+    /**
+     * @return Number of threads filtering the bands, including the calling thread
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param metrics Receive the duration of the biquad cascade, decimation and weighting stages
+     */
+    public void setMetrics(ProcessingMetrics metrics) {
+        this.metrics = metrics == null ? ProcessingMetrics.NONE : metrics;
+    }
+
+    public ProcessingMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The length of the samples provided to {@link #processSamples(float[])} must be a
+     * multiple of this value
+     */
+    public int getMinimumSamplesLength() {
+        return minimum_samples_length;
+    }
+
+    /**
+     * Release the worker threads if the executor has been created by this instance.
+     * {@link #processSamples(float[])} cannot be called afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if(ownExecutorService && executorService != null) {
+            executorService.shutdown();
+        }
     }
 
     private double[] toArray(List<Double> array) {
@@ -35,37 +141,74 @@ public class SpectrumChannel {
         return retvalue;
     }
 
+    /**
+     * Filter applied before each decimation of the cascade
+     */
+    public enum DECIMATION_TYPE {
+        /** Anti-aliasing IIR filter of the configuration, computed for every input sample */
+        IIR,
+        /** {@link HalfBandDecimator}, only the kept samples are computed */
+        HALF_BAND
+    }
+
     /**
      * Load configuration generated by filterdesign.py
      * @param configuration Filters configuration
      * @param useCascade Reduce computation time by subsampling the audio according to filter frequency range
      */
     public void loadConfiguration(ConfigurationSpectrumChannel configuration, boolean useCascade) {
+        loadConfiguration(configuration, useCascade, DECIMATION_TYPE.IIR);
+    }
+
+    /**
+     * Load configuration generated by filterdesign.py
+     * @param configuration Filters configuration
+     * @param useCascade Reduce computation time by subsampling the audio according to filter frequency range
+     * @param decimationType Anti-aliasing filter of the cascade, {@link DECIMATION_TYPE#HALF_BAND}
+     *                       requires a subsampling ratio of 2. The bands ending in the transition
+     *                       band of a half-band decimator are not decimated.
+     */
+    public void loadConfiguration(ConfigurationSpectrumChannel configuration, boolean useCascade,
+                                  DECIMATION_TYPE decimationType) {
         subSamplers.clear();
+        decimators.clear();
         bandFilterSize = 0;
         aWeightingFilter = null;
         cWeightingFilter = null;
         iirFilters.clear();
         subsamplingRatio = 0;
         nominalFrequency.clear();
+        bandsPerOctave = FractionalOctaveBands.THIRD_OCTAVE;
+        if(configuration.getConfiguration() != null &&
+                configuration.getConfiguration().getBandsPerOctave() != null) {
+            bandsPerOctave = configuration.getConfiguration().getBandsPerOctave();
+        }
         if(!configuration.getBandpass().isEmpty()) {
             int maxSubsampling = 0;
-            if(useCascade) {
-                for (ConfigurationBiquad biquad : configuration.getBandpass()) {
-                    maxSubsampling = Math.max(maxSubsampling, biquad.getSubsamplingDepth());
-                }
+            for (ConfigurationBiquad biquad : configuration.getBandpass()) {
+                maxSubsampling = Math.max(maxSubsampling,
+                        getSubsamplingDepth(configuration, biquad, useCascade, decimationType));
             }
             iirFilters = new ArrayList<>();
             subsamplingRatio = configuration.getAntiAliasing().getSampleRatio();
             minimum_samples_length = (int)Math.pow(subsamplingRatio, maxSubsampling);
             ConfigurationSos filterConf = configuration.getAntiAliasing();
+            if(decimationType == DECIMATION_TYPE.HALF_BAND && maxSubsampling > 0
+                    && subsamplingRatio != HalfBandDecimator.RATIO) {
+                throw new IllegalArgumentException("Half-band decimation requires a subsampling " +
+                        "ratio of " + HalfBandDecimator.RATIO);
+            }
             for(int i = 0; i < maxSubsampling; i++) {
-                BiquadFilter filter = new BiquadFilter(toArray(filterConf.getB0()),
-                        toArray(filterConf.getB1()),
-                        toArray(filterConf.getB2()),
-                        toArray(filterConf.getA1()),
-                        toArray(filterConf.getA2()));
-                subSamplers.add(filter);
+                if(decimationType == DECIMATION_TYPE.HALF_BAND) {
+                    decimators.add(new HalfBandDecimator());
+                } else {
+                    BiquadFilter filter = new BiquadFilter(toArray(filterConf.getB0()),
+                            toArray(filterConf.getB1()),
+                            toArray(filterConf.getB2()),
+                            toArray(filterConf.getA1()),
+                            toArray(filterConf.getA2()));
+                    subSamplers.add(filter);
+                }
             }
             // init cascaded filter storage
             for(int i=0; i <= maxSubsampling; i++) {
@@ -76,8 +219,10 @@ public class SpectrumChannel {
                 bandFilterSize += 1;
                 ConfigurationBiquad biquad = configuration.getBandpass().get(i);
                 nominalFrequency.add(biquad.getNominalFrequency());
+                final int depth = getSubsamplingDepth(configuration, biquad, useCascade,
+                        decimationType);
                 ConfigurationSos refFilter;
-                if(useCascade) {
+                if(depth > 0) {
                     refFilter = biquad.getSubsamplingFilter().getSos();
                 } else {
                     refFilter = biquad.getSos();
@@ -87,11 +232,7 @@ public class SpectrumChannel {
                         toArray(refFilter.getB2()),
                         toArray(refFilter.getA1()),
                         toArray(refFilter.getA2()));
-                if(useCascade) {
-                    iirFilters.get(biquad.getSubsamplingDepth()).put(i, filter);
-                } else {
-                    iirFilters.get(0).put(i, filter);
-                }
+                iirFilters.get(depth).put(i, filter);
             }
             if(configuration.getAWeighting() != null) {
                 aWeightingFilter = new DigitalFilter(
@@ -104,6 +245,55 @@ public class SpectrumChannel {
                         toArray(configuration.getCWeighting().getFilterDenominator()));
             }
         }
+        cascadeBands = new BandAnalysis[iirFilters.size()][];
+        cascadeSamples = new float[iirFilters.size()][];
+        for (int cascadeIndex = 0; cascadeIndex < iirFilters.size(); cascadeIndex++) {
+            List<BiquadFilter> filters = new ArrayList<>(iirFilters.get(cascadeIndex).values());
+            List<Integer> bandIndex = new ArrayList<>(iirFilters.get(cascadeIndex).keySet());
+            int bankCount = Math.min(parallelism, filters.size());
+            cascadeBands[cascadeIndex] = new BandAnalysis[bankCount];
+            for (int bank = 0; bank < bankCount; bank++) {
+                int from = bank * filters.size() / bankCount;
+                int to = (bank + 1) * filters.size() / bankCount;
+                int[] bankBandIndex = new int[to - from];
+                for (int i = 0; i < bankBandIndex.length; i++) {
+                    bankBandIndex[i] = bandIndex.get(from + i);
+                }
+                cascadeBands[cascadeIndex][bank] = new BandAnalysis(
+                        new BiquadFilterBank(filters.subList(from, to)), bankBandIndex);
+            }
+        }
+    }
+
+    /**
+     * The half-band decimator attenuates the frequencies above
+     * {@link HalfBandDecimator#DEFAULT_PASS_BAND} of its input Nyquist frequency. A band ending
+     * above it at one of its decimations is filtered at the input sampling rate, the
+     * configuration has no filter for the intermediate depths.
+     * @return Number of decimations before the band filter
+     */
+    private static int getSubsamplingDepth(ConfigurationSpectrumChannel configuration,
+                                           ConfigurationBiquad biquad, boolean useCascade,
+                                           DECIMATION_TYPE decimationType) {
+        if(!useCascade) {
+            return 0;
+        }
+        final int depth = biquad.getSubsamplingDepth();
+        if(depth > 0 && decimationType == DECIMATION_TYPE.HALF_BAND) {
+            if(configuration.getConfiguration() == null ||
+                    configuration.getConfiguration().getSampleRate() == null ||
+                    biquad.getMaxFrequency() == null) {
+                throw new IllegalArgumentException("Half-band decimation requires the sample " +
+                        "rate and the band edges of the configuration");
+            }
+            // The last decimation has the lowest input Nyquist frequency
+            final double lastNyquist = configuration.getConfiguration().getSampleRate() /
+                    (2.0 * Math.pow(HalfBandDecimator.RATIO, depth - 1));
+            if(biquad.getMaxFrequency() > HalfBandDecimator.DEFAULT_PASS_BAND * lastNyquist) {
+                return 0;
+            }
+        }
+        return depth;
     }
 
     /**
@@ -113,9 +303,37 @@ public class SpectrumChannel {
         return Collections.unmodifiableList(nominalFrequency);
     }
 
+    /**
+     * @return Band resolution of the loaded configuration, third octave if not specified
+     */
+    public int getBandsPerOctave() {
+        return bandsPerOctave;
+    }
+
     public double processSamplesWeightA(float[] samples) {
         if(aWeightingFilter != null) {
-            return aWeightingFilter.filterLeq(samples);
+            final long time = metrics.startTime();
+            final double leq = aWeightingFilter.filterLeq(samples);
+            metrics.record(ProcessingMetrics.STAGE.WEIGHTING, time, samples.length);
+            return leq;
+        } else {
+            throw new IllegalStateException("A weighting filter not configured");
+        }
+    }
+
+    /**
+     * A-weighting of a part of a signal, the filter state is kept for the next call
+     * @param samples Signal
+     * @param offset Index of the first sample
+     * @param length Number of samples
+     * @return Sum of the square of the A-weighted samples
+     */
+    public double processSamplesWeightASquareSum(float[] samples, int offset, int length) {
+        if(aWeightingFilter != null) {
+            final long time = metrics.startTime();
+            final double squareSum = aWeightingFilter.filterSquareSum(samples, offset, length);
+            metrics.record(ProcessingMetrics.STAGE.WEIGHTING, time, length);
+            return squareSum;
         } else {
             throw new IllegalStateException("A weighting filter not configured");
         }
@@ -123,14 +341,67 @@ public class SpectrumChannel {
 
     public double processSamplesWeightC(float[] samples) {
         if(cWeightingFilter != null) {
-            return cWeightingFilter.filterLeq(samples);
+            final long time = metrics.startTime();
+            final double leq = cWeightingFilter.filterLeq(samples);
+            metrics.record(ProcessingMetrics.STAGE.WEIGHTING, time, samples.length);
+            return leq;
         } else {
             throw new IllegalStateException("C weighting filter not configured");
         }
     }
 
+    /**
+     * Filter all the remaining 16 bits PCM samples of the buffer, rescaled as done by
+     * {@link Window#convertShortToFloat(short[])}. The converted samples are stored in a buffer
+     * reused while the number of samples does not change.
+     * @param samples Signal, its position is moved to its limit
+     * @return Leq of each band
+     */
+    public double[] processSamples(ShortBuffer samples) {
+        float[] converted = pcmBuffer(samples.remaining());
+        Window.convertShortToFloat(samples, converted, 0, converted.length);
+        return processSamples(converted);
+    }
+
+    /**
+     * Filter all the remaining 16 bits PCM samples of the buffer, read with the byte order of the
+     * buffer and rescaled as done by {@link Window#convertShortToFloat(short[])}. The converted
+     * samples are stored in a buffer reused while the number of samples does not change.
+     * @param samples Signal, its position is moved to its limit (minus an odd last byte)
+     * @return Leq of each band
+     */
+    public double[] processSamples(ByteBuffer samples) {
+        float[] converted = pcmBuffer(samples.remaining() / 2);
+        Window.convertBytesToFloat(samples, converted, 0, converted.length);
+        return processSamples(converted);
+    }
+
+    private float[] pcmBuffer(int length) {
+        if(pcmSamples.length != length) {
+            pcmSamples = new float[length];
+        }
+        return pcmSamples;
+    }
+
     public double[] processSamples(float[] samples) {
-        if(samples.length % minimum_samples_length != 0) {
+        return processInterleavedSamples(samples, 1)[0];
+    }
+
+    /**
+     * Filter an interleaved multi-channel signal. Each filter of the cascade reads all the
+     * channels in a single pass over the signal, with one filter state per channel. The first
+     * channel shares its filter state with {@link #processSamples(float[])}.
+     * @param samples Signal, frame after frame
+     * @param channelCount Number of channels
+     * @return Leq of each band for each channel [channel][band], see
+     * {@link #getCombinedLeqs(double[][])}
+     */
+    public double[][] processInterleavedSamples(float[] samples, int channelCount) {
+        if(channelCount <= 0 || samples.length % channelCount != 0) {
+            throw new IllegalArgumentException("Provided samples len should be a multiple of " +
+                    "the channel count");
+        }
+        if((samples.length / channelCount) % minimum_samples_length != 0) {
             throw new IllegalArgumentException(String.format("Provided samples len should be a" +
                     " factor of %d samples", minimum_samples_length));
         }
@@ -138,48 +409,153 @@ public class SpectrumChannel {
             throw new IllegalStateException("Loaded configuration does not contain bandpass" +
                     " filters");
         }
+        if(closed) {
+            throw new IllegalStateException("SpectrumChannel is closed");
+        }
         float[] lastFilterSamples = samples;
-        double[] leqs = new double[bandFilterSize];
-        ExecutorService executorService = Executors.newCachedThreadPool();
-        Map<Integer, Future<Double>> threads = new HashMap<>();
-        for (int cascadeIndex=0; cascadeIndex < iirFilters.size(); cascadeIndex++) {
-            HashMap<Integer, BiquadFilter> cascadeFilters = iirFilters.get(cascadeIndex);
-            for (Map.Entry<Integer, BiquadFilter> filterEntry : cascadeFilters.entrySet()) {
-                threads.put(filterEntry.getKey(),executorService.submit(
-                        new BandAnalysis(filterEntry.getValue(), lastFilterSamples)));
-            }
-            for (Map.Entry<Integer, Future<Double>> threadEntry : threads.entrySet()) {
-                try {
-                    leqs[threadEntry.getKey()] = threadEntry.getValue().get();
-                } catch (InterruptedException | ExecutionException e) {
-                    throw new IllegalStateException("Interrupted exception");
-                }
-            }
+        double[][] leqs = new double[channelCount][bandFilterSize];
+        long time = metrics.startTime();
+        for (int cascadeIndex=0; cascadeIndex < cascadeBands.length; cascadeIndex++) {
+            filterBands(cascadeBands[cascadeIndex], lastFilterSamples, channelCount, leqs);
+            time = metrics.record(ProcessingMetrics.STAGE.BIQUAD_CASCADE, time,
+                    lastFilterSamples.length);
             // subsampling for next iteration
-            if(cascadeIndex < subSamplers.size()) {
-                float[] nextFilterSamples = new float[lastFilterSamples.length/ subsamplingRatio];
-                subSamplers.get(cascadeIndex).filterSlice(lastFilterSamples, nextFilterSamples,
-                        subsamplingRatio);
+            if(cascadeIndex < subSamplers.size() || cascadeIndex < decimators.size()) {
+                int nextLength = lastFilterSamples.length / channelCount / subsamplingRatio
+                        * channelCount;
+                float[] nextFilterSamples = cascadeSamples[cascadeIndex];
+                if(nextFilterSamples == null || nextFilterSamples.length != nextLength) {
+                    nextFilterSamples = new float[nextLength];
+                    cascadeSamples[cascadeIndex] = nextFilterSamples;
+                }
+                if(!decimators.isEmpty()) {
+                    decimators.get(cascadeIndex).decimate(lastFilterSamples, nextFilterSamples,
+                            channelCount);
+                } else if(channelCount == 1) {
+                    subSamplers.get(cascadeIndex).filterSlice(lastFilterSamples,
+                            nextFilterSamples, subsamplingRatio);
+                } else {
+                    subSamplers.get(cascadeIndex).filterSlice(lastFilterSamples,
+                            nextFilterSamples, subsamplingRatio, channelCount);
+                }
+                time = metrics.record(ProcessingMetrics.STAGE.DECIMATION, time,
+                        lastFilterSamples.length);
                 lastFilterSamples = nextFilterSamples;
             }
         }
+        return leqs;
+    }
+
+    /**
+     * @param channelLeqs Leq of each band for each channel [channel][band]
+     * @return Energetic mean of the channels for each band
+     */
+    public static double[] getCombinedLeqs(double[][] channelLeqs) {
+        double[] combined = new double[channelLeqs[0].length];
+        for(int band = 0; band < combined.length; band++) {
+            double energy = 0;
+            for (double[] leqs : channelLeqs) {
+                energy += DecibelMath.toEnergy(leqs[band]);
+            }
+            combined[band] = DecibelMath.toDecibel(energy / channelLeqs.length);
+        }
+        return combined;
+    }
 
+    /**
+     * Filter all the bands of a cascade level. The calling thread and up to parallelism - 1
+     * workers take the next unprocessed filter bank until all banks are done.
+     */
+    private void filterBands(BandAnalysis[] bands, float[] samples, int channelCount,
+                             double[][] leqs) {
+        if(bands.length == 0) {
+            return;
+        }
+        BandQueue queue = new BandQueue(bands, samples, channelCount, leqs);
+        int workers = executorService == null ? 0 : Math.min(workerFutures.length, bands.length - 1);
+        for(int i = 0; i < workers; i++) {
+            workerFutures[i] = executorService.submit(queue);
+        }
+        try {
+            queue.run();
+        } finally {
+            for (int i = 0; i < workers; i++) {
+                try {
+                    workerFutures[i].get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while filtering bands", ex);
+                } catch (ExecutionException ex) {
+                    throw new IllegalStateException("Band filtering failed", ex.getCause());
+                } finally {
+                    workerFutures[i] = null;
+                }
+            }
+        }
+    }
 
-        return leqs;
+    private static class BandAnalysis {
+        final BiquadFilterBank filterBank;
+        final int[] bandIndex;
+        double[][] bankLeqs = new double[0][];
+
+        BandAnalysis(BiquadFilterBank filterBank, int[] bandIndex) {
+            this.filterBank = filterBank;
+            this.bandIndex = bandIndex;
+        }
+
+        void filterThenLeq(float[] samples, int channelCount, double[][] leqs) {
+            if(bankLeqs.length != channelCount) {
+                bankLeqs = new double[channelCount][bandIndex.length];
+            }
+            if(channelCount == 1) {
+                filterBank.filterThenLeq(samples, bankLeqs[0]);
+            } else {
+                filterBank.filterThenLeq(samples, channelCount, bankLeqs);
+            }
+            for (int channel = 0; channel < channelCount; channel++) {
+                for (int i = 0; i < bandIndex.length; i++) {
+                    leqs[channel][bandIndex[i]] = bankLeqs[channel][i];
+                }
+            }
+        }
     }
 
-    private static class BandAnalysis implements Callable<Double> {
-        BiquadFilter filter;
-        float[] samples;
+    /**
+     * Shared between the threads working on a cascade level
+     */
+    private static class BandQueue implements Runnable {
+        final BandAnalysis[] bands;
+        final float[] samples;
+        final int channelCount;
+        final double[][] leqs;
+        final AtomicInteger nextBand = new AtomicInteger();
 
-        public BandAnalysis(BiquadFilter filter, float[] samples) {
-            this.filter = filter;
+        BandQueue(BandAnalysis[] bands, float[] samples, int channelCount, double[][] leqs) {
+            this.bands = bands;
             this.samples = samples;
+            this.channelCount = channelCount;
+            this.leqs = leqs;
+        }
+
+        @Override
+        public void run() {
+            int band;
+            while ((band = nextBand.getAndIncrement()) < bands.length) {
+                bands[band].filterThenLeq(samples, channelCount, leqs);
+            }
         }
+    }
+
+    private static class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
 
         @Override
-        public Double call() throws Exception {
-            return filter.filterThenLeq(samples);
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "SpectrumChannel-" + threadCount.incrementAndGet());
+            // Do not prevent the application from exiting if close() has not been called
+            thread.setDaemon(true);
+            return thread;
         }
     }
 }
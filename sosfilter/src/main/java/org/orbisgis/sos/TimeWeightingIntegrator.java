@@ -0,0 +1,221 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+/**
+ * Exponential time weighting of IEC 61672-1. For each sample the squared (optionally frequency
+ * weighted) signal is integrated with the Fast (125 ms), Slow (1 s) and Impulse (35 ms rise,
+ * 1.5 s decay) time constants. The levels are provided to a listener at a fixed output period,
+ * together with the Leq of the period. The maximum and minimum levels are tracked on every
+ * sample, ex: LAFmax. No memory is allocated while processing samples of a constant length.
+ */
+public class TimeWeightingIntegrator {
+    public static final double TAU_FAST = 0.125;
+    public static final double TAU_SLOW = 1.0;
+    public static final double TAU_IMPULSE_RISE = 0.035;
+    public static final double TAU_IMPULSE_DECAY = 1.5;
+
+    private final DigitalFilter weightingFilter;
+    private final int outputPeriodSamples;
+    private final double alphaFast;
+    private final double alphaSlow;
+    private final double alphaImpulseRise;
+    private final double alphaImpulseDecay;
+    private double dbFsReference = FFTSignalProcessing.DB_FS_REFERENCE;
+    private LevelListener listener = null;
+    private float[] weightedSamples = new float[0];
+    // Mean square of each time weighting
+    private double fast = 0;
+    private double slow = 0;
+    private double impulse = 0;
+    private double periodSquareSum = 0;
+    private int periodSamples = 0;
+    private long processedSamples = 0;
+    private double fastMax;
+    private double slowMax;
+    private double impulseMax;
+    private double fastMin;
+    private double slowMin;
+    private double impulseMin;
+    // Mean square of the last complete output period
+    private double periodMeanSquare = 0;
+
+    /**
+     * @param sampleRate Sampling rate in Hz
+     * @param weightingFilter Frequency weighting (ex: A weighting built from
+     * {@link ConfigurationSpectrumChannel#getAWeighting()}), null for Z weighting (no filter).
+     * The filter state is modified, it must not be shared with another processing
+     * @param outputPeriod Time between two notifications of the listener in seconds
+     */
+    public TimeWeightingIntegrator(int sampleRate, DigitalFilter weightingFilter, double outputPeriod) {
+        this.weightingFilter = weightingFilter;
+        this.outputPeriodSamples = (int) Math.round(outputPeriod * sampleRate);
+        if(outputPeriodSamples < 1) {
+            throw new IllegalArgumentException("Output period shorter than one sample");
+        }
+        alphaFast = getAlpha(TAU_FAST, sampleRate);
+        alphaSlow = getAlpha(TAU_SLOW, sampleRate);
+        alphaImpulseRise = getAlpha(TAU_IMPULSE_RISE, sampleRate);
+        alphaImpulseDecay = getAlpha(TAU_IMPULSE_DECAY, sampleRate);
+        resetMinMax();
+    }
+
+    /**
+     * @return Smoothing factor of the first order low pass filter of time constant tau
+     */
+    private static double getAlpha(double tau, int sampleRate) {
+        return 1 - Math.exp(-1 / (tau * sampleRate));
+    }
+
+    /**
+     * @param dbFsReference Sound level in dB of a full scale signal
+     */
+    public void setDbFsReference(double dbFsReference) {
+        this.dbFsReference = dbFsReference;
+    }
+
+    public void setListener(LevelListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Restart the tracking of maximum and minimum levels, ex: after the integrators settled
+     */
+    public void resetMinMax() {
+        fastMax = slowMax = impulseMax = 0;
+        fastMin = slowMin = impulseMin = Double.MAX_VALUE;
+    }
+
+    /**
+     * Integrate the samples, the listener is called each time an output period is complete
+     * @param samples Audio samples in [-1, 1]
+     */
+    public void processSamples(float[] samples) {
+        float[] input = samples;
+        if(weightingFilter != null) {
+            if(weightedSamples.length != samples.length) {
+                weightedSamples = new float[samples.length];
+            }
+            weightingFilter.filter(samples, weightedSamples);
+            input = weightedSamples;
+        }
+        for(int i = 0; i < input.length; i++) {
+            final double square = (double) input[i] * input[i];
+            fast += alphaFast * (square - fast);
+            slow += alphaSlow * (square - slow);
+            impulse += (square > impulse ? alphaImpulseRise : alphaImpulseDecay) * (square - impulse);
+            periodSquareSum += square;
+            fastMax = Math.max(fastMax, fast);
+            slowMax = Math.max(slowMax, slow);
+            impulseMax = Math.max(impulseMax, impulse);
+            fastMin = Math.min(fastMin, fast);
+            slowMin = Math.min(slowMin, slow);
+            impulseMin = Math.min(impulseMin, impulse);
+            processedSamples++;
+            if(++periodSamples == outputPeriodSamples) {
+                periodMeanSquare = periodSquareSum / outputPeriodSamples;
+                periodSquareSum = 0;
+                periodSamples = 0;
+                if(listener != null) {
+                    listener.onLevels(this);
+                }
+            }
+        }
+    }
+
+    private double toDb(double meanSquare) {
+        return DecibelMath.toDecibel(meanSquare) + dbFsReference;
+    }
+
+    /**
+     * @return Number of processed samples, at the end of the output period during a notification
+     */
+    public long getProcessedSamples() {
+        return processedSamples;
+    }
+
+    /**
+     * @return Fast time weighted level in dB
+     */
+    public double getFastLevel() {
+        return toDb(fast);
+    }
+
+    /**
+     * @return Slow time weighted level in dB
+     */
+    public double getSlowLevel() {
+        return toDb(slow);
+    }
+
+    /**
+     * @return Impulse time weighted level in dB
+     */
+    public double getImpulseLevel() {
+        return toDb(impulse);
+    }
+
+    /**
+     * @return Equivalent level of the last complete output period in dB
+     */
+    public double getPeriodLeq() {
+        return toDb(periodMeanSquare);
+    }
+
+    public double getFastMax() {
+        return toDb(fastMax);
+    }
+
+    public double getSlowMax() {
+        return toDb(slowMax);
+    }
+
+    public double getImpulseMax() {
+        return toDb(impulseMax);
+    }
+
+    public double getFastMin() {
+        return toDb(fastMin);
+    }
+
+    public double getSlowMin() {
+        return toDb(slowMin);
+    }
+
+    public double getImpulseMin() {
+        return toDb(impulseMin);
+    }
+
+    public interface LevelListener {
+        /**
+         * Called at the end of each output period, levels are read with the integrator getters
+         * @param integrator Source of the levels
+         */
+        void onLevels(TimeWeightingIntegrator integrator);
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Prominent tone detection on the narrow band spectrum of {@link FFTSignalProcessing}
+ * ({@link FFTSignalProcessing.ProcessingResult#getFftResult()}, thin frequency output).
+ * Each window, the local maxima of the spectrum are compared to the noise of the critical band
+ * around them (tone-to-noise ratio of ECMA-74 annex D). The critical band of each frequency cell is
+ * precomputed and the band energies are read from a cumulative sum, so a window costs a bounded
+ * number of operations proportional to the number of cells. A tone is reported when it has been
+ * found prominent in consecutive windows, tracked by frequency.
+ */
+public class TonalityDetector {
+    // Cells of the tone, the main lobe of the analysis window
+    private static final int TONE_HALF_WIDTH = 1;
+    private final double frequencyStep;
+    private final double minFrequency;
+    private final double maxFrequency;
+    private final int persistence;
+    private final int maxTones;
+    // Critical band of each cell [bandFirstCell, bandLastCell]
+    private int[] bandFirstCell = new int[0];
+    private int[] bandLastCell = new int[0];
+    private double[] cumulativeEnergy = new double[1];
+    // Prominent tones of the current window, sorted by decreasing prominence
+    private final List<Tone> candidates = new ArrayList<Tone>();
+    private List<Track> tracks = new ArrayList<Track>();
+    private List<Track> nextTracks = new ArrayList<Track>();
+
+    /**
+     * @param frequencyStep Frequency of one cell of the spectrum in Hz, 1 / window time
+     * @param minFrequency Lowest tone frequency in Hz
+     * @param maxFrequency Highest tone frequency in Hz
+     * @param persistence Number of consecutive windows where a tone must be found before being
+     *                    reported
+     * @param maxTones Maximum number of tones tracked in each window
+     */
+    public TonalityDetector(double frequencyStep, double minFrequency, double maxFrequency,
+                            int persistence, int maxTones) {
+        if(!(frequencyStep > 0) || minFrequency > maxFrequency || persistence < 1 || maxTones < 1) {
+            throw new IllegalArgumentException("Invalid tonality detector parameters");
+        }
+        this.frequencyStep = frequencyStep;
+        this.minFrequency = Math.max(minFrequency, frequencyStep * (TONE_HALF_WIDTH + 1));
+        this.maxFrequency = maxFrequency;
+        this.persistence = persistence;
+        this.maxTones = maxTones;
+    }
+
+    /**
+     * Critical bandwidth of Zwicker
+     * @param frequency Center frequency in Hz
+     * @return Bandwidth in Hz
+     */
+    public static double getCriticalBandwidth(double frequency) {
+        final double f = frequency / 1000;
+        return 25 + 75 * Math.pow(1 + 1.4 * f * f, 0.69);
+    }
+
+    /**
+     * ECMA-74 criterion of prominence for the tone-to-noise ratio
+     * @param frequency Tone frequency in Hz
+     * @return Minimal tone-to-noise ratio in dB of a prominent tone
+     */
+    public static double getProminenceThreshold(double frequency) {
+        return frequency >= 1000 ? 8 : 8 + 8.33 * Math.log10(1000 / frequency);
+    }
+
+    /**
+     * Precompute the critical band of each cell
+     */
+    private void prepare(int cellCount) {
+        bandFirstCell = new int[cellCount];
+        bandLastCell = new int[cellCount];
+        cumulativeEnergy = new double[cellCount + 1];
+        for(int cell = 0; cell < cellCount; cell++) {
+            double frequency = cell * frequencyStep;
+            double halfBand = getCriticalBandwidth(frequency) / 2;
+            // Lower and upper frequencies around the tone with the same bandwidth
+            bandFirstCell[cell] = Math.max(0, (int) Math.ceil((frequency - halfBand) /
+                    frequencyStep));
+            bandLastCell[cell] = Math.min(cellCount - 1, (int) Math.floor((frequency + halfBand) /
+                    frequencyStep));
+        }
+    }
+
+    /**
+     * Analyse the next window
+     * @param result Window result with the narrow band spectrum
+     * @return Tones found prominent in at least persistence consecutive windows, sorted by
+     * decreasing prominence
+     */
+    public List<Tone> processResult(FFTSignalProcessing.ProcessingResult result) {
+        final float[] energy = result.fftEnergy;
+        if(energy == null) {
+            throw new IllegalArgumentException("The narrow band spectrum is not computed, " +
+                    "enable the thin frequency output");
+        }
+        final int cellCount = energy.length;
+        if(cellCount != bandFirstCell.length) {
+            prepare(cellCount);
+        }
+        final double scale = 1 / result.count;
+        double sum = 0;
+        for(int cell = 0; cell < cellCount; cell++) {
+            sum += energy[cell];
+            cumulativeEnergy[cell + 1] = sum;
+        }
+        candidates.clear();
+        final int firstCell = (int) Math.ceil(minFrequency / frequencyStep);
+        final int lastCell = Math.min(cellCount - 1 - TONE_HALF_WIDTH,
+                (int) Math.floor(maxFrequency / frequencyStep));
+        for(int cell = firstCell; cell <= lastCell; cell++) {
+            final float peak = energy[cell];
+            if(!(peak > energy[cell - 1] && peak >= energy[cell + 1])) {
+                continue;
+            }
+            final int first = bandFirstCell[cell];
+            final int last = bandLastCell[cell];
+            final double toneEnergy = cumulativeEnergy[cell + TONE_HALF_WIDTH + 1] -
+                    cumulativeEnergy[cell - TONE_HALF_WIDTH];
+            final int toneCells = 2 * TONE_HALF_WIDTH + 1;
+            final int bandCells = last - first + 1;
+            if(bandCells <= toneCells) {
+                continue;
+            }
+            // Noise of the critical band without the tone, extended to the whole band
+            final double noiseEnergy = (cumulativeEnergy[last + 1] - cumulativeEnergy[first] -
+                    toneEnergy) * bandCells / (bandCells - toneCells);
+            if(!(noiseEnergy > 0)) {
+                continue;
+            }
+            final double prominence = DecibelMath.toDecibel(toneEnergy / noiseEnergy);
+            final double frequency = interpolateFrequency(energy, cell);
+            if(prominence < getProminenceThreshold(frequency)) {
+                continue;
+            }
+            addCandidate(new Tone(frequency, DecibelMath.toDecibel(toneEnergy * scale),
+                    prominence, 1));
+        }
+        return track();
+    }
+
+    /**
+     * Parabolic interpolation of the peak on the levels of the neighbor cells
+     */
+    private double interpolateFrequency(float[] energy, int cell) {
+        final double left = DecibelMath.toDecibel(energy[cell - 1]);
+        final double center = DecibelMath.toDecibel(energy[cell]);
+        final double right = DecibelMath.toDecibel(energy[cell + 1]);
+        final double denominator = left - 2 * center + right;
+        double offset = denominator < 0 ? 0.5 * (left - right) / denominator : 0;
+        if(Double.isNaN(offset) || Math.abs(offset) > 0.5) {
+            offset = 0;
+        }
+        return (cell + offset) * frequencyStep;
+    }
+
+    /**
+     * Keep the maxTones most prominent tones of the window
+     */
+    private void addCandidate(Tone tone) {
+        int index = candidates.size();
+        while(index > 0 && candidates.get(index - 1).prominence < tone.prominence) {
+            index--;
+        }
+        if(index < maxTones) {
+            candidates.add(index, tone);
+            if(candidates.size() > maxTones) {
+                candidates.remove(candidates.size() - 1);
+            }
+        }
+    }
+
+    /**
+     * Match the tones of the window with the tones of the previous window
+     */
+    private List<Tone> track() {
+        List<Tone> reported = new ArrayList<Tone>();
+        nextTracks.clear();
+        for(Tone tone : candidates) {
+            Track matched = null;
+            for(Track track : tracks) {
+                if(!track.matched && Math.abs(track.frequency - tone.frequency) <=
+                        1.5 * frequencyStep) {
+                    matched = track;
+                    break;
+                }
+            }
+            int windowCount = 1;
+            if(matched != null) {
+                matched.matched = true;
+                windowCount = matched.windowCount + 1;
+            }
+            nextTracks.add(new Track(tone.frequency, windowCount));
+            if(windowCount >= persistence) {
+                reported.add(new Tone(tone.frequency, tone.level, tone.prominence, windowCount));
+            }
+        }
+        // Tracks not found in this window are ended
+        List<Track> swap = tracks;
+        tracks = nextTracks;
+        nextTracks = swap;
+        return Collections.unmodifiableList(reported);
+    }
+
+    /**
+     * Clear the tracked tones
+     */
+    public void reset() {
+        tracks.clear();
+    }
+
+    private static final class Track {
+        final double frequency;
+        final int windowCount;
+        boolean matched = false;
+
+        Track(double frequency, int windowCount) {
+            this.frequency = frequency;
+            this.windowCount = windowCount;
+        }
+    }
+
+    /**
+     * Prominent tone of a window
+     */
+    public static final class Tone {
+        private final double frequency;
+        private final double level;
+        private final double prominence;
+        private final int windowCount;
+
+        public Tone(double frequency, double level, double prominence, int windowCount) {
+            this.frequency = frequency;
+            this.level = level;
+            this.prominence = prominence;
+            this.windowCount = windowCount;
+        }
+
+        /**
+         * @return Interpolated frequency of the tone in Hz
+         */
+        public double getFrequency() {
+            return frequency;
+        }
+
+        /**
+         * @return Level of the tone in dB (cells of the main lobe)
+         */
+        public double getLevel() {
+            return level;
+        }
+
+        /**
+         * @return Tone-to-noise ratio in dB
+         */
+        public double getProminence() {
+            return prominence;
+        }
+
+        /**
+         * @return Number of consecutive windows where this tone has been found
+         */
+        public int getWindowCount() {
+            return windowCount;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+/**
+ * Level of a set of pure tones, computed with the Goertzel algorithm.
+ * Each pushed sample updates the resonator of every tracked frequency in O(1), the levels are
+ * read at the end of each block of {@code blockSize} samples. This is much cheaper than a full
+ * spectrum when only a few known test tones are measured (calibration, linearity sweep), and the
+ * block can be shorter than the FFT window for a higher update rate.
+ * The resolution bandwidth is sampleRate / blockSize, the block is not windowed.
+ */
+public class ToneDetector {
+    private final int sampleRate;
+    private final double[] frequencies;
+    private final int blockSize;
+    // 2.cos(2.PI.f/fs) for each frequency
+    private final double[] coefficients;
+    // cos and sin of 2.PI.f/fs, used to close the block of non integer frequency bins
+    private final double[] cosines;
+    private final double[] sines;
+    // Resonator states s[n-1] and s[n-2]
+    private final double[] state1;
+    private final double[] state2;
+    private final double[] energies;
+    private final double[] aWeightingEnergy;
+    private int blockPosition = 0;
+    private long blockCount = 0;
+    private long pushedSamples = 0;
+    private double dbFsReference;
+    private boolean aWeighting = false;
+    private ToneListener listener;
+
+    /**
+     * @param sampleRate Sampling rate of the signal
+     * @param frequencies Frequencies of the tones in Hz, lower than the Nyquist frequency
+     * @param blockSize Number of samples integrated for each level
+     * @param dbFsReference Level in dB of a 0 dB FS signal
+     */
+    public ToneDetector(int sampleRate, double[] frequencies, int blockSize, double dbFsReference) {
+        if(blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.sampleRate = sampleRate;
+        this.frequencies = frequencies.clone();
+        this.blockSize = blockSize;
+        this.dbFsReference = dbFsReference;
+        final int count = frequencies.length;
+        coefficients = new double[count];
+        cosines = new double[count];
+        sines = new double[count];
+        state1 = new double[count];
+        state2 = new double[count];
+        energies = new double[count];
+        aWeightingEnergy = new double[count];
+        for(int i = 0; i < count; i++) {
+            if(!(frequencies[i] > 0 && frequencies[i] < sampleRate / 2.)) {
+                throw new IllegalArgumentException("Tone frequency " + frequencies[i] +
+                        " Hz is outside ]0, " + sampleRate / 2. + "[ Hz");
+            }
+            final double omega = 2 * Math.PI * frequencies[i] / sampleRate;
+            cosines[i] = Math.cos(omega);
+            sines[i] = Math.sin(omega);
+            coefficients[i] = 2 * cosines[i];
+            aWeightingEnergy[i] = DecibelMath.toEnergy(
+                    FractionalOctaveBands.getAWeighting(frequencies[i]));
+        }
+    }
+
+    /**
+     * @return Tracked frequencies in Hz
+     */
+    public double[] getFrequencies() {
+        return frequencies.clone();
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return Number of completed blocks
+     */
+    public long getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * @return Number of pushed samples
+     */
+    public long getPushedSamples() {
+        return pushedSamples;
+    }
+
+    public double getDbFsReference() {
+        return dbFsReference;
+    }
+
+    public void setDbFsReference(double dbFsReference) {
+        this.dbFsReference = dbFsReference;
+    }
+
+    public boolean isAWeighting() {
+        return aWeighting;
+    }
+
+    /**
+     * @param aWeighting Apply the A weighting of each tone frequency on the returned levels
+     */
+    public void setAWeighting(boolean aWeighting) {
+        this.aWeighting = aWeighting;
+    }
+
+    /**
+     * @param listener Called each time a block is completed
+     */
+    public void setListener(ToneListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Drop the current incomplete block and the last levels
+     */
+    public void reset() {
+        for(int i = 0; i < frequencies.length; i++) {
+            state1[i] = 0;
+            state2[i] = 0;
+            energies[i] = 0;
+        }
+        blockPosition = 0;
+    }
+
+    public void pushSamples(float[] samples) {
+        pushSamples(samples, 0, samples.length);
+    }
+
+    /**
+     * Push samples, the listener is called for each completed block
+     * @param samples Samples in [-1, 1]
+     * @param offset Index of the first sample
+     * @param length Number of samples
+     */
+    public void pushSamples(float[] samples, int offset, int length) {
+        if(offset < 0 || length < 0 || offset + length > samples.length) {
+            throw new IllegalArgumentException("Out of bounds sample range");
+        }
+        final int end = offset + length;
+        int cursor = offset;
+        while(cursor < end) {
+            final int blockEnd = Math.min(end, cursor + blockSize - blockPosition);
+            for(int i = 0; i < frequencies.length; i++) {
+                final double coefficient = coefficients[i];
+                double s1 = state1[i];
+                double s2 = state2[i];
+                for(int n = cursor; n < blockEnd; n++) {
+                    final double s0 = samples[n] + coefficient * s1 - s2;
+                    s2 = s1;
+                    s1 = s0;
+                }
+                state1[i] = s1;
+                state2[i] = s2;
+            }
+            blockPosition += blockEnd - cursor;
+            pushedSamples += blockEnd - cursor;
+            cursor = blockEnd;
+            if(blockPosition == blockSize) {
+                closeBlock();
+                if(listener != null) {
+                    listener.onTones(this);
+                }
+            }
+        }
+    }
+
+    private void closeBlock() {
+        // Mean square of a sine of amplitude A at the tone frequency is A^2/2 = 2.|X|^2/N^2
+        final double scale = 2. / ((double) blockSize * blockSize);
+        for(int i = 0; i < frequencies.length; i++) {
+            // X = s[N-1] - e^(-j.omega).s[N-2], the phase is not needed
+            final double real = state1[i] - cosines[i] * state2[i];
+            final double imaginary = sines[i] * state2[i];
+            energies[i] = (real * real + imaginary * imaginary) * scale;
+            state1[i] = 0;
+            state2[i] = 0;
+        }
+        blockPosition = 0;
+        blockCount++;
+    }
+
+    /**
+     * @return Mean square of each tone in the last completed block, relative to a full scale
+     * signal (A weighting not applied)
+     */
+    public double[] getEnergies() {
+        return energies.clone();
+    }
+
+    /**
+     * @return Level in dB of each tone in the last completed block
+     */
+    public double[] getLevels() {
+        double[] levels = new double[energies.length];
+        for(int i = 0; i < levels.length; i++) {
+            double energy = aWeighting ? energies[i] * aWeightingEnergy[i] : energies[i];
+            levels[i] = DecibelMath.toDecibel(energy) + dbFsReference;
+        }
+        return levels;
+    }
+
+    /**
+     * @return Energetic sum in dB of the tone levels of the last completed block
+     */
+    public double getLeq() {
+        double sum = 0;
+        for(int i = 0; i < energies.length; i++) {
+            sum += aWeighting ? energies[i] * aWeightingEnergy[i] : energies[i];
+        }
+        return DecibelMath.toDecibel(sum) + dbFsReference;
+    }
+
+    /**
+     * Receive the tone levels
+     */
+    public interface ToneListener {
+        /**
+         * @param toneDetector Detector with a newly completed block
+         */
+        void onTones(ToneDetector toneDetector);
+    }
+}
@@ -27,7 +27,6 @@
 
 package org.orbisgis.sos;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +41,10 @@ import java.util.Random;
 
 /**
  * Overlaps the window of signal processing.
+ * Pushed samples are copied once into a circular buffer of the window length, a spectrum is
+ * computed each time a hop of {@code windowSize * (1 - overlap)} samples has been pushed. The
+ * spectrums computed since the last call to {@link #cleanWindows()} are averaged in the energy
+ * domain as they are produced.
  */
 
 public class Window {
@@ -50,15 +53,31 @@ public class Window {
     private FFTSignalProcessing signalProcessing;
     int sampleRate;
     // processed sample index
-    private int lastProcessedSpectrum = 0;
+    private long lastProcessedSpectrum = 0;
     // added samples
-    private int pushedSamples;
+    private long pushedSamples;
     private int windowSize;
     private boolean aWeighting;
     private boolean outputThinFrequency;
     private double overlap = 0;
-    private FFTSignalProcessing.ProcessingResult[] windowResults;
     private SpectrumChannel spectrumChannel;
+    // Circular buffer of the last windowSize samples, ringPosition is the oldest sample
+    private final float[] ringBuffer;
+    private int ringPosition = 0;
+    private final int hopSize;
+    // Samples pushed since the last processed spectrum
+    private int hopSamples = 0;
+    private double hopASquareSum = 0;
+    // Spectrums computed since the last cleanWindows, mean is accumulated from the second one.
+    // The last spectrum alternates between two results, the previous one is still needed to
+    // start the mean.
+    private int frameCount = 0;
+    private final FFTSignalProcessing.ProcessingResult[] frames = {
+            new FFTSignalProcessing.ProcessingResult(), new FFTSignalProcessing.ProcessingResult()};
+    private FFTSignalProcessing.ProcessingResult lastFrame;
+    private final FFTSignalProcessing.ProcessingResult mean = new FFTSignalProcessing.ProcessingResult();
+    private WindowListener listener;
+    private ProcessingMetrics metrics = ProcessingMetrics.NONE;
 
     public Window(FFTSignalProcessing.WINDOW_TYPE window, int samplingRate, double[] standardFrequencies,
                   double windowTime, boolean aWeighting,
@@ -77,18 +96,36 @@ public class Window {
      * @param aWeighting
      * @param dbFsReference
      * @param outputThinFrequency
-     * @param overlap TODO Fix window overlapping
+     * @param overlap Ratio of the window shared with the previous window, in [0, 1[
      */
     public Window(FFTSignalProcessing.WINDOW_TYPE window, int samplingRate, double[] standardFrequencies,
                   double windowTime, boolean aWeighting,
                   double dbFsReference,boolean outputThinFrequency, double overlap) {
+        this(window, samplingRate, standardFrequencies, windowTime, aWeighting, dbFsReference,
+                outputThinFrequency, overlap, FractionalOctaveBands.THIRD_OCTAVE);
+    }
+
+    /**
+     * @param standardFrequencies Nominal frequencies of the bands, see
+     * {@link FFTSignalProcessing#computeFFTCenterFrequency(int, int)}
+     * @param bandsPerOctave Band resolution, ex: {@link FractionalOctaveBands#OCTAVE}
+     */
+    public Window(FFTSignalProcessing.WINDOW_TYPE window, int samplingRate, double[] standardFrequencies,
+                  double windowTime, boolean aWeighting,
+                  double dbFsReference,boolean outputThinFrequency, double overlap,
+                  int bandsPerOctave) {
+        if(overlap < 0 || overlap >= 1) {
+            throw new IllegalArgumentException("Overlap must be in [0, 1[");
+        }
         this.overlap = overlap;
         this.sampleRate = samplingRate;
         this.signalProcessing = new FFTSignalProcessing(samplingRate, standardFrequencies,
-                (int)(samplingRate * windowTime), dbFsReference);
+                (int)(samplingRate * windowTime), dbFsReference, bandsPerOctave);
         this.window = window;
         this.windowSize = (int)(samplingRate * windowTime);
-        this.windowResults = new FFTSignalProcessing.ProcessingResult[(int)(Math.round(1 / (1 - overlap)))];
+        // The sample buffer of the FFT is used as circular buffer
+        this.ringBuffer = signalProcessing.getSampleBuffer();
+        this.hopSize = Math.max(1, (int)(windowSize * (1 - overlap)));
         this.outputThinFrequency = outputThinFrequency;
         setAWeighting(aWeighting);
     }
@@ -97,27 +134,47 @@ public class Window {
         signalProcessing.setDbFsReference(dbFsReference);
     }
 
+    /**
+     * @return Band resolution, 3 for third octave bands
+     */
+    public int getBandsPerOctave() {
+        return signalProcessing.getBandsPerOctave();
+    }
+
     public boolean isOutputThinFrequency() {
         return outputThinFrequency;
     }
 
     private void loadFilter() {
         // Load analyser
-        String configuration = "config_44100_third_octave.json";
-        if(sampleRate == 48000) {
-            configuration = "config_48000_third_octave.json";
-        }
-        try (InputStream s = SpectrumChannel.class.getResourceAsStream(configuration)) {
-            ObjectMapper objectMapper = new ObjectMapper();
-            ConfigurationSpectrumChannel configurationInstance = objectMapper.
-                    readValue(s, ConfigurationSpectrumChannel.class);
-            spectrumChannel = new SpectrumChannel();
+        try {
+            ConfigurationSpectrumChannel configurationInstance =
+                    FilterDesignCache.loadThirdOctaveConfiguration(sampleRate);
+            // Only time domain weighting filters are used, no worker threads needed
+            spectrumChannel = new SpectrumChannel(1);
             spectrumChannel.loadConfiguration(configurationInstance, true);
+            spectrumChannel.setMetrics(metrics);
         } catch (IOException ex) {
             LOGGER.error(ex.getLocalizedMessage(), ex);
         }
     }
 
+    /**
+     * @param metrics Receive the duration of the windowing, FFT, band recombination and
+     *                A-weighting stages
+     */
+    public void setMetrics(ProcessingMetrics metrics) {
+        this.metrics = metrics == null ? ProcessingMetrics.NONE : metrics;
+        signalProcessing.setMetrics(this.metrics);
+        if(spectrumChannel != null) {
+            spectrumChannel.setMetrics(this.metrics);
+        }
+    }
+
+    public ProcessingMetrics getMetrics() {
+        return metrics;
+    }
+
     public void setAWeighting(boolean aWeighting) {
         this.aWeighting = aWeighting;
         if(aWeighting) {
@@ -137,61 +194,83 @@ public class Window {
         return signalProcessing.getSampleDuration();
     }
 
+    /**
+     * @param listener Called each time the non-overlapped window index changes, in the thread
+     * pushing the samples. The listener usually reads {@link #getLastWindowMean()} then calls
+     * {@link #cleanWindows()}.
+     */
+    public void setListener(WindowListener listener) {
+        this.listener = listener;
+    }
+
     /**
      * Process the current window
      */
     private void processWindow() {
+        final int previousWindowIndex = getWindowIndex();
         lastProcessedSpectrum = pushedSamples;
+        hopSamples = 0;
         double lAeq = 0;
         if(aWeighting && spectrumChannel != null) {
-            float[] samples = signalProcessing.getSampleBuffer();
             double dbGain = 20 * Math.log10(1/signalProcessing.getRefSoundPressure());
-            lAeq = spectrumChannel.processSamplesWeightA(samples) + dbGain;
+            lAeq = DecibelMath.toDecibel(hopASquareSum / hopSize) + dbGain;
+            hopASquareSum = 0;
         }
-        FFTSignalProcessing.ProcessingResult result = signalProcessing.processSampleBuffer(window, true);
+        FFTSignalProcessing.ProcessingResult result = signalProcessing.processSampleBuffer(
+                ringBuffer, ringPosition, window, outputThinFrequency,
+                lastFrame == frames[0] ? frames[1] : frames[0]);
+        result.setId(pushedSamples);
         result.setWindowLaeq(lAeq);
-        // Move result by 1 backward
-        if(windowResults.length > 1) {
-            System.arraycopy(windowResults, 1, windowResults, 0, windowResults.length - 1);
+        // The energy sum is only needed when there is more than one spectrum to average
+        if(frameCount == 1) {
+            mean.reset();
+            mean.accumulate(lastFrame);
+        }
+        if(frameCount >= 1) {
+            mean.accumulate(result);
+        }
+        lastFrame = result;
+        frameCount++;
+        if(listener != null && getWindowIndex() != previousWindowIndex) {
+            listener.onWindow(this);
         }
-        windowResults[windowResults.length - 1] = result;
     }
 
     /**
      * Remove stored windows
      */
     public void cleanWindows() {
-        Arrays.fill(windowResults, null);
+        frameCount = 0;
+        mean.reset();
     }
 
     /**
-     * @return The sum of overlaps windows, null if not available
+     * The returned result is reused by this window, it is only valid until the next window is
+     * processed or {@link #cleanWindows()} is called. Copy it with
+     * {@link FFTSignalProcessing.ProcessingResult#accumulate(FFTSignalProcessing.ProcessingResult)}
+     * to keep it.
+     * @return The energetic mean of the spectrums computed since the last {@link #cleanWindows()},
+     * null if not available
      */
     public FFTSignalProcessing.ProcessingResult getLastWindowMean() {
-        if(windowResults.length > 1) {
-            return new FFTSignalProcessing.ProcessingResult(1, windowResults);
-        } else {
-            return windowResults[0];
+        if(frameCount == 0) {
+            return null;
         }
+        return frameCount == 1 ? lastFrame : mean;
     }
 
     /**
      * @return False if a window mean is available
      */
     public boolean isCacheEmpty() {
-        for(FFTSignalProcessing.ProcessingResult windowCache : windowResults) {
-            if(windowCache != null) {
-                return false;
-            }
-        }
-        return true;
+        return frameCount == 0;
     }
 
     /**
      * @return The non-overlaped window index
      */
     public int getWindowIndex() {
-        return lastProcessedSpectrum / windowSize;
+        return (int)(lastProcessedSpectrum / windowSize);
     }
 
     public double getOverlap() {
@@ -199,25 +278,132 @@ public class Window {
     }
 
     /**
-     * @return The maximal buffer size provided in pushSample in order to not skip a result
+     * @return Number of samples between two computed spectrums
+     */
+    public int getHopSize() {
+        return hopSize;
+    }
+
+    /**
+     * @return The maximal buffer size provided in pushSample in order to not skip a result. Not
+     * required when a {@link WindowListener} is set.
      */
     public int getMaximalBufferSize() {
-        return Math.max(0, (int)(windowSize * (1 - overlap)) - (pushedSamples - lastProcessedSpectrum));
+        return hopSize - hopSamples;
     }
 
     /**
-     * Push samples. If the
-     * @param buffer Audio signal. If the length is superior than the
-     * @return The last result, null if the pushed samples was not enough to get a leq.
+     * Push samples of any length. A spectrum is computed each time {@link #getHopSize()} samples
+     * have been pushed.
+     * @param buffer Audio signal
      */
     public void pushSample(float[] buffer) {
-        signalProcessing.addSample(buffer);
-        pushedSamples += buffer.length;
-        if(pushedSamples - lastProcessedSpectrum >= (int)(windowSize * (1 - overlap))) {
-            processWindow();
+        pushSample(buffer, 0, buffer.length);
+    }
+
+    /**
+     * Push samples of any length. A spectrum is computed each time {@link #getHopSize()} samples
+     * have been pushed.
+     * @param buffer Audio signal
+     * @param offset Index of the first sample to push
+     * @param length Number of samples to push
+     */
+    public void pushSample(float[] buffer, int offset, int length) {
+        if(offset < 0 || length < 0 || offset + length > buffer.length) {
+            throw new IllegalArgumentException("Range out of the buffer bounds");
+        }
+        while(length > 0) {
+            int copyLength = nextCopyLength(length);
+            System.arraycopy(buffer, offset, ringBuffer, ringPosition, copyLength);
+            commitCopy(copyLength);
+            offset += copyLength;
+            length -= copyLength;
         }
     }
 
+    /**
+     * Push all the remaining 16 bits PCM samples of the buffer, without intermediate copy.
+     * Samples are rescaled as done by {@link #convertShortToFloat(short[])}.
+     * @param samples Audio signal, its position is moved to its limit
+     */
+    public void pushSample(ShortBuffer samples) {
+        int length = samples.remaining();
+        while(length > 0) {
+            int copyLength = nextCopyLength(length);
+            convertShortToFloat(samples, ringBuffer, ringPosition, copyLength);
+            commitCopy(copyLength);
+            length -= copyLength;
+        }
+    }
+
+    /**
+     * Push all the remaining 16 bits PCM samples of the buffer, without intermediate copy.
+     * Samples are read using the byte order of the buffer and rescaled as done by
+     * {@link #convertShortToFloat(short[])}.
+     * @param samples Audio signal, its position is moved to its limit (minus an odd last byte)
+     */
+    public void pushSample(ByteBuffer samples) {
+        int length = samples.remaining() / 2;
+        while(length > 0) {
+            int copyLength = nextCopyLength(length);
+            convertBytesToFloat(samples, ringBuffer, ringPosition, copyLength);
+            commitCopy(copyLength);
+            length -= copyLength;
+        }
+    }
+
+    /**
+     * @return Circular buffer where the next samples are written at {@link #getRingPosition()}
+     */
+    float[] getRingBuffer() {
+        return ringBuffer;
+    }
+
+    int getRingPosition() {
+        return ringPosition;
+    }
+
+    /**
+     * @return Number of samples to write at ringPosition, up to the hop or the buffer end
+     */
+    int nextCopyLength(int length) {
+        return Math.min(length, Math.min(hopSize - hopSamples, ringBuffer.length - ringPosition));
+    }
+
+    /**
+     * Account for the samples written at ringPosition
+     */
+    void commitCopy(int copyLength) {
+        if(aWeighting && spectrumChannel != null) {
+            hopASquareSum += spectrumChannel.processSamplesWeightASquareSum(ringBuffer,
+                    ringPosition, copyLength);
+        }
+        ringPosition += copyLength;
+        if(ringPosition == ringBuffer.length) {
+            ringPosition = 0;
+        }
+        hopSamples += copyLength;
+        pushedSamples += copyLength;
+        if(hopSamples == hopSize) {
+            if(pushedSamples >= windowSize) {
+                processWindow();
+            } else {
+                // The ring buffer is not filled yet, a spectrum would contain its initial zeros
+                hopSamples = 0;
+                hopASquareSum = 0;
+            }
+        }
+    }
+
+    /**
+     * Receive the end of the non-overlapped windows
+     */
+    public interface WindowListener {
+        /**
+         * @param window Window where the mean of the computed spectrums is available
+         */
+        void onWindow(Window window);
+    }
 
     public static double[] convertShortToDouble(short[] samplesShort) {
         double[] samples = new double[samplesShort.length];
@@ -248,6 +434,35 @@ public class Window {
         return samples;
     }
 
+    /**
+     * Read 16 bits PCM samples rescaled in [-1, 1[, as done by {@link #convertShortToFloat(short[])}
+     * @param samples Source samples, its position is moved by length
+     * @param destination Destination array
+     * @param offset First index written in destination
+     * @param length Number of samples to read
+     */
+    public static void convertShortToFloat(ShortBuffer samples, float[] destination, int offset,
+                                           int length) {
+        for (int i = 0; i < length; i++) {
+            destination[offset + i] = samples.get() / 32768.0f;
+        }
+    }
+
+    /**
+     * Read 16 bits PCM samples rescaled in [-1, 1[, as done by {@link #convertShortToFloat(short[])}
+     * @param samples Source bytes read with the byte order of the buffer, its position is moved by
+     * 2 * length
+     * @param destination Destination array
+     * @param offset First index written in destination
+     * @param length Number of samples to read
+     */
+    public static void convertBytesToFloat(ByteBuffer samples, float[] destination, int offset,
+                                           int length) {
+        for (int i = 0; i < length; i++) {
+            destination[offset + i] = samples.getShort() / 32768.0f;
+        }
+    }
+
     /**
      *
      * @param buffer
@@ -258,25 +473,35 @@ public class Window {
         return convertShortToDouble(convertBytesToShort(buffer, length, byteOrder));
     }
 
+    /**
+     * Read all the 16 bits samples of the stream
+     * @param inputStream Raw PCM stream
+     * @param byteOrder Samples byte order
+     * @return Samples
+     */
     public static short[] loadShortStream(InputStream inputStream, ByteOrder byteOrder) throws IOException {
-        short[] fullArray = new short[0];
-        byte[] buffer = new byte[4096];
+        short[] fullArray = new short[4096];
+        int length = 0;
+        byte[] buffer = new byte[8192];
+        // Bytes in buffer, a read may end in the middle of a sample
+        int bufferLength = 0;
         int read;
-        // Read input signal up to buffer.length
-        while ((read = inputStream.read(buffer)) != -1) {
-            // Convert bytes into double values. Samples array size is 8 times inferior than buffer size
-            if (read < buffer.length) {
-                buffer = Arrays.copyOfRange(buffer, 0, read);
+        while ((read = inputStream.read(buffer, bufferLength, buffer.length - bufferLength)) != -1) {
+            bufferLength += read;
+            int samples = bufferLength / 2;
+            if(length + samples > fullArray.length) {
+                // Grow geometrically in order to keep a linear complexity
+                fullArray = Arrays.copyOf(fullArray, Math.max(fullArray.length * 2, length + samples));
             }
-            short[] signal = convertBytesToShort(buffer, buffer.length, byteOrder);
-            short[] nextFullArray = new short[fullArray.length + signal.length];
-            if(fullArray.length > 0) {
-                System.arraycopy(fullArray, 0, nextFullArray, 0, fullArray.length);
+            ByteBuffer.wrap(buffer, 0, samples * 2).order(byteOrder).asShortBuffer()
+                    .get(fullArray, length, samples);
+            length += samples;
+            if(bufferLength % 2 == 1) {
+                buffer[0] = buffer[bufferLength - 1];
             }
-            System.arraycopy(signal, 0, nextFullArray, fullArray.length, signal.length);
-            fullArray = nextFullArray;
+            bufferLength %= 2;
         }
-        return fullArray;
+        return Arrays.copyOf(fullArray, length);
     }
 
 
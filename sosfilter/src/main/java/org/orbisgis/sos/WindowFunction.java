@@ -0,0 +1,201 @@
+/*
+ * This file is part of the NoiseCapture application and OnoMap system.
+ *
+ * The 'OnoMaP' system is led by Lab-STICC and Ifsttar and generates noise maps via
+ * citizen-contributed noise data.
+ *
+ * This application is co-funded by the ENERGIC-OD Project (European Network for
+ * Redistributing Geospatial Information to user Communities - Open Data). ENERGIC-OD
+ * (http://www.energic-od.eu/) is partially funded under the ICT Policy Support Programme (ICT
+ * PSP) as part of the Competitiveness and Innovation Framework Programme by the European
+ * Community. The application work is also supported by the French geographic portal GEOPAL of the
+ * Pays de la Loire region (http://www.geopal.org).
+ *
+ * Copyright (C) IFSTTAR - LAE and Lab-STICC – CNRS UMR 6285 Equipe DECIDE Vannes
+ *
+ * NoiseCapture is a free software; you can redistribute it and/or modify it under the terms of the
+ * GNU General Public License as published by the Free Software Foundation; either version 3 of
+ * the License, or(at your option) any later version. NoiseCapture is distributed in the hope that
+ * it will be useful,but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for
+ * more details.You should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation,Inc., 51 Franklin Street, Fifth Floor,
+ * Boston, MA 02110-1301  USA or see For more information,  write to Ifsttar,
+ * 14-20 Boulevard Newton Cite Descartes, Champs sur Marne F-77447 Marne la Vallee Cedex 2 FRANCE
+ *  or write to scientific.computing@ifsttar.fr
+ */
+
+package org.orbisgis.sos;
+
+import java.util.Map;
+
+/**
+ * Precomputed coefficients of the weighting windows applied before the FFT.
+ * Tables are cached by window type, size and Tukey alpha, so the trigonometric functions are
+ * evaluated once per configuration instead of once per processed window. Only the
+ * {@link #CACHE_SIZE} most recently used configurations are kept, as
+ * {@link AcousticIndicators#hannWindow(float[])} accepts signals of any length.
+ * Instances are immutable and thread safe.
+ */
+public final class WindowFunction {
+    public static final int CACHE_SIZE = 16;
+    private static final Map<Key, WindowFunction> CACHE = new LruCache<Key, WindowFunction>(CACHE_SIZE);
+
+    private final int size;
+    // Hann: coefficients of the samples [taperBegin, size)
+    // Tukey (taperBegin = 0): taperLength coefficients for each end of the window
+    private final int taperBegin;
+    private final int taperLength;
+    private final double[] coefficients;
+    private final double energyCorrection;
+
+    private WindowFunction(int size, int taperBegin, int taperLength, double[] coefficients,
+                           double energyCorrection) {
+        this.size = size;
+        this.taperBegin = taperBegin;
+        this.taperLength = taperLength;
+        this.coefficients = coefficients;
+        this.energyCorrection = energyCorrection;
+    }
+
+    /**
+     * @param size Window length
+     * @return Shared Hann window of this length
+     */
+    public static WindowFunction hann(int size) {
+        Key key = new Key(FFTSignalProcessing.WINDOW_TYPE.HANN, size, 0);
+        synchronized (CACHE) {
+            WindowFunction windowFunction = CACHE.get(key);
+            if(windowFunction == null) {
+                // The first sample is kept unchanged, as done by AcousticIndicators#hannWindow
+                double[] coefficients = new double[size];
+                double energy = 0;
+                for (int n = 1; n < size; n++) {
+                    double coeff = 0.5 * (1 - Math.cos((2 * Math.PI * n) / (size - 1)));
+                    coefficients[n] = coeff;
+                    energy += coeff * coeff;
+                }
+                windowFunction = new WindowFunction(size, 1, size - 1, coefficients, energy);
+                CACHE.put(key, windowFunction);
+            }
+            return windowFunction;
+        }
+    }
+
+    /**
+     * @param size Window length
+     * @param tukeyAlpha Ratio of the window covered by the cosine tapers
+     * @return Shared Tukey window of this length
+     */
+    public static WindowFunction tukey(int size, double tukeyAlpha) {
+        Key key = new Key(FFTSignalProcessing.WINDOW_TYPE.TUKEY, size, tukeyAlpha);
+        synchronized (CACHE) {
+            WindowFunction windowFunction = CACHE.get(key);
+            if(windowFunction == null) {
+                int indexBeginFlat = (int)((tukeyAlpha / 2) * size);
+                int indexEndFlat = size - indexBeginFlat;
+                // Begin taper then end taper, the flat part is not stored
+                double[] coefficients = new double[2 * indexBeginFlat];
+                double energy = 0;
+                for(int i = 0; i < indexBeginFlat; i++) {
+                    double windowValue = (0.5 * (1 + Math.cos(2 * Math.PI / tukeyAlpha *
+                            ((i / (float)size) - tukeyAlpha / 2))));
+                    coefficients[i] = windowValue;
+                    energy += windowValue * windowValue;
+                }
+                energy += indexEndFlat - indexBeginFlat;
+                for(int i = indexEndFlat; i < size; i++) {
+                    double windowValue = (0.5 * (1 + Math.cos(2 * Math.PI / tukeyAlpha *
+                            ((i / (float)size) - 1 + tukeyAlpha / 2))));
+                    coefficients[indexBeginFlat + i - indexEndFlat] = windowValue;
+                    energy += windowValue * windowValue;
+                }
+                windowFunction = new WindowFunction(size, 0, indexBeginFlat, coefficients, energy);
+                CACHE.put(key, windowFunction);
+            }
+            return windowFunction;
+        }
+    }
+
+    /**
+     * Release all the shared tables.
+     */
+    public static void clearCache() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * @return Window length
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return Sum of the square of the window coefficients
+     */
+    public double getEnergyCorrection() {
+        return energyCorrection;
+    }
+
+    /**
+     * Multiply the signal by the window coefficients
+     * @param signal Time signal of length {@link #getSize()}
+     * @return Sum of the square of the window coefficients
+     */
+    public double apply(float[] signal) {
+        if(signal.length != size) {
+            throw new IllegalArgumentException("Signal length does not match the window size");
+        }
+        if(taperBegin > 0) {
+            for(int i = taperBegin; i < size; i++) {
+                signal[i] *= coefficients[i];
+            }
+        } else {
+            for(int i = 0; i < taperLength; i++) {
+                signal[i] *= coefficients[i];
+            }
+            final int endOffset = size - 2 * taperLength;
+            for(int i = taperLength; i < 2 * taperLength; i++) {
+                signal[endOffset + i] *= coefficients[i];
+            }
+        }
+        return energyCorrection;
+    }
+
+    private static final class Key {
+        private final FFTSignalProcessing.WINDOW_TYPE type;
+        private final int size;
+        private final double alpha;
+
+        Key(FFTSignalProcessing.WINDOW_TYPE type, int size, double alpha) {
+            this.type = type;
+            this.size = size;
+            this.alpha = alpha;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return type == other.type && size == other.size &&
+                    Double.compare(alpha, other.alpha) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            long alphaBits = Double.doubleToLongBits(alpha);
+            int result = type.hashCode();
+            result = 31 * result + size;
+            result = 31 * result + (int) (alphaBits ^ (alphaBits >>> 32));
+            return result;
+        }
+    }
+}
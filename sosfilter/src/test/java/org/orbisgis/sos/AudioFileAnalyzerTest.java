@@ -0,0 +1,266 @@
+package org.orbisgis.sos;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AudioFileAnalyzerTest {
+    // Window.makeSinWave amplitude is the peak value
+    private static final double PEAK_90DB = FFTSignalProcessing.RMS_REFERENCE_90DB * Math.sqrt(2);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Write a 16 bits PCM WAV file, all channels contain the same signal
+     */
+    static File writeWave(File file, int sampleRate, int channels, short[] signal) throws IOException {
+        int dataSize = signal.length * channels * 2;
+        ByteBuffer buffer = ByteBuffer.allocate(44 + dataSize).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put("RIFF".getBytes(StandardCharsets.US_ASCII)).putInt(36 + dataSize);
+        buffer.put("WAVE".getBytes(StandardCharsets.US_ASCII));
+        buffer.put("fmt ".getBytes(StandardCharsets.US_ASCII)).putInt(16);
+        buffer.putShort((short) 1).putShort((short) channels).putInt(sampleRate)
+                .putInt(sampleRate * channels * 2).putShort((short) (channels * 2)).putShort((short) 16);
+        buffer.put("data".getBytes(StandardCharsets.US_ASCII)).putInt(dataSize);
+        for (short sample : signal) {
+            for (int channel = 0; channel < channels; channel++) {
+                buffer.putShort(sample);
+            }
+        }
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(buffer.array());
+        }
+        return file;
+    }
+
+    @Test
+    public void testFilterBankCsv() throws IOException {
+        // 3.5 s of 1000 Hz at 90 dB, the last half second is not a complete window
+        File wave = writeWave(folder.newFile("sine.wav"), 48000, 2,
+                Window.makeSinWave(48000, 3.5, PEAK_90DB, 1000));
+        AudioFileAnalyzer analyzer = new AudioFileAnalyzer();
+        analyzer.setMethod(AudioFileAnalyzer.METHOD.FILTER);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (AudioFileReader reader = new AudioFileReader(wave)) {
+            assertEquals(48000, reader.getSampleRate());
+            assertEquals(2, reader.getChannels());
+            assertEquals(3, analyzer.analyze(reader, outputStream));
+        }
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(outputStream.toByteArray()), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        assertEquals(4, lines.size());
+        List<String> header = Arrays.asList(lines.get(0).split(","));
+        int column1000Hz = header.indexOf("1000.0");
+        // The first window contains the filters transient response
+        String[] lastWindow = lines.get(3).split(",");
+        assertEquals(2.0, Double.parseDouble(lastWindow[0]), 1e-6);
+        assertEquals(90, Double.parseDouble(lastWindow[column1000Hz]), 0.1);
+        assertEquals(90, Double.parseDouble(lastWindow[1]), 0.1);
+    }
+
+    @Test
+    public void testTruncatedFormatChunk() throws IOException {
+        File wave = writeWave(folder.newFile("truncated.wav"), 44100, 1,
+                Window.makeSinWave(44100, 0.1, PEAK_90DB, 1000));
+        // Declare a fmt chunk of 12 bytes instead of 16
+        try (RandomAccessFile file = new RandomAccessFile(wave, "rw")) {
+            file.seek(16);
+            file.write(new byte[]{12, 0, 0, 0});
+        }
+        try {
+            new AudioFileReader(wave).close();
+            fail("A fmt chunk shorter than 16 bytes must be rejected");
+        } catch (IOException ex) {
+            assertEquals("Invalid fmt chunk", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testFFTBinary() throws IOException {
+        short[] signal = Window.makeSinWave(44100, 2, PEAK_90DB, 1000);
+        ByteBuffer raw = ByteBuffer.allocate(signal.length * 2).order(ByteOrder.BIG_ENDIAN);
+        raw.asShortBuffer().put(signal);
+        File rawFile = folder.newFile("sine.raw");
+        try (FileOutputStream outputStream = new FileOutputStream(rawFile)) {
+            outputStream.write(raw.array());
+        }
+        AudioFileAnalyzer analyzer = new AudioFileAnalyzer();
+        analyzer.setFormat(AudioFileAnalyzer.FORMAT.BINARY);
+        analyzer.setWindowTime(0.5);
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (AudioFileReader reader = new AudioFileReader(rawFile, 44100, ByteOrder.BIG_ENDIAN)) {
+            assertEquals(4, analyzer.analyze(reader, outputStream));
+        }
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
+        byte[] magic = new byte[4];
+        input.readFully(magic);
+        assertArrayEquals("NCLV".getBytes(StandardCharsets.US_ASCII), magic);
+        assertEquals(AudioFileAnalyzer.BINARY_VERSION, input.readInt());
+        assertEquals(44100, input.readInt());
+        assertEquals(0.5, input.readDouble(), 0);
+        double[] frequencies = new double[input.readInt()];
+        for (int i = 0; i < frequencies.length; i++) {
+            frequencies[i] = input.readDouble();
+        }
+        int band1000Hz = Arrays.binarySearch(frequencies, 1000);
+        for (int window = 0; window < 4; window++) {
+            assertEquals(window * 0.5, input.readDouble(), 1e-9);
+            float lAeq = input.readFloat();
+            float[] spl = new float[frequencies.length];
+            for (int i = 0; i < spl.length; i++) {
+                spl[i] = input.readFloat();
+            }
+            assertEquals(90, spl[band1000Hz], 0.1);
+            if (window > 0) {
+                assertEquals(90, lAeq, 0.1);
+            }
+        }
+        assertEquals(-1, input.read());
+    }
+
+    @Test
+    public void testBatch() throws IOException, InterruptedException {
+        File inputDirectory = folder.newFolder("recordings");
+        File subDirectory = new File(inputDirectory, "day2");
+        assertTrue(subDirectory.mkdir());
+        short[] signal = Window.makeSinWave(44100, 2, PEAK_90DB, 1000);
+        writeWave(new File(inputDirectory, "a.wav"), 44100, 1, signal);
+        writeWave(new File(subDirectory, "b.wav"), 44100, 1, signal);
+        try (FileOutputStream outputStream = new FileOutputStream(new File(inputDirectory, "corrupted.wav"))) {
+            outputStream.write(new byte[]{1, 2, 3});
+        }
+        List<File> inputs = AudioBatchAnalyzer.listInputs(inputDirectory);
+        assertEquals(3, inputs.size());
+        AudioBatchAnalyzer batchAnalyzer = new AudioBatchAnalyzer(new AudioFileAnalyzer());
+        batchAnalyzer.setWorkers(2);
+        final List<File> progress = new ArrayList<>();
+        batchAnalyzer.setProgressListener(new AudioBatchAnalyzer.ProgressListener() {
+            @Override
+            public void onFileProcessed(AudioBatchAnalyzer.FileResult fileResult,
+                                        AudioBatchAnalyzer.BatchResult batchResult) {
+                progress.add(fileResult.getInput());
+            }
+        });
+        File outputDirectory = new File(folder.getRoot(), "levels");
+        AudioBatchAnalyzer.BatchResult result = batchAnalyzer.run(inputs, outputDirectory);
+        assertEquals(3, result.getProcessedFiles());
+        assertEquals(3, progress.size());
+        assertEquals(4.0, result.getAudioSeconds(), 1e-9);
+        assertEquals(Collections.singleton(new File(inputDirectory, "corrupted.wav")),
+                result.getFailures().keySet());
+        assertTrue(new File(outputDirectory, "a.wav.csv").isFile());
+        assertTrue(new File(outputDirectory, "day2/b.wav.csv").isFile());
+        assertFalse(new File(outputDirectory, "corrupted.wav.csv").exists());
+    }
+
+    @Test
+    public void testBatchSameFileNames() throws IOException, InterruptedException {
+        File inputDirectory = folder.newFolder("archive");
+        File device1 = new File(inputDirectory, "device1");
+        File device2 = new File(inputDirectory, "device2");
+        assertTrue(device1.mkdir());
+        assertTrue(device2.mkdir());
+        short[] signal = Window.makeSinWave(44100, 1, PEAK_90DB, 1000);
+        short[] quietSignal = Window.makeSinWave(44100, 1, PEAK_90DB / 10, 1000);
+        writeRaw(new File(device1, "x.raw"), signal);
+        writeRaw(new File(device2, "x.raw"), quietSignal);
+        writeWave(new File(device2, "x.wav"), 44100, 1, signal);
+        AudioFileAnalyzer analyzer = new AudioFileAnalyzer();
+        analyzer.setRawSampleRate(44100);
+        AudioBatchAnalyzer batchAnalyzer = new AudioBatchAnalyzer(analyzer);
+        File outputDirectory = new File(folder.getRoot(), "levels");
+        List<File> inputs = AudioBatchAnalyzer.listInputs(inputDirectory);
+        assertEquals(3, inputs.size());
+        AudioBatchAnalyzer.BatchResult result = batchAnalyzer.run(inputs, outputDirectory);
+        assertTrue(result.getFailures().isEmpty());
+        File output1 = new File(outputDirectory, "device1/x.raw.csv");
+        File output2 = new File(outputDirectory, "device2/x.raw.csv");
+        assertTrue(output1.isFile());
+        assertTrue(output2.isFile());
+        assertTrue(new File(outputDirectory, "device2/x.wav.csv").isFile());
+        // Each output belongs to its own input
+        assertFalse(Arrays.equals(Files.readAllBytes(output1.toPath()),
+                Files.readAllBytes(output2.toPath())));
+        // The same input twice can not be written
+        try {
+            batchAnalyzer.run(Arrays.asList(new File(device1, "x.raw"), new File(device1, "x.raw")),
+                    outputDirectory);
+            fail("Duplicated input must be rejected");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBatchManifestParentDirectory() throws IOException, InterruptedException {
+        File root = folder.newFolder("sites");
+        File site1 = new File(root, "site1");
+        File site2 = new File(root, "site2");
+        assertTrue(site1.mkdir());
+        assertTrue(site2.mkdir());
+        short[] signal = Window.makeSinWave(44100, 1, PEAK_90DB, 1000);
+        writeWave(new File(site1, "local.wav"), 44100, 1, signal);
+        writeWave(new File(site2, "x.wav"), 44100, 1, signal);
+        File manifest = new File(site1, "manifest.txt");
+        try (FileOutputStream outputStream = new FileOutputStream(manifest)) {
+            outputStream.write("local.wav\n../site2/x.wav\n".getBytes(StandardCharsets.UTF_8));
+        }
+        List<File> inputs = AudioBatchAnalyzer.listInputs(manifest);
+        assertEquals(root.getCanonicalFile(), AudioBatchAnalyzer.getCommonDirectory(inputs)
+                .getCanonicalFile());
+        AudioBatchAnalyzer batchAnalyzer = new AudioBatchAnalyzer(new AudioFileAnalyzer());
+        File outputDirectory = new File(folder.getRoot(), "levels");
+        AudioBatchAnalyzer.BatchResult result = batchAnalyzer.run(inputs, outputDirectory);
+        assertTrue(result.getFailures().isEmpty());
+        assertTrue(new File(outputDirectory, "site1/local.wav.csv").isFile());
+        assertTrue(new File(outputDirectory, "site2/x.wav.csv").isFile());
+        // Nothing is written next to the inputs
+        assertFalse(new File(site2, "x.wav.csv").exists());
+        // An input out of the input directory has no output
+        try {
+            batchAnalyzer.getOutputFile(new File(site1, "../site2/x.wav"), site1, outputDirectory);
+            fail("The output must be in the output directory");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    private static void writeRaw(File file, short[] signal) throws IOException {
+        ByteBuffer raw = ByteBuffer.allocate(signal.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        raw.asShortBuffer().put(signal);
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            outputStream.write(raw.array());
+        }
+    }
+}
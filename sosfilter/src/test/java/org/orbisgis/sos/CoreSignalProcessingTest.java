@@ -28,11 +28,17 @@
 package org.orbisgis.sos;
 
 import org.junit.Assert;
+import org.apache.commons.math3.stat.descriptive.rank.Percentile;
 import org.junit.Test;
 
 import java.io.InputStream;
 import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
 import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
 
 import static org.junit.Assert.assertEquals;
 
@@ -117,4 +123,475 @@ public class CoreSignalProcessingTest {
         assertEquals(0, classRangesValues.get(3), 0.01);  // [65-75)
         assertEquals(0, classRangesValues.get(4), 0.01);    // > 75
     }
-}
\ No newline at end of file
+
+    /**
+     * The histogram percentiles must be the same as the percentiles of the class levels
+     */
+    @Test
+    public void testLeqStatsPercentile() {
+        Random random = new Random(1);
+        LeqStats leqStats = new LeqStats();
+        double[] classLevels = new double[5000];
+        for (int i = 0; i < classLevels.length; i++) {
+            // include negative levels and a wide range in order to grow the histogram both ways
+            double leq = (i % 2 == 0 ? 40 : -10) + random.nextGaussian() * 15;
+            leqStats.addLeq(leq);
+            classLevels[i] = ((int) (leq / 0.1)) * 0.1;
+            if (i == 0 || i == 1 || i == 100 || i == classLevels.length - 1) {
+                Percentile percentile = new Percentile();
+                percentile.setData(Arrays.copyOf(classLevels, i + 1));
+                for (double p : new double[]{1, 10, 50, 90, 99, 100}) {
+                    assertEquals(percentile.evaluate(p), leqStats.computePercentile(p), 1e-9);
+                }
+            }
+        }
+        double[][] classRanges = new double[][]{{Double.MIN_VALUE, 45}, {45, 55}, {55, 65}, {65, 75},{75, Double.MAX_VALUE}};
+        List<Double> occurrences = leqStats.computeLeqOccurrences(classRanges).getUserDefinedOccurrences();
+        for (int idRange = 0; idRange < classRanges.length; idRange++) {
+            int count = 0;
+            for (double classLevel : classLevels) {
+                if (classLevel >= classRanges[idRange][0] && classLevel < classRanges[idRange][1]) {
+                    count++;
+                }
+            }
+            assertEquals(count / (double) classLevels.length, occurrences.get(idRange), 1e-12);
+        }
+        assertEquals(Double.NaN, new LeqStats().computePercentile(50), 0);
+    }
+
+    private static void assertSameStats(LeqStats expected, LeqStats actual) {
+        double[][] classRanges = new double[][]{{Double.MIN_VALUE, 45}, {45, 55}, {55, 65}, {65, 75},{75, Double.MAX_VALUE}};
+        assertEquals(expected.getLeqCount(), actual.getLeqCount());
+        assertEquals(expected.getLeqMin(), actual.getLeqMin(), 0);
+        assertEquals(expected.getLeqMax(), actual.getLeqMax(), 0);
+        // Energy sums are added in a different order
+        assertEquals(expected.getLeqMean(), actual.getLeqMean(), 1e-9);
+        for (double p : new double[]{1, 10, 50, 90, 99, 100}) {
+            assertEquals(expected.computePercentile(p), actual.computePercentile(p), 0);
+        }
+        assertEquals(expected.computeLeqOccurrences(classRanges).getUserDefinedOccurrences(),
+                actual.computeLeqOccurrences(classRanges).getUserDefinedOccurrences());
+    }
+
+    private static double[] makeLevels(int count) {
+        Random random = new Random(2);
+        double[] levels = new double[count];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = 55 + random.nextGaussian() * 10;
+        }
+        return levels;
+    }
+
+    @Test
+    public void testLeqStatsMerge() {
+        double[] levels = makeLevels(10000);
+        LeqStats singlePass = new LeqStats();
+        for (double leq : levels) {
+            singlePass.addLeq(leq);
+        }
+        // Partitions of different sizes, and an empty one
+        int[] bounds = new int[]{0, 10, 10, 4000, 10000};
+        LeqStats merged = new LeqStats();
+        for (int i = 0; i < bounds.length - 1; i++) {
+            LeqStats partition = new LeqStats();
+            for (int idLevel = bounds[i]; idLevel < bounds[i + 1]; idLevel++) {
+                partition.addLeq(levels[idLevel]);
+            }
+            merged.merge(partition);
+        }
+        assertSameStats(singlePass, merged);
+        assertEquals(singlePass.getLastLeq(), merged.getLastLeq(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLeqStatsMergeClassStep() {
+        new LeqStats(0.1).merge(new LeqStats(0.01));
+    }
+
+    @Test
+    public void testConcurrentLeqStats() throws InterruptedException {
+        final double[] levels = makeLevels(40000);
+        LeqStats singlePass = new LeqStats();
+        for (double leq : levels) {
+            singlePass.addLeq(leq);
+        }
+        final ConcurrentLeqStats concurrentLeqStats = new ConcurrentLeqStats();
+        final int threadCount = 4;
+        Thread[] threads = new Thread[threadCount];
+        for (int idThread = 0; idThread < threadCount; idThread++) {
+            final int first = idThread;
+            threads[idThread] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int idLevel = first; idLevel < levels.length; idLevel += threadCount) {
+                        concurrentLeqStats.addLeq(levels[idLevel]);
+                    }
+                }
+            });
+            threads[idThread].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertSameStats(singlePass, concurrentLeqStats.toLeqStats());
+    }
+
+    @Test
+    public void testSlidingLeqStats() {
+        double[] levels = makeLevels(3000);
+        final int windowLength = 200;
+        SlidingLeqStats slidingLeqStats = new SlidingLeqStats(windowLength);
+        assertEquals(Double.NaN, slidingLeqStats.computePercentile(50), 0);
+        for (int idLevel = 0; idLevel < levels.length; idLevel++) {
+            slidingLeqStats.addLeq(levels[idLevel]);
+            if (idLevel % 7 == 0 || idLevel < 5) {
+                LeqStats expected = new LeqStats();
+                for (int i = Math.max(0, idLevel - windowLength + 1); i <= idLevel; i++) {
+                    expected.addLeq(levels[i]);
+                }
+                assertEquals(expected.getLeqCount(), slidingLeqStats.getLeqCount());
+                assertEquals(expected.getLeqMin(), slidingLeqStats.getLeqMin(), 0);
+                assertEquals(expected.getLeqMax(), slidingLeqStats.getLeqMax(), 0);
+                assertEquals(expected.getLeqMean(), slidingLeqStats.getLeqMean(), 1e-9);
+                for (double p : new double[]{1, 10, 50, 90, 99, 100}) {
+                    assertEquals(expected.computePercentile(p), slidingLeqStats.computePercentile(p), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDecibelMath() {
+        assertEquals(false, DecibelMath.isFastMath());
+        // Default conversions are exactly the Math ones
+        assertEquals(10 * Math.log10(0.123), DecibelMath.toDecibel(0.123), 0);
+        assertEquals(Math.pow(10, 87.3 / 10), DecibelMath.toEnergy(87.3), 0);
+        double maxLevelError = 0;
+        double maxEnergyError = 0;
+        for (double level = 0; level <= 140; level += 0.0013) {
+            double energy = Math.pow(10, level / 10);
+            maxLevelError = Math.max(maxLevelError,
+                    Math.abs(10 * DecibelMath.fastLog10(energy) - level));
+            maxEnergyError = Math.max(maxEnergyError,
+                    Math.abs(10 * Math.log10(DecibelMath.fastPow10(level / 10) / energy)));
+            // Energies of the normalised signal are below 0 dB FS
+            double fsEnergy = energy * 1e-14;
+            maxLevelError = Math.max(maxLevelError, Math.abs(10 * DecibelMath.fastLog10(fsEnergy) -
+                    10 * Math.log10(fsEnergy)));
+        }
+        assertEquals(0, maxLevelError, 1e-9);
+        assertEquals(0, maxEnergyError, 1e-12);
+        assertEquals(Double.NEGATIVE_INFINITY, DecibelMath.fastLog10(0), 0);
+        assertEquals(Double.NaN, DecibelMath.fastLog10(-1), 0);
+        assertEquals(Double.POSITIVE_INFINITY, DecibelMath.fastLog10(Double.POSITIVE_INFINITY), 0);
+        assertEquals(Math.log10(Double.MIN_VALUE), DecibelMath.fastLog10(Double.MIN_VALUE), 0);
+        assertEquals(0, DecibelMath.fastPow10(-400), 0);
+        assertEquals(Double.POSITIVE_INFINITY, DecibelMath.fastPow10(400), 0);
+        assertEquals(Double.NaN, DecibelMath.fastPow10(Double.NaN), 0);
+        assertEquals(1, DecibelMath.fastPow10(0), 0);
+        try {
+            DecibelMath.setFastMath(true);
+            assertEquals(true, DecibelMath.isFastMath());
+            assertEquals(10 * DecibelMath.fastLog10(0.123), DecibelMath.toDecibel(0.123), 0);
+            assertEquals(DecibelMath.fastPow10(8.73), DecibelMath.toEnergy(87.3), 0);
+            LeqStats leqStats = new LeqStats();
+            LeqStats reference = new LeqStats();
+            for (double level : makeLevels(1000)) {
+                leqStats.addLeq(level);
+                reference.addLeq(level, Math.pow(10, level / 10));
+            }
+            assertEquals(reference.getLeqMean(), leqStats.getLeqMean(), 1e-9);
+        } finally {
+            DecibelMath.setFastMath(false);
+        }
+    }
+
+    @Test
+    public void testToneDetector() {
+        final int sampleRate = 44100;
+        final double[] frequencies = new double[]{250, 1000, 4000};
+        final double[] expectedLevels = new double[]{80, 94, 70};
+        float[] signal = new float[sampleRate];
+        for (int idTone = 0; idTone < frequencies.length; idTone++) {
+            double amplitude = Math.sqrt(2) * Math.pow(10,
+                    (expectedLevels[idTone] - FFTSignalProcessing.DB_FS_REFERENCE) / 20);
+            for (int i = 0; i < signal.length; i++) {
+                signal[i] += (float) (amplitude * Math.sin(2 * Math.PI * frequencies[idTone] * i
+                        / sampleRate + idTone));
+            }
+        }
+        // 100 ms blocks, 10 Hz resolution
+        ToneDetector toneDetector = new ToneDetector(sampleRate, frequencies, sampleRate / 10,
+                FFTSignalProcessing.DB_FS_REFERENCE);
+        final List<double[]> blockLevels = new ArrayList<double[]>();
+        toneDetector.setListener(new ToneDetector.ToneListener() {
+            @Override
+            public void onTones(ToneDetector detector) {
+                blockLevels.add(detector.getLevels());
+            }
+        });
+        // Chunks not aligned on the blocks
+        int cursor = 0;
+        while (cursor < signal.length) {
+            int length = Math.min(signal.length - cursor, 1500);
+            toneDetector.pushSamples(signal, cursor, length);
+            cursor += length;
+        }
+        assertEquals(10, toneDetector.getBlockCount());
+        assertEquals(10, blockLevels.size());
+        for (double[] levels : blockLevels) {
+            Assert.assertArrayEquals(expectedLevels, levels, 0.05);
+        }
+        double expectedLeq = 10 * Math.log10(Math.pow(10, 8) + Math.pow(10, 9.4) + Math.pow(10, 7));
+        assertEquals(expectedLeq, toneDetector.getLeq(), 0.05);
+        toneDetector.setAWeighting(true);
+        assertEquals(94, toneDetector.getLevels()[1], 0.05);
+        assertEquals(80 + FractionalOctaveBands.getAWeighting(250), toneDetector.getLevels()[0], 0.05);
+        // A tone between the tracked frequencies is rejected
+        ToneDetector rejection = new ToneDetector(sampleRate, new double[]{500}, sampleRate / 10,
+                FFTSignalProcessing.DB_FS_REFERENCE);
+        rejection.pushSamples(signal);
+        Assert.assertTrue(rejection.getLevels()[0] < 0);
+    }
+
+    @Test
+    public void testNoiseEventDetector() {
+        final double frame = AcousticIndicators.TIMEPERIOD_FAST;
+        NoiseEventDetector detector = new NoiseEventDetector(frame, 65, 5, 0.5, true);
+        final List<NoiseEventDetector.NoiseEvent> events = new ArrayList<>();
+        detector.setListener(new NoiseEventDetector.NoiseEventListener() {
+            @Override
+            public void onNoiseEvent(NoiseEventDetector.NoiseEvent event) {
+                events.add(event);
+            }
+        });
+        List<Double> levels = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            levels.add(50.);
+        }
+        // Event of 2 s with a dip above the end threshold
+        for (int i = 0; i < 16; i++) {
+            levels.add(i == 8 ? 62. : 70. + i % 3);
+        }
+        for (int i = 0; i < 8; i++) {
+            levels.add(50.);
+        }
+        // Too short
+        levels.add(80.);
+        levels.add(50.);
+        // Event still running at the end of the stream
+        levels.add(68.);
+        levels.add(68.);
+        levels.add(68.);
+        levels.add(68.);
+        for (int i = 0; i < levels.size(); i++) {
+            double level = levels.get(i);
+            FFTSignalProcessing.ProcessingResult result = new FFTSignalProcessing.ProcessingResult(
+                    i * 5512, new double[0], new double[]{level - 3, level - 10}, level);
+            result.setWindowLaeq(level);
+            detector.addResult(result);
+        }
+        assertEquals(1, events.size());
+        assertEquals(true, detector.isInEvent());
+        NoiseEventDetector.NoiseEvent last = detector.flush();
+        assertEquals(2, events.size());
+        Assert.assertSame(last, events.get(1));
+        NoiseEventDetector.NoiseEvent event = events.get(0);
+        assertEquals(8 * frame, event.getStartTime(), 1e-9);
+        assertEquals(16 * frame, event.getDuration(), 1e-9);
+        assertEquals(8 * 5512, event.getStartId());
+        assertEquals(72, event.getMax(), 0);
+        double energy = 0;
+        for (int i = 8; i < 24; i++) {
+            energy += Math.pow(10, levels.get(i) / 10);
+        }
+        assertEquals(10 * Math.log10(energy / 16), event.getLeq(), 1e-9);
+        assertEquals(10 * Math.log10(energy * frame), event.getSel(), 1e-9);
+        assertEquals(event.getLeq() + 10 * Math.log10(event.getDuration()), event.getSel(), 1e-9);
+        assertEquals(event.getLeq() - 3, event.getSpectrum()[0], 1e-4);
+        assertEquals(event.getLeq() - 10, event.getSpectrum()[1], 1e-4);
+        assertEquals(4 * frame, last.getDuration(), 1e-9);
+        assertEquals(68, last.getLeq(), 1e-9);
+        // Levels only, same events
+        NoiseEventDetector levelDetector = new NoiseEventDetector(frame, 65, 5, 0.5, true);
+        int eventCount = 0;
+        for (double level : levels) {
+            NoiseEventDetector.NoiseEvent ended = levelDetector.addLevel(level);
+            if (ended != null) {
+                assertEquals(event.getSel(), ended.getSel(), 1e-9);
+                Assert.assertNull(ended.getSpectrum());
+                eventCount++;
+            }
+        }
+        assertEquals(1, eventCount);
+        assertEquals(1, levelDetector.getEventCount());
+    }
+
+    @Test
+    public void testLdenAccumulator() {
+        TimeZone paris = TimeZone.getTimeZone("Europe/Paris");
+        LdenAccumulator lden = new LdenAccumulator(paris);
+        Calendar calendar = Calendar.getInstance(paris);
+        calendar.clear();
+        // Two days including the spring daylight saving time transition (23 hours day)
+        calendar.set(2024, Calendar.MARCH, 30, 0, 0, 0);
+        long begin = calendar.getTimeInMillis();
+        calendar.set(2024, Calendar.APRIL, 1, 0, 0, 0);
+        long end = calendar.getTimeInMillis();
+        assertEquals(47 * 3600000L, end - begin);
+        for (long time = begin; time < end; time += 60000) {
+            calendar.setTimeInMillis(time);
+            int hour = calendar.get(Calendar.HOUR_OF_DAY);
+            lden.addLeq(time, hour >= 7 && hour < 19 ? 60 : hour >= 19 && hour < 23 ? 55 : 50);
+        }
+        assertEquals(2 * 12 * 60, lden.getDuration(LdenAccumulator.DAY), 0);
+        assertEquals(2 * 4 * 60, lden.getDuration(LdenAccumulator.EVENING), 0);
+        assertEquals(15 * 60, lden.getDuration(LdenAccumulator.NIGHT), 0);
+        assertEquals(60, lden.getLday(), 1e-9);
+        assertEquals(55, lden.getLevening(), 1e-9);
+        assertEquals(50, lden.getLnight(), 1e-9);
+        // Penalties of 5 and 10 dB give the same energy on the 3 periods
+        assertEquals(60, lden.getLden(), 1e-9);
+        calendar.set(2024, Calendar.MARCH, 31, 6, 59, 59);
+        assertEquals(LdenAccumulator.NIGHT, lden.getPeriod(calendar.getTimeInMillis()));
+        calendar.set(2024, Calendar.MARCH, 31, 7, 0, 0);
+        assertEquals(LdenAccumulator.DAY, lden.getPeriod(calendar.getTimeInMillis()));
+        // Unordered values of several time zones, partitioned then merged, against the hour of
+        // each value
+        Random random = new Random(42);
+        for (String zone : new String[]{"America/New_York", "Australia/Lord_Howe", "UTC"}) {
+            TimeZone timeZone = TimeZone.getTimeZone(zone);
+            Calendar zoneCalendar = Calendar.getInstance(timeZone);
+            LdenAccumulator[] partitions = new LdenAccumulator[]{new LdenAccumulator(timeZone),
+                    new LdenAccumulator(timeZone)};
+            double[] energy = new double[3];
+            double[] count = new double[3];
+            long start = 1704067200000L;
+            for (int i = 0; i < 20000; i++) {
+                long time = start + (long) (random.nextDouble() * 365 * 86400000L);
+                double level = 40 + random.nextDouble() * 40;
+                partitions[i % 2].addLeq(time, level);
+                zoneCalendar.setTimeInMillis(time);
+                int hour = zoneCalendar.get(Calendar.HOUR_OF_DAY);
+                int period = hour >= 7 && hour < 19 ? 0 : hour >= 19 && hour < 23 ? 1 : 2;
+                energy[period] += Math.pow(10, level / 10);
+                count[period]++;
+            }
+            partitions[0].merge(partitions[1]);
+            double expected = 10 * Math.log10((12 * energy[0] / count[0] +
+                    4 * energy[1] / count[1] * Math.pow(10, 0.5) +
+                    8 * energy[2] / count[2] * 10) / 24);
+            assertEquals(count[2], partitions[0].getDuration(LdenAccumulator.NIGHT), 0);
+            assertEquals(expected, partitions[0].getLden(), 1e-9);
+        }
+        try {
+            lden.merge(new LdenAccumulator(TimeZone.getTimeZone("UTC")));
+            Assert.fail("Different time zones can not be merged");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        assertEquals(Double.NaN, new LdenAccumulator(paris).getLden(), 0);
+    }
+
+    @Test
+    public void testTonalityDetector() {
+        final int sampleRate = 44100;
+        final double windowTime = AcousticIndicators.TIMEPERIOD_FAST;
+        // White noise of 60 dB, 1 kHz tone of 60 dB, 250 Hz tone of 55 dB
+        Random random = new Random(42);
+        float[] noise = new float[3 * sampleRate];
+        float[] signal = new float[noise.length];
+        double noiseRms = Math.pow(10, (60 - FFTSignalProcessing.DB_FS_REFERENCE) / 20);
+        double amplitude1k = Math.sqrt(2) * Math.pow(10, (60 - FFTSignalProcessing.DB_FS_REFERENCE) / 20);
+        double amplitude250 = Math.sqrt(2) * Math.pow(10, (55 - FFTSignalProcessing.DB_FS_REFERENCE) / 20);
+        for (int i = 0; i < signal.length; i++) {
+            noise[i] = (float) (random.nextGaussian() * noiseRms);
+            signal[i] = (float) (noise[i] + amplitude1k * Math.sin(2 * Math.PI * 1000 * i / sampleRate)
+                    + amplitude250 * Math.sin(2 * Math.PI * 250 * i / sampleRate));
+        }
+        List<List<TonalityDetector.Tone>> tones = detectTones(signal, sampleRate, windowTime);
+        assertEquals(24, tones.size());
+        // Not persistent enough yet
+        Assert.assertTrue(tones.get(0).isEmpty());
+        Assert.assertTrue(tones.get(1).isEmpty());
+        for (int idWindow = 2; idWindow < tones.size(); idWindow++) {
+            List<TonalityDetector.Tone> windowTones = tones.get(idWindow);
+            assertEquals(2, windowTones.size());
+            TonalityDetector.Tone tone1k = windowTones.get(0);
+            assertEquals(1000, tone1k.getFrequency(), 1);
+            assertEquals(60, tone1k.getLevel(), 1);
+            Assert.assertTrue(tone1k.getProminence() > 15);
+            assertEquals(idWindow + 1, tone1k.getWindowCount());
+            TonalityDetector.Tone tone250 = windowTones.get(1);
+            assertEquals(250, tone250.getFrequency(), 1);
+            assertEquals(55, tone250.getLevel(), 1);
+            Assert.assertTrue(tone250.getProminence() > TonalityDetector.getProminenceThreshold(250));
+        }
+        // No prominent tone in the noise alone
+        for (List<TonalityDetector.Tone> windowTones : detectTones(noise, sampleRate, windowTime)) {
+            Assert.assertTrue(windowTones.isEmpty());
+        }
+        assertEquals(8, TonalityDetector.getProminenceThreshold(2000), 0);
+        assertEquals(16.33, TonalityDetector.getProminenceThreshold(100), 1e-9);
+    }
+
+    @Test
+    public void testProcessingMetricsHistogram() {
+        Random random = new Random(7);
+        for (int i = 0; i < 10000; i++) {
+            long duration = (long) Math.pow(10, random.nextDouble() * 15);
+            int index = ProcessingMetricsRecorder.getBucketIndex(duration);
+            long upperBound = ProcessingMetricsRecorder.getBucketUpperBound(index);
+            Assert.assertTrue(upperBound >= duration);
+            Assert.assertTrue(upperBound - duration <= duration /
+                    ProcessingMetricsRecorder.SUB_BUCKET_COUNT);
+            if (index > 0) {
+                Assert.assertTrue(ProcessingMetricsRecorder.getBucketUpperBound(index - 1) < duration);
+            }
+        }
+        assertEquals(Long.MAX_VALUE, ProcessingMetricsRecorder.getBucketUpperBound(
+                ProcessingMetricsRecorder.getBucketIndex(Long.MAX_VALUE)));
+        // 1 to 1000 microseconds
+        ProcessingMetricsRecorder recorder = new ProcessingMetricsRecorder();
+        for (int i = 1; i <= 1000; i++) {
+            recorder.recordDuration(ProcessingMetrics.STAGE.FFT, i * 1000L, 4096);
+        }
+        ProcessingMetricsRecorder.StageSnapshot snapshot = recorder.getSnapshot(
+                ProcessingMetrics.STAGE.FFT);
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(4096000, snapshot.getSampleCount());
+        assertEquals(500500, snapshot.getMeanTime(), 1e-6);
+        assertEquals(1000000, snapshot.getMaxTime());
+        assertEquals(500000, snapshot.getPercentileTime(50), 500000 / 16.);
+        assertEquals(990000, snapshot.getPercentileTime(99), 990000 / 16.);
+        assertEquals(1000000, snapshot.getPercentileTime(100));
+        assertEquals(4096000 / (500500e-9 * 1000), snapshot.getThroughput(), 1e-3);
+        assertEquals(0, recorder.getSnapshot(ProcessingMetrics.STAGE.DECIMATION)
+                .getPercentileTime(50));
+        assertEquals(1, recorder.getSnapshots().size());
+    }
+
+    private static List<List<TonalityDetector.Tone>> detectTones(float[] signal, int sampleRate,
+                                                                 double windowTime) {
+        final TonalityDetector detector = new TonalityDetector(
+                sampleRate / (double) (int) (sampleRate * windowTime), 50, 10000, 3, 4);
+        final List<List<TonalityDetector.Tone>> tones = new ArrayList<>();
+        Window window = new Window(FFTSignalProcessing.WINDOW_TYPE.HANN, sampleRate,
+                FFTSignalProcessing.computeFFTCenterFrequency(16000), windowTime, false,
+                FFTSignalProcessing.DB_FS_REFERENCE, true);
+        window.setListener(new Window.WindowListener() {
+            @Override
+            public void onWindow(Window window) {
+                tones.add(detector.processResult(window.getLastWindowMean()));
+                window.cleanWindows();
+            }
+        });
+        int cursor = 0;
+        while (cursor < signal.length) {
+            int length = Math.min(signal.length - cursor, window.getMaximalBufferSize());
+            window.pushSample(Arrays.copyOfRange(signal, cursor, cursor + length));
+            cursor += length;
+        }
+        return tones;
+    }
+}
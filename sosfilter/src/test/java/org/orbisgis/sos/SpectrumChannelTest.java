@@ -4,9 +4,15 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 
 import junit.framework.TestCase;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class SpectrumChannelTest extends TestCase {
 
@@ -74,4 +80,538 @@ public class SpectrumChannelTest extends TestCase {
         double LCeq = spectrumChannel.processSamplesWeightC(signal);
         assertEquals(expectedBC, LCeq, 0.01);
     }
-}
\ No newline at end of file
+
+    public void testPcmBufferInput() throws IOException {
+        short[] pcm;
+        try(InputStream inputStream = SpectrumChannelTest.class.getResourceAsStream(
+                "speak_44100Hz_16bitsPCM_10s.raw")) {
+            assert inputStream != null;
+            pcm = Arrays.copyOf(Window.loadShortStream(inputStream, ByteOrder.LITTLE_ENDIAN), 44100);
+        }
+        ConfigurationSpectrumChannel configuration = FilterDesignCache.loadThirdOctaveConfiguration(44100);
+        SpectrumChannel floatChannel = new SpectrumChannel(1);
+        floatChannel.loadConfiguration(configuration, true);
+        double[] expected = floatChannel.processSamples(Window.convertShortToFloat(pcm));
+        SpectrumChannel shortChannel = new SpectrumChannel(1);
+        shortChannel.loadConfiguration(configuration, true);
+        ShortBuffer shortBuffer = ShortBuffer.wrap(pcm);
+        assertTrue(Arrays.equals(expected, shortChannel.processSamples(shortBuffer)));
+        assertEquals(0, shortBuffer.remaining());
+        SpectrumChannel byteChannel = new SpectrumChannel(1);
+        byteChannel.loadConfiguration(configuration, true);
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(pcm.length * 2).order(ByteOrder.BIG_ENDIAN);
+        byteBuffer.asShortBuffer().put(pcm);
+        assertTrue(Arrays.equals(expected, byteChannel.processSamples(byteBuffer)));
+        assertEquals(0, byteBuffer.remaining());
+    }
+
+    public void testInterleavedChannels() throws IOException {
+        float[] speak;
+        try(InputStream inputStream = SpectrumChannelTest.class.getResourceAsStream(
+                "speak_44100Hz_16bitsPCM_10s.raw")) {
+            assert inputStream != null;
+            speak = Window.convertShortToFloat(Arrays.copyOf(
+                    Window.loadShortStream(inputStream, ByteOrder.LITTLE_ENDIAN), 44100 * 2));
+        }
+        float[] noise = Window.convertShortToFloat(Window.makeWhiteNoise(speak.length,
+                (short) 2500, 1));
+        float[] interleaved = new float[speak.length * 2];
+        for (int i = 0; i < speak.length; i++) {
+            interleaved[i * 2] = speak[i];
+            interleaved[i * 2 + 1] = noise[i];
+        }
+        ConfigurationSpectrumChannel configuration = FilterDesignCache.loadThirdOctaveConfiguration(44100);
+        SpectrumChannel speakChannel = new SpectrumChannel(1);
+        speakChannel.loadConfiguration(configuration, true);
+        SpectrumChannel noiseChannel = new SpectrumChannel(1);
+        noiseChannel.loadConfiguration(configuration, true);
+        SpectrumChannel stereo = new SpectrumChannel(2);
+        stereo.loadConfiguration(configuration, true);
+        try {
+            // One second at a time, filters state of each channel is kept between calls
+            for (int start = 0; start < speak.length; start += 44100) {
+                double[] expectedSpeak = speakChannel.processSamples(
+                        Arrays.copyOfRange(speak, start, start + 44100));
+                double[] expectedNoise = noiseChannel.processSamples(
+                        Arrays.copyOfRange(noise, start, start + 44100));
+                double[][] got = stereo.processInterleavedSamples(
+                        Arrays.copyOfRange(interleaved, start * 2, (start + 44100) * 2), 2);
+                assertEquals(2, got.length);
+                assertTrue(Arrays.equals(expectedSpeak, got[0]));
+                assertTrue(Arrays.equals(expectedNoise, got[1]));
+                double[] combined = SpectrumChannel.getCombinedLeqs(got);
+                for (int band = 0; band < combined.length; band++) {
+                    assertEquals(10 * Math.log10((Math.pow(10, expectedSpeak[band] / 10) +
+                            Math.pow(10, expectedNoise[band] / 10)) / 2), combined[band], 1e-9);
+                }
+            }
+        } finally {
+            stereo.close();
+        }
+        try {
+            stereo.processInterleavedSamples(new float[3], 2);
+            fail("Incomplete frame must be rejected");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    public void testHalfBandDecimation() throws IOException {
+        HalfBandDecimator decimator = new HalfBandDecimator();
+        // Pass band and stop band around half the Nyquist frequency
+        for (double frequency = 0; frequency <= 0.47; frequency += 0.001) {
+            assertEquals(0, 20 * Math.log10(decimator.getResponse(frequency)), 0.01);
+        }
+        for (double frequency = 0.53; frequency <= 1; frequency += 0.001) {
+            assertTrue(20 * Math.log10(Math.abs(decimator.getResponse(frequency))) < -60);
+        }
+        float[] signal;
+        try(InputStream inputStream = SpectrumChannelTest.class.getResourceAsStream(
+                "pinknoise_1s.raw")) {
+            assert inputStream != null;
+            signal = Window.convertShortToFloat(
+                    Window.loadShortStream(inputStream, ByteOrder.LITTLE_ENDIAN));
+        }
+        ConfigurationSpectrumChannel configuration = FilterDesignCache.loadThirdOctaveConfiguration(44100);
+        SpectrumChannel iir = new SpectrumChannel(1);
+        iir.loadConfiguration(configuration, true);
+        SpectrumChannel halfBand = new SpectrumChannel(1);
+        halfBand.loadConfiguration(configuration, true, SpectrumChannel.DECIMATION_TYPE.HALF_BAND);
+        SpectrumChannel stereoHalfBand = new SpectrumChannel(1);
+        stereoHalfBand.loadConfiguration(configuration, true,
+                SpectrumChannel.DECIMATION_TYPE.HALF_BAND);
+        float[] interleaved = new float[signal.length * 2];
+        for (int i = 0; i < signal.length; i++) {
+            interleaved[i * 2] = signal[i];
+            interleaved[i * 2 + 1] = signal[i];
+        }
+        double[] expected = null;
+        double[] got = null;
+        double[][] stereo = null;
+        // The second pass is compared, filters are in steady state
+        for (int pass = 0; pass < 2; pass++) {
+            expected = iir.processSamples(signal);
+            got = halfBand.processSamples(signal);
+            stereo = stereoHalfBand.processInterleavedSamples(interleaved, 2);
+        }
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], got[i], 0.01);
+        }
+        assertTrue(Arrays.equals(got, stereo[0]));
+        assertTrue(Arrays.equals(got, stereo[1]));
+        // Narrow bands ending in the transition band of a decimator are not attenuated
+        final double expectedLeq = -3;
+        for (int sampleRate : new int[]{44100, 48000}) {
+            ConfigurationSpectrumChannel twelfth = FilterDesignCache.loadConfiguration(sampleRate,
+                    FractionalOctaveBands.TWELFTH_OCTAVE);
+            try (SpectrumChannel twelfthHalfBand = new SpectrumChannel(1)) {
+                twelfthHalfBand.loadConfiguration(twelfth, true,
+                        SpectrumChannel.DECIMATION_TYPE.HALF_BAND);
+                // Half a second of warm up, then half a second of measurement
+                final int length = sampleRate / 2 / twelfthHalfBand.getMinimumSamplesLength()
+                        * twelfthHalfBand.getMinimumSamplesLength();
+                for (int band = 0; band < twelfth.getBandpass().size(); band++) {
+                    ConfigurationBiquad biquad = twelfth.getBandpass().get(band);
+                    if (biquad.getSubsamplingDepth() == 0 || biquad.getCenterFrequency() < 250) {
+                        continue;
+                    }
+                    float[] tone = Window.makeFloatSinWave(sampleRate, 1.0,
+                            Math.pow(10, expectedLeq / 20.0), biquad.getCenterFrequency());
+                    twelfthHalfBand.processSamples(Arrays.copyOfRange(tone, 0, length));
+                    double[] bandsLeq = twelfthHalfBand.processSamples(
+                            Arrays.copyOfRange(tone, length, 2 * length));
+                    assertEquals(biquad.getCenterFrequency() + " Hz at " + sampleRate + " Hz",
+                            expectedLeq, bandsLeq[band], 0.1);
+                }
+            }
+        }
+    }
+
+    public void testParallelismSameResult() throws IOException {
+        float[] signal;
+        try(InputStream inputStream = SpectrumChannelTest.class.getResourceAsStream(
+                "speak_44100Hz_16bitsPCM_10s.raw")) {
+            assert inputStream != null;
+            signal = Window.convertShortToFloat(
+                    Window.loadShortStream(inputStream, ByteOrder.LITTLE_ENDIAN));
+        }
+        ConfigurationSpectrumChannel configuration;
+        try (InputStream s = SpectrumChannel.class.getResourceAsStream(
+                "config_44100_third_octave.json")) {
+            ObjectMapper objectMapper = new ObjectMapper();
+            configuration = objectMapper.readValue(s, ConfigurationSpectrumChannel.class);
+        }
+        SpectrumChannel inline = new SpectrumChannel(1);
+        inline.loadConfiguration(configuration, true);
+        SpectrumChannel parallel = new SpectrumChannel(4);
+        parallel.loadConfiguration(configuration, true);
+        try {
+            // Process one second at a time, filters state is kept between calls
+            for (int start = 0; start + 44100 <= signal.length; start += 44100) {
+                float[] second = Arrays.copyOfRange(signal, start, start + 44100);
+                double[] expected = inline.processSamples(second);
+                double[] got = parallel.processSamples(second);
+                assertEquals(expected.length, got.length);
+                for (int i = 0; i < expected.length; i++) {
+                    assertEquals(expected[i], got[i], 0);
+                }
+            }
+        } finally {
+            inline.close();
+            parallel.close();
+        }
+        try {
+            parallel.processSamples(signal);
+            fail("Closed SpectrumChannel must not process samples");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+
+    public void testFilterBankSameAsBiquad() throws IOException {
+        float[] signal = Window.makeFloatSinWave(48000, 1.0, 0.5, 250.0);
+        ConfigurationSpectrumChannel configuration;
+        try (InputStream s = SpectrumChannel.class.getResourceAsStream(
+                "config_48000_third_octave.json")) {
+            ObjectMapper objectMapper = new ObjectMapper();
+            configuration = objectMapper.readValue(s, ConfigurationSpectrumChannel.class);
+        }
+        List<BiquadFilter> filters = new ArrayList<>();
+        List<BiquadFilter> references = new ArrayList<>();
+        for (ConfigurationBiquad biquad : configuration.getBandpass()) {
+            ConfigurationSos sos = biquad.getSos();
+            for (List<BiquadFilter> target : Arrays.asList(filters, references)) {
+                target.add(new BiquadFilter(toArray(sos.getB0()), toArray(sos.getB1()),
+                        toArray(sos.getB2()), toArray(sos.getA1()), toArray(sos.getA2())));
+            }
+        }
+        // A band with fewer sections is completed by pass-through sections
+        BiquadFilter shortFilter = filters.get(0);
+        filters.set(0, new BiquadFilter(Arrays.copyOf(shortFilter.b0, 2), Arrays.copyOf(shortFilter.b1, 2),
+                Arrays.copyOf(shortFilter.b2, 2), Arrays.copyOf(shortFilter.a1, 2), Arrays.copyOf(shortFilter.a2, 2)));
+        references.set(0, new BiquadFilter(Arrays.copyOf(shortFilter.b0, 2), Arrays.copyOf(shortFilter.b1, 2),
+                Arrays.copyOf(shortFilter.b2, 2), Arrays.copyOf(shortFilter.a1, 2), Arrays.copyOf(shortFilter.a2, 2)));
+        BiquadFilterBank filterBank = new BiquadFilterBank(filters);
+        double[] leqs = new double[filterBank.getBandCount()];
+        // Two calls in order to check the continuity of the delays
+        for (int call = 0; call < 2; call++) {
+            filterBank.filterThenLeq(signal, leqs);
+            for (int band = 0; band < references.size(); band++) {
+                assertEquals(references.get(band).filterThenLeq(signal), leqs[band], 0);
+            }
+        }
+    }
+
+    public void testTimeWeightingStep() {
+        final int sampleRate = 48000;
+        final double amplitude = 0.1;
+        final double fullLevel = 20 * Math.log10(amplitude);
+        TimeWeightingIntegrator integrator = new TimeWeightingIntegrator(sampleRate, null, 0.125);
+        integrator.setDbFsReference(0);
+        final List<Double> fastLevels = new ArrayList<>();
+        final List<Double> periodLeqs = new ArrayList<>();
+        integrator.setListener(new TimeWeightingIntegrator.LevelListener() {
+            @Override
+            public void onLevels(TimeWeightingIntegrator source) {
+                fastLevels.add(source.getFastLevel());
+                periodLeqs.add(source.getPeriodLeq());
+            }
+        });
+        // Constant input of 8 seconds processed by blocks of 0.1 s
+        float[] block = new float[sampleRate / 10];
+        Arrays.fill(block, (float) amplitude);
+        for (int i = 0; i < 80; i++) {
+            integrator.processSamples(block);
+        }
+        assertEquals(64, fastLevels.size());
+        // Fast reaches 1 - 1/e of the final energy after one time constant
+        assertEquals(fullLevel + 10 * Math.log10(1 - Math.exp(-1)), fastLevels.get(0), 0.01);
+        assertEquals(fullLevel, fastLevels.get(63), 0.01);
+        assertEquals(fullLevel, integrator.getSlowLevel(), 0.01);
+        assertEquals(fullLevel, integrator.getImpulseLevel(), 0.01);
+        assertEquals(fullLevel, periodLeqs.get(0), 1e-4);
+        // Decay of 10*log10(e)/tau dB per second after the signal stops
+        integrator.resetMinMax();
+        Arrays.fill(block, 0);
+        integrator.processSamples(block);
+        final double decay = 10 * Math.log10(Math.E) * 0.1;
+        assertEquals(fullLevel - decay / TimeWeightingIntegrator.TAU_FAST, integrator.getFastLevel(), 0.01);
+        assertEquals(fullLevel - decay / TimeWeightingIntegrator.TAU_SLOW, integrator.getSlowLevel(), 0.01);
+        assertEquals(fullLevel - decay / TimeWeightingIntegrator.TAU_IMPULSE_DECAY,
+                integrator.getImpulseLevel(), 0.01);
+        assertEquals(fullLevel, integrator.getFastMax(), 0.01);
+        assertEquals(integrator.getFastLevel(), integrator.getFastMin(), 1e-9);
+    }
+
+    public void testTimeWeightingAWeighting() throws IOException {
+        final int sampleRate = 48000;
+        final double expectedLevel = 90;
+        ConfigurationSpectrumChannel configuration;
+        try (InputStream s = SpectrumChannel.class.getResourceAsStream(
+                "config_48000_third_octave.json")) {
+            ObjectMapper objectMapper = new ObjectMapper();
+            configuration = objectMapper.readValue(s, ConfigurationSpectrumChannel.class);
+        }
+        DigitalFilter aWeighting = new DigitalFilter(
+                toArray(configuration.getAWeighting().getFilterNumerator()),
+                toArray(configuration.getAWeighting().getFilterDenominator()));
+        TimeWeightingIntegrator integrator = new TimeWeightingIntegrator(sampleRate, aWeighting, 1.0);
+        double rms = Math.pow(10, (expectedLevel - FFTSignalProcessing.DB_FS_REFERENCE) / 20);
+        // A weighting gain is 0 dB at 1 kHz
+        float[] signal = Window.makeFloatSinWave(sampleRate, 10.0, rms, 1000.0);
+        integrator.processSamples(signal);
+        assertEquals(expectedLevel, integrator.getPeriodLeq(), 0.1);
+        assertEquals(expectedLevel, integrator.getSlowLevel(), 0.1);
+        assertEquals(expectedLevel, integrator.getFastLevel(), 0.1);
+        // Impulse follows the peaks of the sinus
+        assertTrue(integrator.getImpulseLevel() >= expectedLevel - 0.1);
+        assertTrue(integrator.getFastMax() < expectedLevel + 0.5);
+    }
+
+    /**
+     * @return Magnitude response in dB of the second order sections
+     */
+    private static double sosResponse(ConfigurationSos sos, double frequency, double sampleRate) {
+        double w = 2 * Math.PI * frequency / sampleRate;
+        Complex z1 = new Complex(Math.cos(w), -Math.sin(w));
+        Complex z2 = z1.times(z1);
+        double gain = 0;
+        for (int i = 0; i < sos.getB0().size(); i++) {
+            Complex num = new Complex(sos.getB0().get(i), 0).plus(z1.times(sos.getB1().get(i)))
+                    .plus(z2.times(sos.getB2().get(i)));
+            Complex den = new Complex(1, 0).plus(z1.times(sos.getA1().get(i)))
+                    .plus(z2.times(sos.getA2().get(i)));
+            gain += 20 * Math.log10(num.abs() / den.abs());
+        }
+        return gain;
+    }
+
+    private static void assertSameResponse(ConfigurationSos expected, ConfigurationSos got,
+                                           double sampleRate, double[] frequencies) {
+        assertEquals(expected.getB0().size(), got.getB0().size());
+        for (double frequency : frequencies) {
+            double expectedGain = sosResponse(expected, frequency, sampleRate);
+            if (expectedGain > -100) {
+                assertEquals("at " + frequency + " Hz", expectedGain,
+                        sosResponse(got, frequency, sampleRate), 0.01);
+            }
+        }
+    }
+
+    private static void assertSameCoefficients(List<Double> expected, List<Double> got) {
+        assertEquals(expected.size(), got.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), got.get(i), Math.abs(expected.get(i)) * 1e-6 + 1e-12);
+        }
+    }
+
+    public void testFilterDesignerShippedConfiguration() throws IOException {
+        for (int sampleRate : new int[]{44100, 48000}) {
+            ConfigurationSpectrumChannel shipped;
+            try (InputStream s = SpectrumChannel.class.getResourceAsStream(
+                    "config_" + sampleRate + "_third_octave.json")) {
+                ObjectMapper objectMapper = new ObjectMapper();
+                shipped = objectMapper.readValue(s, ConfigurationSpectrumChannel.class);
+            }
+            ConfigurationSpectrumChannel designed = new FilterDesigner(sampleRate).design();
+            assertEquals(sampleRate, designed.getConfiguration().getSampleRate().intValue());
+            assertEquals(shipped.getAntiAliasing().getSampleRatio(),
+                    designed.getAntiAliasing().getSampleRatio());
+            double[] checkFrequencies = new double[]{sampleRate / 8.0, sampleRate / 4.2,
+                    sampleRate / 4.0, sampleRate / 3.8, sampleRate / 3.0};
+            assertSameResponse(shipped.getAntiAliasing(), designed.getAntiAliasing(), sampleRate,
+                    checkFrequencies);
+            assertEquals(shipped.getBandpass().size(), designed.getBandpass().size());
+            for (int i = 0; i < shipped.getBandpass().size(); i++) {
+                ConfigurationBiquad expected = shipped.getBandpass().get(i);
+                ConfigurationBiquad got = designed.getBandpass().get(i);
+                assertEquals(expected.getNominalFrequency(), got.getNominalFrequency());
+                assertEquals(expected.getCenterFrequency(), got.getCenterFrequency(), 1e-6);
+                assertEquals(expected.getMinFrequency(), got.getMinFrequency(), 1e-6);
+                assertEquals(expected.getMaxFrequency(), got.getMaxFrequency(), 1e-6);
+                assertEquals(expected.getSubsamplingDepth(), got.getSubsamplingDepth());
+                double center = expected.getCenterFrequency();
+                checkFrequencies = new double[]{center / 2, expected.getMinFrequency(), center,
+                        expected.getMaxFrequency(), center * 1.5};
+                assertSameResponse(expected.getSos(), got.getSos(), sampleRate, checkFrequencies);
+                assertSameResponse(expected.getSubsamplingFilter().getSos(),
+                        got.getSubsamplingFilter().getSos(),
+                        sampleRate / Math.pow(2, expected.getSubsamplingDepth()), checkFrequencies);
+            }
+            assertSameCoefficients(shipped.getAWeighting().getFilterNumerator(),
+                    designed.getAWeighting().getFilterNumerator());
+            assertSameCoefficients(shipped.getAWeighting().getFilterDenominator(),
+                    designed.getAWeighting().getFilterDenominator());
+            assertSameCoefficients(shipped.getCWeighting().getFilterNumerator(),
+                    designed.getCWeighting().getFilterNumerator());
+            assertSameCoefficients(shipped.getCWeighting().getFilterDenominator(),
+                    designed.getCWeighting().getFilterDenominator());
+        }
+    }
+
+    public void testFilterDesignerSampleRates() throws IOException {
+        double expectedLeq = -3;
+        for (int sampleRate : new int[]{16000, 22050, 32000, 96000}) {
+            float[] signal = Window.makeFloatSinWave(sampleRate, 3.0,
+                    Math.pow(10, expectedLeq / 20.0), 1000.0);
+            try (SpectrumChannel spectrumChannel = new SpectrumChannel(1)) {
+                spectrumChannel.loadConfiguration(
+                        FilterDesignCache.loadThirdOctaveConfiguration(sampleRate), true);
+                assertEquals(0, sampleRate % spectrumChannel.getMinimumSamplesLength());
+                // skip the filters transient response
+                spectrumChannel.processSamples(Arrays.copyOfRange(signal, 0, sampleRate));
+                float[] lastSecond = Arrays.copyOfRange(signal, sampleRate, 2 * sampleRate);
+                double[] bandsLeq = spectrumChannel.processSamples(lastSecond);
+                assertEquals("at " + sampleRate + " Hz", expectedLeq,
+                        bandsLeq[spectrumChannel.getNominalFrequency().indexOf(1000.0)], 0.01);
+                // The bilinear transform warps the A weighting at low sampling rates
+                assertEquals("A at " + sampleRate + " Hz", expectedLeq,
+                        spectrumChannel.processSamplesWeightA(lastSecond), 0.05);
+            }
+        }
+        try {
+            new FilterDesigner(100).design();
+            fail("No band below the Nyquist frequency");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    public void testBandsPerOctave() throws IOException {
+        final int sampleRate = 48000;
+        double expectedLeq = -3;
+        float[] signal = Window.makeFloatSinWave(sampleRate, 2.0,
+                Math.pow(10, expectedLeq / 20.0), 1000.0);
+        float[] lastSecond = Arrays.copyOfRange(signal, sampleRate, 2 * sampleRate);
+        int previousBandCount = 0;
+        for (int bandsPerOctave : new int[]{FractionalOctaveBands.OCTAVE,
+                FractionalOctaveBands.THIRD_OCTAVE, FractionalOctaveBands.SIXTH_OCTAVE}) {
+            try (SpectrumChannel spectrumChannel = new SpectrumChannel(1)) {
+                spectrumChannel.loadConfiguration(
+                        FilterDesignCache.loadConfiguration(sampleRate, bandsPerOctave), true);
+                assertEquals(bandsPerOctave, spectrumChannel.getBandsPerOctave());
+                List<Double> nominal = spectrumChannel.getNominalFrequency();
+                assertTrue(nominal.size() > previousBandCount);
+                previousBandCount = nominal.size();
+                spectrumChannel.processSamples(Arrays.copyOfRange(signal, 0, sampleRate));
+                double[] bandsLeq = spectrumChannel.processSamples(lastSecond);
+                double energy = 0;
+                for (double leq : bandsLeq) {
+                    energy += Math.pow(10, leq / 10);
+                }
+                // The tone energy is found in one or two bands around 1 kHz
+                assertEquals(expectedLeq, 10 * Math.log10(energy), 0.1);
+            }
+        }
+    }
+
+    public void testFilterDesignCache() throws IOException {
+        File directory = File.createTempFile("filter_design", "");
+        assertTrue(directory.delete());
+        try {
+            FilterDesigner designer = new FilterDesigner(32000);
+            designer.setBandsPerOctave(1);
+            FilterDesignCache cache = new FilterDesignCache(directory);
+            ConfigurationSpectrumChannel configuration = cache.getConfiguration(designer);
+            assertSame(configuration, cache.getConfiguration(designer));
+            assertTrue(cache.getFile(designer).isFile());
+            // Read back from the directory by another cache
+            ConfigurationSpectrumChannel loaded = new FilterDesignCache(directory)
+                    .getConfiguration(designer);
+            assertNotSame(configuration, loaded);
+            assertEquals(configuration.getBandpass().size(), loaded.getBandpass().size());
+            assertEquals(configuration.getAntiAliasing(), loaded.getAntiAliasing());
+            assertEquals(configuration.getAWeighting(), loaded.getAWeighting());
+            for (int i = 0; i < configuration.getBandpass().size(); i++) {
+                assertEquals(configuration.getBandpass().get(i).getSos(),
+                        loaded.getBandpass().get(i).getSos());
+            }
+            // Octave bands
+            List<Double> nominal = new ArrayList<>();
+            for (ConfigurationBiquad band : configuration.getBandpass()) {
+                nominal.add(band.getNominalFrequency());
+            }
+            assertEquals(Arrays.asList(125.0, 250.0, 500.0, 1000.0, 2000.0, 4000.0, 8000.0),
+                    nominal);
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    assertTrue(file.delete());
+                }
+            }
+            assertTrue(directory.delete());
+        }
+    }
+
+    public void testProcessingMetrics() throws IOException {
+        final int sampleRate = 44100;
+        float[] noise = Window.convertShortToFloat(Window.makeWhiteNoise(sampleRate * 2,
+                (short) 2500, 1));
+        ConfigurationSpectrumChannel configuration = FilterDesignCache.loadThirdOctaveConfiguration(sampleRate);
+        SpectrumChannel reference = new SpectrumChannel(1);
+        reference.loadConfiguration(configuration, true);
+        SpectrumChannel spectrumChannel = new SpectrumChannel(1);
+        spectrumChannel.loadConfiguration(configuration, true);
+        assertSame(ProcessingMetrics.NONE, spectrumChannel.getMetrics());
+        ProcessingMetricsRecorder recorder = new ProcessingMetricsRecorder();
+        spectrumChannel.setMetrics(recorder);
+        for (int start = 0; start < noise.length; start += sampleRate) {
+            float[] second = Arrays.copyOfRange(noise, start, start + sampleRate);
+            // Instrumentation does not change the results
+            assertTrue(Arrays.equals(reference.processSamples(second),
+                    spectrumChannel.processSamples(second)));
+            spectrumChannel.processSamplesWeightA(second);
+        }
+        ProcessingMetricsRecorder.StageSnapshot cascade = recorder.getSnapshot(
+                ProcessingMetrics.STAGE.BIQUAD_CASCADE);
+        ProcessingMetricsRecorder.StageSnapshot decimation = recorder.getSnapshot(
+                ProcessingMetrics.STAGE.DECIMATION);
+        ProcessingMetricsRecorder.StageSnapshot weighting = recorder.getSnapshot(
+                ProcessingMetrics.STAGE.WEIGHTING);
+        // One decimation between two levels of the cascade
+        int levels = (int) (cascade.getCount() / 2);
+        assertTrue(levels > 1);
+        assertEquals(2 * (levels - 1), decimation.getCount());
+        // Each level processes the samples of the previous one, subsampled by 2
+        int levelLength = sampleRate;
+        long expectedSamples = 0;
+        for (int level = 0; level < levels - 1; level++) {
+            expectedSamples += 2 * levelLength;
+            levelLength /= 2;
+        }
+        assertEquals(expectedSamples, decimation.getSampleCount());
+        assertEquals(expectedSamples + 2 * levelLength, cascade.getSampleCount());
+        assertEquals(2, weighting.getCount());
+        assertEquals(noise.length, weighting.getSampleCount());
+        assertTrue(cascade.getTotalTime() > 0);
+        assertTrue(cascade.getPercentileTime(50) <= cascade.getMaxTime());
+        assertEquals(3, recorder.getSnapshots().size());
+        // Window stages, the A-weighting filter of the window reports to the same metrics
+        recorder.reset();
+        assertEquals(0, recorder.getSnapshots().size());
+        Window window = new Window(FFTSignalProcessing.WINDOW_TYPE.HANN, sampleRate,
+                FFTSignalProcessing.computeFFTCenterFrequency(16000), 0.125, true,
+                FFTSignalProcessing.DB_FS_REFERENCE, false);
+        window.setMetrics(recorder);
+        window.pushSample(noise);
+        int windowSize = (int) (sampleRate * 0.125);
+        for (ProcessingMetrics.STAGE stage : new ProcessingMetrics.STAGE[]{
+                ProcessingMetrics.STAGE.WINDOWING, ProcessingMetrics.STAGE.FFT,
+                ProcessingMetrics.STAGE.BAND_RECOMBINATION}) {
+            ProcessingMetricsRecorder.StageSnapshot snapshot = recorder.getSnapshot(stage);
+            assertEquals(noise.length / windowSize, snapshot.getCount());
+            assertEquals(snapshot.getCount() * windowSize, snapshot.getSampleCount());
+        }
+        assertEquals(noise.length, recorder.getSnapshot(ProcessingMetrics.STAGE.WEIGHTING)
+                .getSampleCount());
+    }
+
+    private static double[] toArray(List<Double> values) {
+        double[] array = new double[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
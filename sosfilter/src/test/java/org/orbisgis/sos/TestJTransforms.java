@@ -34,8 +34,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteOrder;
 import java.util.Arrays;
+import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 
 public class TestJTransforms {
@@ -97,7 +101,7 @@ public class TestJTransforms {
 
         assertEquals(90, fftSignalProcessing.computeGlobalLeq(), 0.01);
         assertEquals(90,
-                processingResult.spl[Arrays.binarySearch(ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED,
+                processingResult.getSpl()[Arrays.binarySearch(ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED,
                         signalFrequency)], 0.01);
         assertEquals(90,
                 processingResult.getWindowLeq(), 0.01);
@@ -126,7 +130,7 @@ public class TestJTransforms {
 
         assertEquals(90, fftSignalProcessing.computeGlobalLeq(), 0.01);
         assertEquals(90,
-                processingResult.spl[Arrays.binarySearch(ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED,
+                processingResult.getSpl()[Arrays.binarySearch(ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED,
                         signalFrequency)], 0.01);
         assertEquals(90,
                 processingResult.getWindowLeq(), 0.01);
@@ -135,12 +139,116 @@ public class TestJTransforms {
 
         assertEquals(90, fftSignalProcessing.computeGlobalLeq(), 0.01);
         assertEquals(90,
-                processingResult.spl[Arrays.binarySearch(ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED,
+                processingResult.getSpl()[Arrays.binarySearch(ThirdOctaveBandsFiltering.STANDARD_FREQUENCIES_REDUCED,
                         signalFrequency)], 0.01);
         assertEquals(90,
                 processingResult.getWindowLeq(), 0.01);
 
     }
+
+    @Test
+    public void testProcessingReuseResult() throws IOException {
+        final int sampleRate = 44100;
+        final int windowSize = (int)(sampleRate * AcousticIndicators.TIMEPERIOD_FAST);
+        float[] signal;
+        try(InputStream inputStream = TestJTransforms.class.getResourceAsStream("pinknoise_1s.raw")) {
+            signal = Window.convertShortToFloat(Window.loadShortStream(inputStream, ByteOrder.LITTLE_ENDIAN));
+        }
+        FFTSignalProcessing reference = new FFTSignalProcessing(sampleRate, STANDARD_FREQUENCIES_UNITTEST, windowSize);
+        FFTSignalProcessing reuse = new FFTSignalProcessing(sampleRate, STANDARD_FREQUENCIES_UNITTEST, windowSize);
+        FFTSignalProcessing.ProcessingResult result = new FFTSignalProcessing.ProcessingResult();
+        double[] spl = null;
+        double[] fftResult = null;
+        for(int start = 0; start + windowSize <= signal.length; start += windowSize) {
+            float[] window = Arrays.copyOfRange(signal, start, start + windowSize);
+            reference.addSample(window);
+            reuse.addSample(window);
+            FFTSignalProcessing.ProcessingResult expected = reference.processSampleBuffer(FFTSignalProcessing.WINDOW_TYPE.TUKEY, true);
+            assertSame(result, reuse.processSampleBuffer(FFTSignalProcessing.WINDOW_TYPE.TUKEY, true, result));
+            if(spl != null) {
+                // arrays are allocated only once
+                assertSame(spl, result.getSpl());
+                assertSame(fftResult, result.getFftResult());
+            }
+            spl = result.getSpl();
+            fftResult = result.getFftResult();
+            assertEquals(expected.getId(), result.getId());
+            assertEquals(expected.getWindowLeq(), result.getWindowLeq(), 1e-9);
+            assertArrayEquals(expected.getSpl(), result.getSpl(), 1e-9);
+            assertArrayEquals(expected.getFftResult(), result.getFftResult(), 1e-9);
+        }
+    }
+
+    /**
+     * Accumulating results in the energy domain gives the energetic average of the levels
+     */
+    @Test
+    public void testProcessingResultAccumulate() throws IOException {
+        final int sampleRate = 44100;
+        final int windowSize = (int)(sampleRate * AcousticIndicators.TIMEPERIOD_FAST);
+        float[] signal;
+        try(InputStream inputStream = TestJTransforms.class.getResourceAsStream("pinknoise_1s.raw")) {
+            signal = Window.convertShortToFloat(Window.loadShortStream(inputStream, ByteOrder.LITTLE_ENDIAN));
+        }
+        FFTSignalProcessing fftSignalProcessing = new FFTSignalProcessing(sampleRate, STANDARD_FREQUENCIES_UNITTEST, windowSize);
+        FFTSignalProcessing.ProcessingResult accumulated = new FFTSignalProcessing.ProcessingResult();
+        double[] expectedSpl = new double[STANDARD_FREQUENCIES_UNITTEST.length];
+        double expectedLeq = 0;
+        int count = 0;
+        FFTSignalProcessing.ProcessingResult result = null;
+        for(int start = 0; start + windowSize <= signal.length; start += windowSize) {
+            fftSignalProcessing.addSample(Arrays.copyOfRange(signal, start, start + windowSize));
+            result = fftSignalProcessing.processSampleBuffer(FFTSignalProcessing.WINDOW_TYPE.HANN, true);
+            for(int i = 0; i < expectedSpl.length; i++) {
+                expectedSpl[i] += Math.pow(10, result.getSpl()[i] / 10);
+            }
+            expectedLeq += Math.pow(10, result.getWindowLeq() / 10);
+            accumulated.accumulate(result);
+            count++;
+        }
+        for(int i = 0; i < expectedSpl.length; i++) {
+            expectedSpl[i] = 10 * Math.log10(expectedSpl[i] / count);
+        }
+        assertEquals(count, accumulated.getCount(), 0);
+        assertEquals(result.getId(), accumulated.getId());
+        assertArrayEquals(expectedSpl, accumulated.getSpl(), 1e-4);
+        assertEquals(10 * Math.log10(expectedLeq / count), accumulated.getWindowLeq(), 1e-4);
+        assertEquals(0, accumulated.getWindowLaeq(), 1e-9);
+        // Same result with the levels constructor, provided arrays are not modified
+        double[] spl = Arrays.copyOf(result.getSpl(), expectedSpl.length);
+        FFTSignalProcessing.ProcessingResult fromLevels = new FFTSignalProcessing.ProcessingResult(1,
+                null, spl, result.getWindowLeq());
+        FFTSignalProcessing.ProcessingResult fromLevelsSum = new FFTSignalProcessing.ProcessingResult();
+        fromLevelsSum.accumulate(fromLevels);
+        fromLevelsSum.accumulate(fromLevels);
+        assertArrayEquals(result.getSpl(), spl, 0);
+        assertArrayEquals(spl, fromLevelsSum.getSpl(), 1e-4);
+        assertEquals(result.getWindowLeq(), fromLevelsSum.getWindowLeq(), 1e-4);
+    }
+
+    /**
+     * With fractional weighting a flat narrow band spectrum must give the exact bandwidth energy,
+     * even for the 125 ms window where the 100 Hz band is only 23 Hz wide (3 FFT cells)
+     */
+    @Test
+    public void testFractionalBinWeighting() {
+        final int sampleRate = 44100;
+        final int windowSize = (int)(sampleRate * AcousticIndicators.TIMEPERIOD_FAST);
+        final double freqByCell = sampleRate / (double) windowSize;
+        FFTSignalProcessing fftSignalProcessing = new FFTSignalProcessing(sampleRate, STANDARD_FREQUENCIES_UNITTEST, windowSize);
+        fftSignalProcessing.setFractionalBinWeighting(true);
+        float[] squareAbsoluteFFT = new float[windowSize / 2];
+        Arrays.fill(squareAbsoluteFFT, 1.f);
+        float[] spl = fftSignalProcessing.thirdOctaveProcessing(squareAbsoluteFFT, false, 1);
+        int refFreq = Arrays.binarySearch(STANDARD_FREQUENCIES_UNITTEST, 1000);
+        for(int idBand = 0; idBand < spl.length; idBand++) {
+            double fCenter = Math.pow(10, (idBand - refFreq) / 10.) * 1000;
+            double bandCells = fCenter * (Math.pow(10, 1. / 20.) - Math.pow(10, -1. / 20.)) / freqByCell;
+            double expected = fftSignalProcessing.todBspl(Math.sqrt(bandCells / 2) / squareAbsoluteFFT.length);
+            assertEquals(expected, spl[idBand], 1e-3);
+        }
+    }
+
     @Test
     public void testRecorder() throws IOException {
         int rate = 44100;
@@ -167,6 +275,126 @@ public class TestJTransforms {
         assertEquals(72.24, processingResult.getWindowLeq(), 0.01);
     }
 
+    /**
+     * Check that {@link RealFFT} gives the same packed spectrum than JTransforms for power of two,
+     * mixed radix, odd and prime sizes (Bluestein).
+     */
+    @Test
+    public void testRealFFT() {
+        int[] sizes = new int[] {1, 2, 3, 8, 15, 100, 1000, 1031, 2062, 5512, 6000, 44100, 48000};
+        Random random = new Random(1);
+        for(int size : sizes) {
+            float[] signal = new float[size];
+            for(int i = 0; i < size; i++) {
+                signal[i] = (float)(random.nextGaussian() * 2500);
+            }
+            float[] expected = Arrays.copyOf(signal, size);
+            new FloatFFT_1D(size).realForward(expected);
+            float[] result = Arrays.copyOf(signal, size);
+            new RealFFT(size).realForward(result);
+            double max = 0;
+            for(float v : expected) {
+                max = Math.max(max, Math.abs(v));
+            }
+            for(int i = 0; i < size; i++) {
+                assertEquals("size " + size + " index " + i, expected[i], result[i], max * 1e-5);
+            }
+        }
+    }
+
+    /**
+     * Check that transforms of the same size share their tables and that a transform built from
+     * the shared plan gives the same result as one built from freshly computed tables.
+     */
+    @Test
+    public void testSharedFFTPlan() {
+        int[] sizes = new int[] {1031, 2062, 44100, 48000};
+        Random random = new Random(1);
+        for(int size : sizes) {
+            float[] signal = new float[size];
+            for(int i = 0; i < size; i++) {
+                signal[i] = (float)(random.nextGaussian() * 2500);
+            }
+            int complexSize = size % 2 == 0 ? size / 2 : size;
+            assertSame(FFTPlan.get(complexSize), FFTPlan.get(complexSize));
+            float[] shared = Arrays.copyOf(signal, size);
+            new RealFFT(size).realForward(shared);
+            FFTPlan.clearCache();
+            float[] fresh = Arrays.copyOf(signal, size);
+            new RealFFT(size).realForward(fresh);
+            assertArrayEquals("size " + size, fresh, shared, 0);
+        }
+    }
+
+    /**
+     * Check that the cached window tables give the same windowed signal and energy as the direct
+     * evaluation of the window functions.
+     */
+    @Test
+    public void testWindowFunction() {
+        final int size = 5512;
+        final double tukeyAlpha = 0.2;
+        Random random = new Random(1);
+        float[] signal = new float[size];
+        for(int i = 0; i < size; i++) {
+            signal[i] = (float)(random.nextGaussian() * 2500);
+        }
+        // Hann
+        float[] expected = Arrays.copyOf(signal, size);
+        double expectedEnergy = 0;
+        for (int n = 1; n < size; n++) {
+            double coeff = 0.5 * (1 - Math.cos((2 * Math.PI * n) / (size - 1)));
+            expected[n] *= coeff;
+            expectedEnergy += coeff * coeff;
+        }
+        float[] result = Arrays.copyOf(signal, size);
+        assertEquals(expectedEnergy, AcousticIndicators.hannWindow(result), 0);
+        assertArrayEquals(expected, result, 0);
+        assertSame(WindowFunction.hann(size), WindowFunction.hann(size));
+        // Tukey
+        expected = Arrays.copyOf(signal, size);
+        expectedEnergy = 0;
+        int indexBeginFlat = (int)((tukeyAlpha / 2) * size);
+        int indexEndFlat = size - indexBeginFlat;
+        for(int i = 0; i < indexBeginFlat; i++) {
+            double windowValue = (0.5 * (1 + Math.cos(2 * Math.PI / tukeyAlpha * ((i / (float)size) - tukeyAlpha / 2))));
+            expectedEnergy += windowValue * windowValue;
+            expected[i] *= windowValue;
+        }
+        expectedEnergy += indexEndFlat - indexBeginFlat;
+        for(int i = indexEndFlat; i < size; i++) {
+            double windowValue = (0.5 * (1 + Math.cos(2 * Math.PI / tukeyAlpha * ((i / (float)size) - 1 + tukeyAlpha / 2))));
+            expectedEnergy += windowValue * windowValue;
+            expected[i] *= windowValue;
+        }
+        result = Arrays.copyOf(signal, size);
+        assertEquals(expectedEnergy, AcousticIndicators.tukeyWindow(result, tukeyAlpha), 0);
+        assertArrayEquals(expected, result, 0);
+        assertSame(WindowFunction.tukey(size, tukeyAlpha), WindowFunction.tukey(size, tukeyAlpha));
+        assertTrue(WindowFunction.tukey(size, tukeyAlpha) != WindowFunction.tukey(size, 0.5));
+    }
+
+    @Test
+    public void testBoundedCaches() {
+        WindowFunction.clearCache();
+        WindowFunction first = WindowFunction.hann(100);
+        WindowFunction recent = WindowFunction.hann(101);
+        for (int size = 102; size < 101 + WindowFunction.CACHE_SIZE; size++) {
+            WindowFunction.hann(size);
+            // Keep the size 101 as the most recently used
+            assertSame(recent, WindowFunction.hann(101));
+        }
+        // The least recently used table has been released
+        assertTrue(first != WindowFunction.hann(100));
+        assertEquals(first.getEnergyCorrection(), WindowFunction.hann(100).getEnergyCorrection(), 0);
+        FFTPlan.clearCache();
+        FFTPlan firstPlan = FFTPlan.get(64);
+        for (int size = 1; size <= FFTPlan.CACHE_SIZE; size++) {
+            FFTPlan.get(64 + size);
+        }
+        assertTrue(firstPlan != FFTPlan.get(64));
+    }
+
     @Test
     public void testAmplitude() {
 
@@ -203,6 +431,47 @@ public class TestJTransforms {
         assertEquals(signalFrequency, maxValueFreq);
     }
 
+    @Test
+    public void testFractionalOctaveResolution() {
+        final int sampleRate = 44100;
+        // Inside the 1000 Hz octave and third octave bands, centered on a sixth octave band
+        final int signalFrequency = 1059;
+        double powerRMS = 2500/Math.pow(2, 15); // 90 dBspl
+        float[] signal = new float[sampleRate];
+        for (int s = 0; s < signal.length; s++) {
+            double t = s * (1.0 / sampleRate);
+            signal[s] = (float)(Math.sin(2 * Math.PI * signalFrequency * t) * powerRMS * Math.sqrt(2));
+        }
+        int previousBandCount = 0;
+        for (int bandsPerOctave : new int[]{FractionalOctaveBands.OCTAVE, FractionalOctaveBands.THIRD_OCTAVE,
+                FractionalOctaveBands.SIXTH_OCTAVE, FractionalOctaveBands.TWELFTH_OCTAVE}) {
+            double[] frequencies = FFTSignalProcessing.computeFFTCenterFrequency(16000, bandsPerOctave);
+            // Coarser resolutions compute fewer bands
+            assertTrue(frequencies.length > previousBandCount);
+            previousBandCount = frequencies.length;
+            FFTSignalProcessing fftSignalProcessing = new FFTSignalProcessing(sampleRate, frequencies,
+                    signal.length, FFTSignalProcessing.DB_FS_REFERENCE, bandsPerOctave);
+            assertEquals(bandsPerOctave, fftSignalProcessing.getBandsPerOctave());
+            fftSignalProcessing.addSample(signal);
+            FFTSignalProcessing.ProcessingResult processingResult =
+                    fftSignalProcessing.processSampleBuffer(FFTSignalProcessing.WINDOW_TYPE.RECTANGULAR, false);
+            int maxBand = 0;
+            for (int i = 0; i < frequencies.length; i++) {
+                if (processingResult.getSpl()[i] > processingResult.getSpl()[maxBand]) {
+                    maxBand = i;
+                }
+            }
+            assertEquals(90, processingResult.getSpl()[maxBand], 0.01);
+            double halfBand = Math.pow(2, 1.0 / (2 * bandsPerOctave));
+            assertTrue(frequencies[maxBand] / halfBand < signalFrequency);
+            assertTrue(frequencies[maxBand] * halfBand > signalFrequency);
+        }
+        assertArrayEquals(ThirdOctaveBandsFiltering.STANDARD_OCTAVE_FREQUENCIES_REDUCED,
+                FFTSignalProcessing.computeFFTCenterFrequency(16000, FractionalOctaveBands.OCTAVE), 0);
+        assertArrayEquals(FFTSignalProcessing.computeFFTCenterFrequency(16000),
+                FFTSignalProcessing.computeFFTCenterFrequency(16000, FractionalOctaveBands.THIRD_OCTAVE), 0);
+    }
+
     private float[] getMinMax(float[] signal) {
         float localMin = Float.MAX_VALUE;
         float localMax = Float.MIN_VALUE;
@@ -29,12 +29,18 @@ package org.orbisgis.sos;
 
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -108,13 +114,13 @@ public class WindowTest {
             window.pushSample(samples);
             if (window.getWindowIndex() != lastPushIndex) {
                 lastPushIndex = window.getWindowIndex();
-                res.add(window.getLastWindowMean());
+                res.add(copy(window.getLastWindowMean()));
                 window.cleanWindows();
             }
         }
         // Zero padding for window finishing scan
         if (!window.isCacheEmpty()) {
-            res.add(window.getLastWindowMean());
+            res.add(copy(window.getLastWindowMean()));
             window.cleanWindows();
         }
         // Check if the expected result size is here
@@ -194,4 +200,290 @@ public class WindowTest {
         //        dBError = 0.;
         //        checkSplSpectrum(refSpl, sosBands, 0, dBError);
     }
-}
\ No newline at end of file
+
+    /**
+     * Window results are reused by the next windows
+     */
+    private static FFTSignalProcessing.ProcessingResult copy(FFTSignalProcessing.ProcessingResult result) {
+        FFTSignalProcessing.ProcessingResult copy = new FFTSignalProcessing.ProcessingResult();
+        copy.accumulate(result);
+        return copy;
+    }
+
+    private static List<FFTSignalProcessing.ProcessingResult> pushChunks(final Window window,
+                                                                       float[] signal,
+                                                                       int[] chunkSizes) {
+        final List<FFTSignalProcessing.ProcessingResult> res = new ArrayList<>();
+        window.setListener(new Window.WindowListener() {
+            @Override
+            public void onWindow(Window w) {
+                res.add(copy(w.getLastWindowMean()));
+                w.cleanWindows();
+            }
+        });
+        int idSampleStart = 0;
+        int idChunk = 0;
+        while (idSampleStart < signal.length) {
+            int sampleLen = Math.min(chunkSizes[idChunk++ % chunkSizes.length],
+                    signal.length - idSampleStart);
+            window.pushSample(signal, idSampleStart, sampleLen);
+            idSampleStart += sampleLen;
+        }
+        return res;
+    }
+
+    /**
+     * Buffers of any size give the same windows than buffers split on the window limits
+     */
+    @Test
+    public void testPushArbitraryChunks() throws IOException {
+        final int sampleRate = 44100;
+        InputStream inputStream = WindowTest.class.getResourceAsStream("speak_44100Hz_16bitsPCM_10s.raw");
+        float[] signal = Window.convertShortToFloat(
+                Window.loadShortStream(inputStream, ByteOrder.LITTLE_ENDIAN), false);
+        Window expectedWindow = new Window(FFTSignalProcessing.WINDOW_TYPE.TUKEY, sampleRate,
+                STANDARD_FREQUENCIES_UNITTEST, 0.125, true, FFTSignalProcessing.DB_FS_REFERENCE, true);
+        List<FFTSignalProcessing.ProcessingResult> expected = pushChunks(expectedWindow, signal,
+                new int[]{expectedWindow.getHopSize()});
+        Window window = new Window(FFTSignalProcessing.WINDOW_TYPE.TUKEY, sampleRate,
+                STANDARD_FREQUENCIES_UNITTEST, 0.125, true, FFTSignalProcessing.DB_FS_REFERENCE, true);
+        List<FFTSignalProcessing.ProcessingResult> res = pushChunks(window, signal,
+                new int[]{3, 7777, 1000, 22050, 1});
+        assertEquals(80, expected.size());
+        assertEquals(expected.size(), res.size());
+        for (int i = 0; i < res.size(); i++) {
+            assertEquals(expected.get(i).getId(), res.get(i).getId());
+            assertArrayEquals(expected.get(i).getSpl(), res.get(i).getSpl(), 1e-9);
+            assertArrayEquals(expected.get(i).getFftResult(), res.get(i).getFftResult(), 1e-9);
+            assertEquals(expected.get(i).getWindowLeq(), res.get(i).getWindowLeq(), 1e-9);
+            assertEquals(expected.get(i).getWindowLaeq(), res.get(i).getWindowLaeq(), 1e-6);
+        }
+    }
+
+    /**
+     * Each channel of an interleaved signal gives the same windows than the channel alone
+     */
+    @Test
+    public void testMultiChannelWindow() throws IOException {
+        final int sampleRate = 44100;
+        InputStream inputStream = WindowTest.class.getResourceAsStream("speak_44100Hz_16bitsPCM_10s.raw");
+        short[] speak = Window.loadShortStream(inputStream, ByteOrder.LITTLE_ENDIAN);
+        short[] noise = Window.makeWhiteNoise(speak.length, (short) 2500, 1);
+        short[] interleaved = new short[speak.length * 2];
+        for (int i = 0; i < speak.length; i++) {
+            interleaved[i * 2] = speak[i];
+            interleaved[i * 2 + 1] = noise[i];
+        }
+        List<FFTSignalProcessing.ProcessingResult> expectedSpeak = pushChunks(new Window(
+                FFTSignalProcessing.WINDOW_TYPE.TUKEY, sampleRate, STANDARD_FREQUENCIES_UNITTEST,
+                0.125, true, FFTSignalProcessing.DB_FS_REFERENCE, false, 0.5),
+                Window.convertShortToFloat(speak), new int[]{4096});
+        List<FFTSignalProcessing.ProcessingResult> expectedNoise = pushChunks(new Window(
+                FFTSignalProcessing.WINDOW_TYPE.TUKEY, sampleRate, STANDARD_FREQUENCIES_UNITTEST,
+                0.125, true, FFTSignalProcessing.DB_FS_REFERENCE, false, 0.5),
+                Window.convertShortToFloat(noise), new int[]{4096});
+        for (int pcmInput = 0; pcmInput < 2; pcmInput++) {
+            MultiChannelWindow window = new MultiChannelWindow(2,
+                    FFTSignalProcessing.WINDOW_TYPE.TUKEY, sampleRate,
+                    STANDARD_FREQUENCIES_UNITTEST, 0.125, true, FFTSignalProcessing.DB_FS_REFERENCE,
+                    false, 0.5);
+            final List<FFTSignalProcessing.ProcessingResult[]> res = new ArrayList<>();
+            window.setListener(new MultiChannelWindow.MultiChannelWindowListener() {
+                @Override
+                public void onWindow(MultiChannelWindow w) {
+                    res.add(new FFTSignalProcessing.ProcessingResult[]{copy(w.getLastWindowMean(0)),
+                            copy(w.getLastWindowMean(1)), w.getLastWindowMean()});
+                    w.cleanWindows();
+                }
+            });
+            if (pcmInput == 0) {
+                float[] samples = Window.convertShortToFloat(interleaved);
+                for (int start = 0; start < samples.length; start += 2 * 1777) {
+                    window.pushSample(samples, start, Math.min(2 * 1777, samples.length - start));
+                }
+            } else {
+                ShortBuffer shortBuffer = ShortBuffer.wrap(interleaved);
+                while (shortBuffer.position() < interleaved.length) {
+                    shortBuffer.limit(Math.min(interleaved.length, shortBuffer.position() + 8192));
+                    window.pushSample(shortBuffer);
+                }
+            }
+            assertEquals(expectedSpeak.size(), res.size());
+            for (int i = 0; i < res.size(); i++) {
+                FFTSignalProcessing.ProcessingResult[] channels = res.get(i);
+                assertArrayEquals(expectedSpeak.get(i).getSpl(), channels[0].getSpl(), 0);
+                assertArrayEquals(expectedNoise.get(i).getSpl(), channels[1].getSpl(), 0);
+                assertEquals(expectedSpeak.get(i).getWindowLaeq(), channels[0].getWindowLaeq(), 1e-9);
+                assertEquals(expectedNoise.get(i).getWindowLaeq(), channels[1].getWindowLaeq(), 1e-9);
+                double expectedLeq = 10 * Math.log10((Math.pow(10, channels[0].getWindowLeq() / 10) +
+                        Math.pow(10, channels[1].getWindowLeq() / 10)) / 2);
+                assertEquals(expectedLeq, channels[2].getWindowLeq(), 1e-6);
+            }
+        }
+    }
+
+    /**
+     * 16 bits PCM buffers give the same windows than the converted float samples
+     */
+    @Test
+    public void testPushPcmBuffer() throws IOException {
+        final int sampleRate = 44100;
+        InputStream inputStream = WindowTest.class.getResourceAsStream("speak_44100Hz_16bitsPCM_10s.raw");
+        short[] pcm = Window.loadShortStream(inputStream, ByteOrder.LITTLE_ENDIAN);
+        Window expectedWindow = new Window(FFTSignalProcessing.WINDOW_TYPE.TUKEY, sampleRate,
+                STANDARD_FREQUENCIES_UNITTEST, 0.125, true, FFTSignalProcessing.DB_FS_REFERENCE, false);
+        List<FFTSignalProcessing.ProcessingResult> expected = pushChunks(expectedWindow,
+                Window.convertShortToFloat(pcm), new int[]{4096});
+        // Short buffer
+        final List<FFTSignalProcessing.ProcessingResult> shortResults = new ArrayList<>();
+        Window shortWindow = new Window(FFTSignalProcessing.WINDOW_TYPE.TUKEY, sampleRate,
+                STANDARD_FREQUENCIES_UNITTEST, 0.125, true, FFTSignalProcessing.DB_FS_REFERENCE, false);
+        shortWindow.setListener(new Window.WindowListener() {
+            @Override
+            public void onWindow(Window w) {
+                shortResults.add(copy(w.getLastWindowMean()));
+                w.cleanWindows();
+            }
+        });
+        ShortBuffer shortBuffer = ShortBuffer.wrap(pcm);
+        while (shortBuffer.position() < pcm.length) {
+            shortBuffer.limit(Math.min(pcm.length, shortBuffer.position() + 4096));
+            shortWindow.pushSample(shortBuffer);
+        }
+        // Direct big endian byte buffer
+        final List<FFTSignalProcessing.ProcessingResult> byteResults = new ArrayList<>();
+        Window byteWindow = new Window(FFTSignalProcessing.WINDOW_TYPE.TUKEY, sampleRate,
+                STANDARD_FREQUENCIES_UNITTEST, 0.125, true, FFTSignalProcessing.DB_FS_REFERENCE, false);
+        byteWindow.setListener(new Window.WindowListener() {
+            @Override
+            public void onWindow(Window w) {
+                byteResults.add(copy(w.getLastWindowMean()));
+                w.cleanWindows();
+            }
+        });
+        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(pcm.length * 2).order(ByteOrder.BIG_ENDIAN);
+        byteBuffer.asShortBuffer().put(pcm);
+        while (byteBuffer.position() < byteBuffer.capacity()) {
+            byteBuffer.limit(Math.min(byteBuffer.capacity(), byteBuffer.position() + 8192));
+            byteWindow.pushSample(byteBuffer);
+        }
+        assertEquals(expected.size(), shortResults.size());
+        assertEquals(expected.size(), byteResults.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i).getSpl(), shortResults.get(i).getSpl(), 0);
+            assertArrayEquals(expected.get(i).getSpl(), byteResults.get(i).getSpl(), 0);
+            assertEquals(expected.get(i).getWindowLaeq(), shortResults.get(i).getWindowLaeq(), 0);
+            assertEquals(expected.get(i).getWindowLaeq(), byteResults.get(i).getWindowLaeq(), 0);
+        }
+        // FFTSignalProcessing
+        FFTSignalProcessing fftSignalProcessing = new FFTSignalProcessing(sampleRate,
+                STANDARD_FREQUENCIES_UNITTEST, 4096);
+        byteBuffer.position(0);
+        byteBuffer.limit(4096 * 2);
+        fftSignalProcessing.addSample(byteBuffer);
+        float[] expectedSamples = Window.convertShortToFloat(Arrays.copyOf(pcm, 4096));
+        assertArrayEquals(expectedSamples, fftSignalProcessing.getSampleBuffer(), 0);
+    }
+
+    /**
+     * A 75% overlap computes 4 spectrums per window, their mean is close to the non overlapped
+     * spectrum on a stationary signal
+     */
+    @Test
+    public void testOverlap() {
+        final int sampleRate = 44100;
+        final double windowTime = 0.125;
+        float[] signal = Window.convertShortToFloat(Window.makeWhiteNoise(sampleRate * 5,
+                (short) 2500, 1), false);
+        Window window = new Window(FFTSignalProcessing.WINDOW_TYPE.HANN, sampleRate,
+                STANDARD_FREQUENCIES_UNITTEST, windowTime, true, FFTSignalProcessing.DB_FS_REFERENCE,
+                false, 0.75);
+        assertEquals((int)(sampleRate * windowTime) / 4, window.getHopSize());
+        List<FFTSignalProcessing.ProcessingResult> overlapped = pushChunks(window, signal,
+                new int[]{4096});
+        Window reference = new Window(FFTSignalProcessing.WINDOW_TYPE.HANN, sampleRate,
+                STANDARD_FREQUENCIES_UNITTEST, windowTime, true, FFTSignalProcessing.DB_FS_REFERENCE,
+                false);
+        List<FFTSignalProcessing.ProcessingResult> expected = pushChunks(reference, signal,
+                new int[]{4096});
+        assertEquals(expected.size(), overlapped.size());
+        // No spectrum is computed before the buffer is filled, the first window has a single one
+        assertEquals(1, overlapped.get(0).getCount(), 0);
+        assertEquals(expected.get(0).getWindowLeq(), overlapped.get(0).getWindowLeq(), 1e-9);
+        FFTSignalProcessing.ProcessingResult expectedMean = new FFTSignalProcessing.ProcessingResult(
+                expected.size(), expected.toArray(
+                        new FFTSignalProcessing.ProcessingResult[expected.size()]));
+        FFTSignalProcessing.ProcessingResult overlappedMean = new FFTSignalProcessing.ProcessingResult(
+                overlapped.size(), overlapped.toArray(
+                        new FFTSignalProcessing.ProcessingResult[overlapped.size()]));
+        assertEquals(expectedMean.getWindowLeq(), overlappedMean.getWindowLeq(), 0.1);
+        assertEquals(expectedMean.getWindowLaeq(), overlappedMean.getWindowLaeq(), 0.1);
+        checkSplSpectrum(expectedMean.getSpl(), overlappedMean.getSpl(), 0, 0.2);
+    }
+
+    /**
+     * The window results are preallocated, two alternating spectrums and one mean
+     */
+    @Test
+    public void testReusedResults() {
+        final int sampleRate = 44100;
+        float[] signal = Window.convertShortToFloat(Window.makeWhiteNoise(sampleRate,
+                (short) 2500, 1), false);
+        for(double overlap : new double[]{0, 0.75}) {
+            Window window = new Window(FFTSignalProcessing.WINDOW_TYPE.HANN, sampleRate,
+                    STANDARD_FREQUENCIES_UNITTEST, 0.125, true, FFTSignalProcessing.DB_FS_REFERENCE,
+                    false, overlap);
+            final Set<FFTSignalProcessing.ProcessingResult> instances =
+                    Collections.newSetFromMap(new IdentityHashMap<FFTSignalProcessing.ProcessingResult, Boolean>());
+            final List<FFTSignalProcessing.ProcessingResult> results = new ArrayList<>();
+            window.setListener(new Window.WindowListener() {
+                @Override
+                public void onWindow(Window w) {
+                    instances.add(w.getLastWindowMean());
+                    results.add(copy(w.getLastWindowMean()));
+                    w.cleanWindows();
+                }
+            });
+            window.pushSample(signal);
+            assertTrue(results.size() > 4);
+            assertTrue(instances.size() <= (overlap > 0 ? 3 : 2));
+            // The mean is reset on each window
+            FFTSignalProcessing.ProcessingResult last = results.get(results.size() - 1);
+            assertEquals(overlap > 0 ? 4 : 1, last.getCount(), 0);
+            assertEquals(results.get(1).getWindowLeq(), last.getWindowLeq(), 1);
+            assertNull(window.getLastWindowMean());
+        }
+    }
+
+    @Test
+    public void testLoadShortStreamOddReads() throws IOException {
+        short[] signal = Window.makeWhiteNoise(10000, (short) 2500, 1);
+        ByteBuffer bytes = ByteBuffer.allocate(signal.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asShortBuffer().put(signal);
+        // Return at most 4097 bytes per read, so samples are split between two reads
+        InputStream inputStream = new ByteArrayInputStream(bytes.array()) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 4097));
+            }
+        };
+        assertArrayEquals(signal, Window.loadShortStream(inputStream, ByteOrder.LITTLE_ENDIAN));
+    }
+
+    @Test
+    public void testMergeNoResult() {
+        // Nothing to merge yet, the levels are 0 dB as before the energy accumulation
+        FFTSignalProcessing.ProcessingResult empty = new FFTSignalProcessing.ProcessingResult(4,
+                null, null);
+        assertEquals(0, empty.getWindowLeq(), 0);
+        assertEquals(0, empty.getWindowLaeq(), 0);
+        assertNull(empty.getSpl());
+        assertEquals(4, empty.getCount(), 0);
+        // It can still accumulate results
+        empty.accumulate(new FFTSignalProcessing.ProcessingResult(1, null,
+                new double[]{60, 70}, 75));
+        assertEquals(1, empty.getCount(), 0);
+        assertEquals(75, empty.getWindowLeq(), 1e-9);
+        assertArrayEquals(new double[]{60, 70}, empty.getSpl(), 1e-4);
+    }
+}